@@ -0,0 +1,308 @@
+package colorUtils;
+
+/**
+ * Helper class to work with colors packed in ARGB integers, the format used by Processing. All the methods are static
+ * and don't depend on any applet state, so they can be used from any thread.
+ * 
+ * All the channel values use the 0-255 range, like the Processing default color mode. The HSB conversions follow the
+ * same conventions as the Processing hue(), saturation(), brightness() and color() methods in HSB mode.
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class PackedColor {
+
+	/**
+	 * This class has no public constructor
+	 */
+	private PackedColor() {
+
+	}
+
+	/**
+	 * Returns the alpha channel of a color
+	 * 
+	 * @param color the packed color
+	 * @return the alpha channel value
+	 */
+	public static int alpha(int color) {
+		return (color >>> 24) & 0xff;
+	}
+
+	/**
+	 * Returns the red channel of a color
+	 * 
+	 * @param color the packed color
+	 * @return the red channel value
+	 */
+	public static int red(int color) {
+		return (color >> 16) & 0xff;
+	}
+
+	/**
+	 * Returns the green channel of a color
+	 * 
+	 * @param color the packed color
+	 * @return the green channel value
+	 */
+	public static int green(int color) {
+		return (color >> 8) & 0xff;
+	}
+
+	/**
+	 * Returns the blue channel of a color
+	 * 
+	 * @param color the packed color
+	 * @return the blue channel value
+	 */
+	public static int blue(int color) {
+		return color & 0xff;
+	}
+
+	/**
+	 * Packs the RGB channels in an opaque color. The channel values should be between 0 and 255
+	 * 
+	 * @param red the red channel value
+	 * @param green the green channel value
+	 * @param blue the blue channel value
+	 * @return the packed color
+	 */
+	public static int pack(int red, int green, int blue) {
+		return 0xff000000 | (red << 16) | (green << 8) | blue;
+	}
+
+	/**
+	 * Packs the RGBA channels in a color. The channel values should be between 0 and 255
+	 * 
+	 * @param red the red channel value
+	 * @param green the green channel value
+	 * @param blue the blue channel value
+	 * @param alpha the alpha channel value
+	 * @return the packed color
+	 */
+	public static int pack(int red, int green, int blue, int alpha) {
+		return (alpha << 24) | (red << 16) | (green << 8) | blue;
+	}
+
+	/**
+	 * Packs the RGB channels in an opaque color. The channel values are constrained to the 0-255 range and truncated,
+	 * like the Processing color() method
+	 * 
+	 * @param red the red channel value
+	 * @param green the green channel value
+	 * @param blue the blue channel value
+	 * @return the packed color
+	 */
+	public static int pack(float red, float green, float blue) {
+		return pack(toChannel(red), toChannel(green), toChannel(blue));
+	}
+
+	/**
+	 * Packs the RGBA channels in a color. The channel values are constrained to the 0-255 range and truncated, like
+	 * the Processing color() method
+	 * 
+	 * @param red the red channel value
+	 * @param green the green channel value
+	 * @param blue the blue channel value
+	 * @param alpha the alpha channel value
+	 * @return the packed color
+	 */
+	public static int pack(float red, float green, float blue, float alpha) {
+		return pack(toChannel(red), toChannel(green), toChannel(blue), toChannel(alpha));
+	}
+
+	/**
+	 * Constrains a channel value to the 0-255 range and converts it to an integer
+	 * 
+	 * @param value the channel value
+	 * @return the channel integer value
+	 */
+	private static int toChannel(float value) {
+		return value <= 0 ? 0 : (value >= 255 ? 255 : (int) value);
+	}
+
+	/**
+	 * Changes the alpha channel of a color
+	 * 
+	 * @param color the packed color
+	 * @param alpha the new alpha channel value, between 0 and 255
+	 * @return the packed color with the new alpha value
+	 */
+	public static int withAlpha(int color, int alpha) {
+		return (alpha << 24) | (color & 0x00ffffff);
+	}
+
+	/**
+	 * Calculates the hue, saturation and brightness of a color
+	 * 
+	 * @param color the packed color
+	 * @param hsb the array where the hue, saturation and brightness values will be saved (0-255 range). If it's null,
+	 *            a new array will be created
+	 * @return the array with the hue, saturation and brightness values
+	 */
+	public static float[] toHsb(int color, float[] hsb) {
+		if (hsb == null) {
+			hsb = new float[3];
+		}
+
+		int red = red(color);
+		int green = green(color);
+		int blue = blue(color);
+		int max = Math.max(red, Math.max(green, blue));
+		int min = Math.min(red, Math.min(green, blue));
+		hsb[0] = hue(red, green, blue, max, min);
+		hsb[1] = max != 0 ? (255f * (max - min)) / max : 0;
+		hsb[2] = max;
+
+		return hsb;
+	}
+
+	/**
+	 * Returns the hue of a color
+	 * 
+	 * @param color the packed color
+	 * @return the color hue (0-255 range)
+	 */
+	public static float hue(int color) {
+		int red = red(color);
+		int green = green(color);
+		int blue = blue(color);
+
+		return hue(red, green, blue, Math.max(red, Math.max(green, blue)), Math.min(red, Math.min(green, blue)));
+	}
+
+	/**
+	 * Calculates the hue from the RGB channels
+	 * 
+	 * @param red the red channel value
+	 * @param green the green channel value
+	 * @param blue the blue channel value
+	 * @param max the maximum channel value
+	 * @param min the minimum channel value
+	 * @return the hue (0-255 range)
+	 */
+	private static float hue(int red, int green, int blue, int max, int min) {
+		if (max == min) {
+			return 0;
+		}
+
+		float range = max - min;
+		float hue;
+
+		if (red == max) {
+			hue = (green - blue) / range;
+		} else if (green == max) {
+			hue = 2 + (blue - red) / range;
+		} else {
+			hue = 4 + (red - green) / range;
+		}
+
+		hue /= 6;
+
+		if (hue < 0) {
+			hue += 1;
+		}
+
+		return 255 * hue;
+	}
+
+	/**
+	 * Returns the saturation of a color
+	 * 
+	 * @param color the packed color
+	 * @return the color saturation (0-255 range)
+	 */
+	public static float saturation(int color) {
+		int red = red(color);
+		int green = green(color);
+		int blue = blue(color);
+		int max = Math.max(red, Math.max(green, blue));
+		int min = Math.min(red, Math.min(green, blue));
+
+		return max != 0 ? (255f * (max - min)) / max : 0;
+	}
+
+	/**
+	 * Returns the brightness of a color
+	 * 
+	 * @param color the packed color
+	 * @return the color brightness (0-255 range)
+	 */
+	public static float brightness(int color) {
+		return Math.max(red(color), Math.max(green(color), blue(color)));
+	}
+
+	/**
+	 * Creates a color from its hue, saturation and brightness. The values are constrained to the 0-255 range
+	 * 
+	 * @param hue the color hue
+	 * @param saturation the color saturation
+	 * @param brightness the color brightness
+	 * @param alpha the color alpha
+	 * @return the packed color
+	 */
+	public static int fromHsb(float hue, float saturation, float brightness, float alpha) {
+		float h = Math.min(Math.max(hue, 0), 255) / 255;
+		float s = Math.min(Math.max(saturation, 0), 255) / 255;
+		float b = Math.min(Math.max(brightness, 0), 255) / 255;
+		float red;
+		float green;
+		float blue;
+
+		if (s == 0) {
+			red = b;
+			green = b;
+			blue = b;
+		} else {
+			float which = (h - (int) h) * 6;
+			float f = which - (int) which;
+			float p = b * (1 - s);
+			float q = b * (1 - s * f);
+			float t = b * (1 - s * (1 - f));
+
+			switch ((int) which) {
+			case 0:
+				red = b;
+				green = t;
+				blue = p;
+				break;
+			case 1:
+				red = q;
+				green = b;
+				blue = p;
+				break;
+			case 2:
+				red = p;
+				green = b;
+				blue = t;
+				break;
+			case 3:
+				red = p;
+				green = q;
+				blue = b;
+				break;
+			case 4:
+				red = t;
+				green = p;
+				blue = b;
+				break;
+			default:
+				red = b;
+				green = p;
+				blue = q;
+				break;
+			}
+		}
+
+		return pack((int) (255 * red), (int) (255 * green), (int) (255 * blue), toChannel(alpha));
+	}
+
+	/**
+	 * Returns the luminance of a color, using the Rec. 601 channel weights
+	 * 
+	 * @param color the packed color
+	 * @return the color luminance (0-255 range)
+	 */
+	public static float luminance(int color) {
+		return 0.299f * red(color) + 0.587f * green(color) + 0.114f * blue(color);
+	}
+}
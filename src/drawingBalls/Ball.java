@@ -1,5 +1,6 @@
 package drawingBalls;
 
+import colorUtils.PackedColor;
 import processing.core.PApplet;
 import processing.core.PImage;
 import processing.core.PVector;
@@ -60,7 +61,7 @@ public class Ball {
 
 		// Calculate the new ball color and radius
 		col = img.pixels[Math.round(pos.x) + Math.round(pos.y) * img.width];
-		rad = PApplet.map(applet.brightness(col), 0, 255, 3, 7);
+		rad = PApplet.map(PackedColor.brightness(col), 0, 255, 3, 7);
 	}
 
 	/**
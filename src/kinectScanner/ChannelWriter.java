@@ -0,0 +1,208 @@
+package kinectScanner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Helper class used to write binary and text data in a file through a file channel. The data is collected in a direct
+ * buffer that is written to the channel every time it gets full, so files of any size can be written with a constant
+ * amount of memory
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class ChannelWriter implements AutoCloseable {
+
+	/**
+	 * The size of the buffer used to collect the data
+	 */
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private FileChannel channel;
+	private ByteBuffer buffer;
+
+	/**
+	 * Opens a file for writing. The file is truncated if it already exists
+	 * 
+	 * @param fileName the file name
+	 * @param order the byte order used to write the binary values
+	 * @throws IOException if the file could not be opened
+	 */
+	public ChannelWriter(String fileName, ByteOrder order) throws IOException {
+		this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(order);
+	}
+
+	/**
+	 * Makes sure that the buffer has enough space for a given number of bytes, writing its contents if necessary
+	 * 
+	 * @param nBytes the number of bytes
+	 * @throws IOException if the buffer contents could not be written
+	 */
+	private void ensureSpace(int nBytes) throws IOException {
+		if (buffer.remaining() < nBytes) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes the buffer contents in the file
+	 * 
+	 * @throws IOException if the buffer contents could not be written
+	 */
+	public void flush() throws IOException {
+		buffer.flip();
+
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+
+		buffer.clear();
+	}
+
+	/**
+	 * Writes a byte
+	 * 
+	 * @param value the byte value
+	 * @return the channel writer
+	 * @throws IOException if the data could not be written
+	 */
+	public ChannelWriter putByte(int value) throws IOException {
+		ensureSpace(1);
+		buffer.put((byte) value);
+
+		return this;
+	}
+
+	/**
+	 * Writes a 16 bits integer
+	 * 
+	 * @param value the integer value
+	 * @return the channel writer
+	 * @throws IOException if the data could not be written
+	 */
+	public ChannelWriter putShort(int value) throws IOException {
+		ensureSpace(2);
+		buffer.putShort((short) value);
+
+		return this;
+	}
+
+	/**
+	 * Writes a 32 bits integer
+	 * 
+	 * @param value the integer value
+	 * @return the channel writer
+	 * @throws IOException if the data could not be written
+	 */
+	public ChannelWriter putInt(int value) throws IOException {
+		ensureSpace(4);
+		buffer.putInt(value);
+
+		return this;
+	}
+
+	/**
+	 * Writes a 64 bits integer
+	 * 
+	 * @param value the integer value
+	 * @return the channel writer
+	 * @throws IOException if the data could not be written
+	 */
+	public ChannelWriter putLong(long value) throws IOException {
+		ensureSpace(8);
+		buffer.putLong(value);
+
+		return this;
+	}
+
+	/**
+	 * Writes a float
+	 * 
+	 * @param value the float value
+	 * @return the channel writer
+	 * @throws IOException if the data could not be written
+	 */
+	public ChannelWriter putFloat(float value) throws IOException {
+		ensureSpace(4);
+		buffer.putFloat(value);
+
+		return this;
+	}
+
+	/**
+	 * Writes some text using the US-ASCII encoding
+	 * 
+	 * @param text the text to write
+	 * @return the channel writer
+	 * @throws IOException if the data could not be written
+	 */
+	public ChannelWriter putText(String text) throws IOException {
+		return putBytes(text.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Writes an array of bytes
+	 * 
+	 * @param bytes the bytes to write
+	 * @return the channel writer
+	 * @throws IOException if the data could not be written
+	 */
+	public ChannelWriter putBytes(byte[] bytes) throws IOException {
+		int offset = 0;
+
+		while (offset < bytes.length) {
+			ensureSpace(1);
+			int length = Math.min(buffer.remaining(), bytes.length - offset);
+			buffer.put(bytes, offset, length);
+			offset += length;
+		}
+
+		return this;
+	}
+
+	/**
+	 * Returns the position in the file where the next value will be written
+	 * 
+	 * @return the file position
+	 * @throws IOException if the file position could not be read
+	 */
+	public long getPosition() throws IOException {
+		return channel.position() + buffer.position();
+	}
+
+	/**
+	 * Overwrites some bytes that have already been written, for example to update a header once the file contents are
+	 * known. The current file position is not modified
+	 * 
+	 * @param position the file position where the bytes should be written
+	 * @param bytes the bytes to write
+	 * @throws IOException if the data could not be written
+	 */
+	public void putBytesAt(long position, byte[] bytes) throws IOException {
+		flush();
+		ByteBuffer data = ByteBuffer.wrap(bytes);
+
+		while (data.hasRemaining()) {
+			position += channel.write(data, position);
+		}
+	}
+
+	/**
+	 * Writes the remaining data and closes the file
+	 * 
+	 * @throws IOException if the data could not be written
+	 */
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package kinectScanner;
+
+/**
+ * Class used to convert the Kinect depth map values to real world coordinates, using the same projection as OpenNI.
+ * 
+ * The conversion uses a lookup table with the ray direction of each depth map pixel, so every point only needs two
+ * multiplications. The table is calculated only for the pixels that are sampled with a given scale reduction factor.
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class DepthProjection {
+
+	private int width;
+	private int height;
+	private float xzFactor;
+	private float yzFactor;
+	private int reductionFactor;
+	private float[] rays;
+
+	/**
+	 * Constructs a depth projection object
+	 * 
+	 * @param width the depth map horizontal dimension
+	 * @param height the depth map vertical dimension
+	 * @param hFieldOfView the depth camera horizontal field of view in radians
+	 * @param vFieldOfView the depth camera vertical field of view in radians
+	 */
+	public DepthProjection(int width, int height, float hFieldOfView, float vFieldOfView) {
+		this.width = width;
+		this.height = height;
+		this.xzFactor = 2 * (float) Math.tan(hFieldOfView / 2);
+		this.yzFactor = 2 * (float) Math.tan(vFieldOfView / 2);
+		this.reductionFactor = 0;
+		this.rays = null;
+	}
+
+	/**
+	 * Constructs a depth projection object using the intrinsics of a Kinect frame source
+	 * 
+	 * @param source the Kinect frame source
+	 */
+	public DepthProjection(KinectFrameSource source) {
+		this(source.getWidth(), source.getHeight(), source.getHorizontalFieldOfView(),
+				source.getVerticalFieldOfView());
+	}
+
+	/**
+	 * Returns the ray directions lookup table for the pixels sampled with a given scale reduction factor. The table
+	 * contains the x and y coordinates at unit depth of each sampled pixel, stored consecutively in row order
+	 * 
+	 * @param reductionFactor the scale reduction factor
+	 * @return the ray directions lookup table
+	 */
+	public synchronized float[] getRays(int reductionFactor) {
+		reductionFactor = Math.max(1, reductionFactor);
+
+		// Calculate the table only if the reduction factor has changed
+		if (reductionFactor != this.reductionFactor) {
+			int reducedWidth = width / reductionFactor;
+			int reducedHeight = height / reductionFactor;
+			float[] raysNew = new float[2 * reducedWidth * reducedHeight];
+
+			for (int row = 0; row < reducedHeight; row++) {
+				float rayY = (0.5f - (float) (row * reductionFactor) / height) * yzFactor;
+
+				for (int col = 0; col < reducedWidth; col++) {
+					int index = col + row * reducedWidth;
+					raysNew[2 * index] = ((float) (col * reductionFactor) / width - 0.5f) * xzFactor;
+					raysNew[2 * index + 1] = rayY;
+				}
+			}
+
+			this.reductionFactor = reductionFactor;
+			this.rays = raysNew;
+		}
+
+		return rays;
+	}
+
+	/**
+	 * Returns the depth map horizontal dimension
+	 * 
+	 * @return the depth map width
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the depth map vertical dimension
+	 * 
+	 * @return the depth map height
+	 */
+	public int getHeight() {
+		return height;
+	}
+}
@@ -1,5 +1,6 @@
 package kinectScanner;
 
+import colorUtils.PackedColor;
 import processing.core.PApplet;
 import processing.core.PImage;
 import processing.core.PVector;
@@ -26,14 +27,10 @@ public class Floor {
 		this.texture = p.createImage(10, 150, PApplet.ARGB);
 
 		// Set the texture pixel colors
-		float redColor = p.red(color);
-		float greenColor = p.green(color);
-		float blueColor = p.blue(color);
-
 		this.texture.loadPixels();
 
 		for (int y = 0; y < texture.height; y++) {
-			int rowColor = p.color(redColor, greenColor, blueColor, Math.min(y, 255));
+			int rowColor = PackedColor.withAlpha(color, Math.min(y, 255));
 
 			for (int x = 0; x < texture.width; x++) {
 				texture.pixels[x + y * texture.width] = rowColor;
@@ -0,0 +1,208 @@
+package kinectScanner;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import processing.core.PVector;
+
+/**
+ * Class used to acquire the Kinect frames in a background thread. Each frame is converted and filtered into one of
+ * three KinectPoints buffers, and the last complete buffer is published to the render thread with a lock-free swap.
+ * This way the render thread always draws the most recent frame without waiting for the sensor.
+ * 
+ * The Kinect frame source is only accessed inside a block synchronized on the source object. Other threads that need
+ * to use the source while the acquisition is running (for example to enable the hand tracking) should synchronize on
+ * it too.
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class KinectAcquisition implements Runnable {
+
+	/**
+	 * The bit used to indicate that the published buffer has not been read yet
+	 */
+	private static final int FRESH_BIT = 1 << 2;
+
+	/**
+	 * The mask used to extract the buffer index from the published buffer state
+	 */
+	private static final int INDEX_MASK = FRESH_BIT - 1;
+
+	private KinectFrameSource source;
+	private DepthProjection projection;
+	private KinectRecorder recorder;
+	private KinectPoints[] buffers;
+	private AtomicInteger publishedState;
+	private int backIndex;
+	private int frontIndex;
+	private boolean frontIsNew;
+	private volatile int resolution;
+	private volatile PVector[] limits;
+	private volatile boolean running;
+	private volatile float frameRate;
+	private Thread thread;
+
+	/**
+	 * Constructs a Kinect acquisition object. The three buffers are initialized with the current source frame
+	 * 
+	 * @param source the Kinect frame source
+	 * @param projection the depth projection used to calculate the real world coordinates
+	 * @param recorder the recorder that should save the acquired frames. It can be null
+	 * @param resolution the scale reduction factor
+	 * @param limits an array with the lower and upper corners used to constrain the points visibility
+	 */
+	public KinectAcquisition(KinectFrameSource source, DepthProjection projection, KinectRecorder recorder,
+			int resolution, PVector[] limits) {
+		this.source = source;
+		this.projection = projection;
+		this.recorder = recorder;
+		this.resolution = resolution;
+		this.limits = limits;
+		this.buffers = new KinectPoints[3];
+
+		synchronized (this.source) {
+			for (int i = 0; i < this.buffers.length; i++) {
+				this.buffers[i] = new KinectPoints(this.source.getRgbImage(), this.source.getDepthMap(),
+						this.projection, this.resolution);
+				this.buffers[i].constrainPoints(this.limits);
+			}
+		}
+
+		this.frontIndex = 0;
+		this.frontIsNew = false;
+		this.publishedState = new AtomicInteger(1);
+		this.backIndex = 2;
+		this.running = false;
+		this.frameRate = 0;
+		this.thread = null;
+	}
+
+	/**
+	 * Starts the acquisition thread
+	 */
+	public synchronized void start() {
+		if (thread == null) {
+			running = true;
+			thread = new Thread(this, "Kinect acquisition");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Stops the acquisition thread and waits until it finishes
+	 */
+	public synchronized void stop() {
+		if (thread != null) {
+			running = false;
+
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			thread = null;
+		}
+	}
+
+	/**
+	 * Acquires frames until the acquisition is stopped
+	 */
+	public void run() {
+		long lastFrameTime = System.nanoTime();
+
+		while (running) {
+			KinectPoints kPoints = buffers[backIndex];
+			boolean newFrame;
+
+			// Get the next frame and convert it to real world coordinates
+			synchronized (source) {
+				newFrame = source.update();
+
+				if (newFrame) {
+					if (recorder != null) {
+						recorder.record(source);
+					}
+
+					kPoints.update(source.getRgbImage(), source.getDepthMap(), projection, resolution);
+				}
+			}
+
+			if (!newFrame) {
+				// Wait a bit before asking again for a new frame
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {
+					running = false;
+				}
+
+				continue;
+			}
+
+			// Constrain the points visibility to the limits defined by the user
+			kPoints.constrainPoints(limits);
+
+			// Publish the buffer and take the previously published buffer as the new back buffer
+			backIndex = publishedState.getAndSet(backIndex | FRESH_BIT) & INDEX_MASK;
+
+			// Update the acquisition frame rate
+			long time = System.nanoTime();
+			float rate = 1e9f / Math.max(1, time - lastFrameTime);
+			frameRate = frameRate == 0 ? rate : 0.9f * frameRate + 0.1f * rate;
+			lastFrameTime = time;
+		}
+	}
+
+	/**
+	 * Returns the most recent complete Kinect points buffer. The returned buffer will not be modified by the
+	 * acquisition thread until this method is called again, and it should only be used by a single reader thread
+	 * 
+	 * @return the most recent Kinect points buffer
+	 */
+	public KinectPoints getLatestPoints() {
+		frontIsNew = (publishedState.get() & FRESH_BIT) != 0;
+
+		if (frontIsNew) {
+			frontIndex = publishedState.getAndSet(frontIndex) & INDEX_MASK;
+		}
+
+		return buffers[frontIndex];
+	}
+
+	/**
+	 * Checks if the buffer returned by the last getLatestPoints call contains a new frame. The render thread can run
+	 * faster than the sensor, and in that case the same buffer is returned several times
+	 * 
+	 * @return true if the last returned buffer had not been returned before
+	 */
+	public boolean isNewFrame() {
+		return frontIsNew;
+	}
+
+	/**
+	 * Sets the scale reduction factor that will be used for the next frames
+	 * 
+	 * @param resolution the scale reduction factor
+	 */
+	public void setResolution(int resolution) {
+		this.resolution = resolution;
+	}
+
+	/**
+	 * Sets the limits that will be used to constrain the points visibility in the next frames
+	 * 
+	 * @param limits an array with the lower and upper corners
+	 */
+	public void setLimits(PVector[] limits) {
+		this.limits = limits;
+	}
+
+	/**
+	 * Returns the acquisition frame rate
+	 * 
+	 * @return the number of frames acquired per second
+	 */
+	public float getFrameRate() {
+		return frameRate;
+	}
+}
@@ -681,16 +681,8 @@ public class KinectControlPanel extends PApplet {
 			}
 		} else if (controllerName.equals("rotateSlitScan")) {
 			p.rotateSlitScan = ((Toggle) controller).getBooleanValue();
-
-			if (!p.takeSlitScan && p.slits.size() > 0) {
-				p.slitScan = KinectHelper.combineSlits(p.slits, p.rotateSlitScan, p.centerSlitScan);
-			}
 		} else if (controllerName.equals("centerSlitScan")) {
 			p.centerSlitScan = ((Toggle) controller).getBooleanValue();
-
-			if (!p.takeSlitScan && p.slits.size() > 0) {
-				p.slitScan = KinectHelper.combineSlits(p.slits, p.rotateSlitScan, p.centerSlitScan);
-			}
 		} else if (controllerName.equals("slitScanBang")) {
 			p.takeSlitScan = !p.takeSlitScan;
 
@@ -702,7 +694,6 @@ public class KinectControlPanel extends PApplet {
 		} else if (controllerName.equals("drawSlitScan")) {
 			p.drawSlitScan = ((Toggle) controller).getBooleanValue();
 		} else if (controllerName.equals("clearSlitScan")) {
-			p.slits.clear();
 			p.slitScan = null;
 
 			if (!p.takeSlitScan) {
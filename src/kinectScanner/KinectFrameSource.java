@@ -0,0 +1,75 @@
+package kinectScanner;
+
+import processing.core.PImage;
+import processing.core.PVector;
+
+/**
+ * Interface implemented by the classes that provide the Kinect frames: the depth map, the RGB image and the real world
+ * coordinates of the depth map points. The RGB image is expected to be registered to the depth map, so both have the
+ * same dimensions
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public interface KinectFrameSource {
+
+	/**
+	 * Advances the source to the next available frame
+	 * 
+	 * @return true if a new frame is available, false if the previous frame is still the current one
+	 */
+	public boolean update();
+
+	/**
+	 * Returns the depth map horizontal dimension
+	 * 
+	 * @return the depth map width
+	 */
+	public int getWidth();
+
+	/**
+	 * Returns the depth map vertical dimension
+	 * 
+	 * @return the depth map height
+	 */
+	public int getHeight();
+
+	/**
+	 * Returns the current frame depth map, in millimeters. Points without depth information have zero depth
+	 * 
+	 * @return the depth map
+	 */
+	public int[] getDepthMap();
+
+	/**
+	 * Returns the real world coordinates of the current frame depth map points
+	 * 
+	 * @return the real world coordinates
+	 */
+	public PVector[] getRealWorldPoints();
+
+	/**
+	 * Returns the current frame RGB image
+	 * 
+	 * @return the RGB image
+	 */
+	public PImage getRgbImage();
+
+	/**
+	 * Returns the depth camera horizontal field of view
+	 * 
+	 * @return the horizontal field of view in radians
+	 */
+	public float getHorizontalFieldOfView();
+
+	/**
+	 * Returns the depth camera vertical field of view
+	 * 
+	 * @return the vertical field of view in radians
+	 */
+	public float getVerticalFieldOfView();
+
+	/**
+	 * Releases the resources used by the source
+	 */
+	public void close();
+}
@@ -0,0 +1,430 @@
+package kinectScanner;
+
+import processing.core.PApplet;
+import processing.core.PShape;
+
+/**
+ * Class used to represent the Kinect points as a mesh with flat vertex, color and index arrays. The meshes are built
+ * in parallel row bands following the same rules as the KinectPoints draw methods, and can be drawn with a single
+ * shape or converted to a retained PShape that can be reused while the points don't change.
+ * 
+ * Building a mesh doesn't need a Processing applet, so it can be done in any thread. The mesh shares the vertices and
+ * colors arrays with the Kinect points, so it should be copied if it's kept while the points change.
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class KinectMesh {
+
+	/**
+	 * The mesh kind: PApplet.TRIANGLES, PApplet.LINES or PApplet.POINTS
+	 */
+	public int kind;
+
+	/**
+	 * Array containing the vertices coordinates, with the x, y and z coordinates of each vertex stored consecutively.
+	 * It's the Kinect points array, unless the mesh is a copy
+	 */
+	public float[] vertices;
+
+	/**
+	 * Array containing the vertices colors. It's the Kinect points array, unless the mesh is a copy
+	 */
+	public int[] colors;
+
+	/**
+	 * Array containing the vertex indices of the mesh elements: three per triangle, two per line or one per point
+	 */
+	public int[] indices;
+
+	/**
+	 * Growable array of indices used to collect the elements found in a row band
+	 */
+	static class IndexList {
+		int[] values = new int[1024];
+		int size = 0;
+
+		/**
+		 * Adds an index at the end of the list
+		 * 
+		 * @param value the index to add
+		 */
+		void add(int value) {
+			if (size == values.length) {
+				int[] valuesNew = new int[2 * values.length];
+				System.arraycopy(values, 0, valuesNew, 0, size);
+				values = valuesNew;
+			}
+
+			values[size++] = value;
+		}
+	}
+
+	/**
+	 * Constructs a mesh object that uses the Kinect points coordinates and colors arrays
+	 * 
+	 * @param kp the KinectPoints object
+	 * @param kind the mesh kind
+	 * @param bandIndices the indices found in each row band, in row order
+	 */
+	private KinectMesh(KinectPoints kp, int kind, IndexList[] bandIndices) {
+		this.kind = kind;
+		this.vertices = kp.points;
+		this.colors = kp.colors;
+
+		// Concatenate the indices from all the bands
+		int nIndices = 0;
+
+		for (IndexList list : bandIndices) {
+			nIndices += list.size;
+		}
+
+		this.indices = new int[nIndices];
+		int offset = 0;
+
+		for (IndexList list : bandIndices) {
+			System.arraycopy(list.values, 0, this.indices, offset, list.size);
+			offset += list.size;
+		}
+	}
+
+	/**
+	 * Constructs a mesh object with the given arrays
+	 * 
+	 * @param kind the mesh kind
+	 * @param vertices the vertices coordinates
+	 * @param colors the vertices colors
+	 * @param indices the vertex indices of the mesh elements
+	 */
+	private KinectMesh(int kind, float[] vertices, int[] colors, int[] indices) {
+		this.kind = kind;
+		this.vertices = vertices;
+		this.colors = colors;
+		this.indices = indices;
+	}
+
+	/**
+	 * Returns a copy of the mesh that doesn't share the vertices and colors arrays with the Kinect points
+	 * 
+	 * @return the mesh copy
+	 */
+	public KinectMesh copy() {
+		return new KinectMesh(kind, vertices.clone(), colors.clone(), indices);
+	}
+
+	/**
+	 * Builds a triangles mesh from the Kinect points
+	 * 
+	 * @param kp the KinectPoints object
+	 * @return the triangles mesh
+	 */
+	public static KinectMesh triangles(KinectPoints kp) {
+		return bands(kp, 1);
+	}
+
+	/**
+	 * Builds a triangles mesh with the horizontal bands formed by the Kinect points rows and their lower rows
+	 * 
+	 * @param kp the KinectPoints object
+	 * @param verticalGap the positive vertical gap between bands
+	 * @return the triangles mesh
+	 */
+	public static KinectMesh bands(KinectPoints kp, int verticalGap) {
+		int gap = Math.max(1, verticalGap);
+		int nBands = kp.getNBands();
+		IndexList[] bandIndices = new IndexList[nBands];
+
+		kp.forEachBand(nBands, (band, rowStart, rowEnd) -> {
+			IndexList list = new IndexList();
+			int firstRow = ((rowStart + gap - 1) / gap) * gap;
+
+			for (int row = firstRow; row < rowEnd; row += gap) {
+				addRowTriangles(kp, row, list);
+			}
+
+			bandIndices[band] = list;
+		});
+
+		return new KinectMesh(kp, PApplet.TRIANGLES, bandIndices);
+	}
+
+	/**
+	 * Adds the triangles formed by a row of Kinect points and its lower row to an indices list. Only the triangles
+	 * formed by visible and connected points are added
+	 * 
+	 * @param kp the KinectPoints object
+	 * @param row the row index
+	 * @param list the indices list
+	 */
+	static void addRowTriangles(KinectPoints kp, int row, IndexList list) {
+		if (row >= kp.height - 1) {
+			return;
+		}
+
+		for (int col = 0; col < kp.width - 1; col++) {
+			addCellTriangles(kp, col + row * kp.width, list);
+		}
+	}
+
+	/**
+	 * Adds the triangles formed by a Kinect point and its right, lower and lower right neighbors to an indices list.
+	 * Only the triangles formed by visible and connected points are added
+	 * 
+	 * @param kp the KinectPoints object
+	 * @param index the index of the upper left point. It should not be in the last column or the last row
+	 * @param list the indices list
+	 */
+	static void addCellTriangles(KinectPoints kp, int index, IndexList list) {
+		int width = kp.width;
+		boolean[] visibilityMask = kp.visibilityMask;
+
+		// First triangle
+		if (visibilityMask[index] && visibilityMask[index + width]) {
+			if (visibilityMask[index + 1]) {
+				addTriangle(kp, list, index, index + 1, index + width);
+			} else if (visibilityMask[index + 1 + width]) {
+				addTriangle(kp, list, index, index + 1 + width, index + width);
+			}
+		}
+
+		// Second triangle
+		if (visibilityMask[index + 1] && visibilityMask[index + 1 + width]) {
+			if (visibilityMask[index + width]) {
+				addTriangle(kp, list, index + 1, index + 1 + width, index + width);
+			} else if (visibilityMask[index]) {
+				addTriangle(kp, list, index, index + 1, index + 1 + width);
+			}
+		}
+	}
+
+	/**
+	 * Adds a triangle to the indices list if its three points are connected
+	 * 
+	 * @param kp the KinectPoints object
+	 * @param list the indices list
+	 * @param index1 the first point index
+	 * @param index2 the second point index
+	 * @param index3 the third point index
+	 */
+	private static void addTriangle(KinectPoints kp, IndexList list, int index1, int index2, int index3) {
+		if (kp.connected(index1, index2) && kp.connected(index1, index3) && kp.connected(index2, index3)) {
+			list.add(index1);
+			list.add(index2);
+			list.add(index3);
+		}
+	}
+
+	/**
+	 * Builds a lines mesh connecting each Kinect point with its right, lower and lower right neighbors
+	 * 
+	 * @param kp the KinectPoints object
+	 * @return the lines mesh
+	 */
+	public static KinectMesh lines(KinectPoints kp) {
+		int width = kp.width;
+		boolean[] visibilityMask = kp.visibilityMask;
+		int nBands = kp.getNBands();
+		IndexList[] bandIndices = new IndexList[nBands];
+
+		kp.forEachBand(nBands, (band, rowStart, rowEnd) -> {
+			IndexList list = new IndexList();
+
+			for (int row = rowStart; row < Math.min(rowEnd, kp.height - 1); row++) {
+				for (int col = 0; col < width - 1; col++) {
+					int index = col + row * width;
+
+					if (visibilityMask[index]) {
+						addLine(kp, list, index, index + 1);
+						addLine(kp, list, index, index + width);
+						addLine(kp, list, index, index + 1 + width);
+					}
+				}
+			}
+
+			bandIndices[band] = list;
+		});
+
+		return new KinectMesh(kp, PApplet.LINES, bandIndices);
+	}
+
+	/**
+	 * Adds a line to the indices list if the second point is visible and connected with the first point
+	 * 
+	 * @param kp the KinectPoints object
+	 * @param list the indices list
+	 * @param index1 the first point index
+	 * @param index2 the second point index
+	 */
+	private static void addLine(KinectPoints kp, IndexList list, int index1, int index2) {
+		if (kp.visibilityMask[index2] && kp.connected(index1, index2)) {
+			list.add(index1);
+			list.add(index2);
+		}
+	}
+
+	/**
+	 * Builds a points mesh with the visible Kinect points
+	 * 
+	 * @param kp the KinectPoints object
+	 * @return the points mesh
+	 */
+	public static KinectMesh pixels(KinectPoints kp) {
+		int nBands = kp.getNBands();
+		IndexList[] bandIndices = new IndexList[nBands];
+
+		kp.forEachBand(nBands, (band, rowStart, rowEnd) -> {
+			IndexList list = new IndexList();
+
+			for (int index = rowStart * kp.width; index < rowEnd * kp.width; index++) {
+				if (kp.visibilityMask[index]) {
+					list.add(index);
+				}
+			}
+
+			bandIndices[band] = list;
+		});
+
+		return new KinectMesh(kp, PApplet.POINTS, bandIndices);
+	}
+
+	/**
+	 * Returns the number of elements in the mesh
+	 * 
+	 * @return the number of triangles, lines or points
+	 */
+	public int getNElements() {
+		return indices.length / getVerticesPerElement();
+	}
+
+	/**
+	 * Returns the number of vertices in each mesh element
+	 * 
+	 * @return the number of vertices per element
+	 */
+	private int getVerticesPerElement() {
+		return kind == PApplet.TRIANGLES ? 3 : (kind == PApplet.LINES ? 2 : 1);
+	}
+
+	/**
+	 * Returns the color that should be used for a given vertex. The lines use the color of their first vertex
+	 * 
+	 * @param position the vertex position in the indices array
+	 * @return the vertex color
+	 */
+	private int getColor(int position) {
+		return colors[indices[kind == PApplet.LINES ? position - position % 2 : position]];
+	}
+
+	/**
+	 * Draws the mesh on the screen with a single shape, using the vertices colors. The lines and points use the
+	 * current stroke weight
+	 * 
+	 * @param p the parent Processing applet
+	 */
+	public void draw(PApplet p) {
+		if (indices.length > 0) {
+			p.beginShape(kind);
+
+			for (int i = 0; i < indices.length; i++) {
+				int index = indices[i];
+
+				if (kind == PApplet.TRIANGLES) {
+					p.fill(getColor(i));
+				} else {
+					p.stroke(getColor(i));
+				}
+
+				p.vertex(vertices[3 * index], vertices[3 * index + 1], vertices[3 * index + 2]);
+			}
+
+			p.endShape();
+		}
+	}
+
+	/**
+	 * Draws the mesh on the screen with a single shape and a uniform color. The lines and points use the current
+	 * stroke weight
+	 * 
+	 * @param p the parent Processing applet
+	 * @param meshColor the mesh color
+	 */
+	public void draw(PApplet p, int meshColor) {
+		if (indices.length > 0) {
+			if (kind == PApplet.TRIANGLES) {
+				p.fill(meshColor);
+			} else {
+				p.stroke(meshColor);
+			}
+
+			p.beginShape(kind);
+
+			for (int index : indices) {
+				p.vertex(vertices[3 * index], vertices[3 * index + 1], vertices[3 * index + 2]);
+			}
+
+			p.endShape();
+		}
+	}
+
+	/**
+	 * Creates a retained shape with the mesh, using the vertices colors. The shape can be drawn many times with the
+	 * applet shape() method. The lines and points use the stroke weight that the applet has when the shape is created
+	 * 
+	 * @param p the parent Processing applet
+	 * @return the mesh shape
+	 */
+	public PShape createShape(PApplet p) {
+		PShape shape = p.createShape();
+		shape.beginShape(kind);
+
+		if (kind == PApplet.TRIANGLES) {
+			shape.noStroke();
+		} else {
+			shape.noFill();
+		}
+
+		for (int i = 0; i < indices.length; i++) {
+			int index = indices[i];
+
+			if (kind == PApplet.TRIANGLES) {
+				shape.fill(getColor(i));
+			} else {
+				shape.stroke(getColor(i));
+			}
+
+			shape.vertex(vertices[3 * index], vertices[3 * index + 1], vertices[3 * index + 2]);
+		}
+
+		shape.endShape();
+
+		return shape;
+	}
+
+	/**
+	 * Creates a retained shape with the mesh and a uniform color. The shape can be drawn many times with the applet
+	 * shape() method. The lines and points use the stroke weight that the applet has when the shape is created
+	 * 
+	 * @param p the parent Processing applet
+	 * @param meshColor the mesh color
+	 * @return the mesh shape
+	 */
+	public PShape createShape(PApplet p, int meshColor) {
+		PShape shape = p.createShape();
+		shape.beginShape(kind);
+
+		if (kind == PApplet.TRIANGLES) {
+			shape.noStroke();
+			shape.fill(meshColor);
+		} else {
+			shape.noFill();
+			shape.stroke(meshColor);
+		}
+
+		for (int index : indices) {
+			shape.vertex(vertices[3 * index], vertices[3 * index + 1], vertices[3 * index + 2]);
+		}
+
+		shape.endShape();
+
+		return shape;
+	}
+}
@@ -1,5 +1,7 @@
 package kinectScanner;
 
+import java.util.stream.IntStream;
+
 import processing.core.PApplet;
 import processing.core.PImage;
 import processing.core.PVector;
@@ -16,6 +18,31 @@ public class KinectPoints {
 	 */
 	public static final float MAX_SEPARATION_SQ = 90 * 90;
 
+	/**
+	 * The minimum number of points in each row band. Smaller arrays are processed in a single band
+	 */
+	private static final int MIN_BAND_POINTS = 1 << 14;
+
+	/**
+	 * The number of bins in the coordinates histograms used to calculate the percentile limits
+	 */
+	private static final int HISTOGRAM_BINS = 1024;
+
+	/**
+	 * Interface implemented by the tasks that process a band of rows
+	 */
+	interface BandTask {
+
+		/**
+		 * Processes a band of rows
+		 * 
+		 * @param band the band index
+		 * @param rowStart the first row in the band
+		 * @param rowEnd the row after the last row in the band
+		 */
+		void run(int band, int rowStart, int rowEnd);
+	}
+
 	/**
 	 * The arrays horizontal dimension
 	 */
@@ -32,9 +59,9 @@ public class KinectPoints {
 	public int nPoints;
 
 	/**
-	 * Array containing the points coordinates
+	 * Array containing the points coordinates, with the x, y and z coordinates of each point stored consecutively
 	 */
-	public PVector[] points;
+	public float[] points;
 
 	/**
 	 * Array containing the points colors
@@ -56,14 +83,9 @@ public class KinectPoints {
 		this.width = width;
 		this.height = height;
 		this.nPoints = this.width * this.height;
-		this.points = new PVector[this.nPoints];
+		this.points = new float[3 * this.nPoints];
 		this.colors = new int[this.nPoints];
 		this.visibilityMask = new boolean[this.nPoints];
-
-		// Initialize the points array
-		for (int i = 0; i < this.nPoints; i++) {
-			this.points[i] = new PVector();
-		}
 	}
 
 	/**
@@ -79,24 +101,34 @@ public class KinectPoints {
 		this.width = rgbImg.width / reductionFactor;
 		this.height = rgbImg.height / reductionFactor;
 		this.nPoints = this.width * this.height;
-		this.points = new PVector[this.nPoints];
+		this.points = new float[3 * this.nPoints];
 		this.colors = new int[this.nPoints];
 		this.visibilityMask = new boolean[this.nPoints];
 
 		// Populate the arrays
-		rgbImg.loadPixels();
-
-		for (int row = 0; row < this.height; row++) {
-			for (int col = 0; col < this.width; col++) {
-				int index = col + row * this.width;
-				int indexOriginal = col * reductionFactor + row * reductionFactor * rgbImg.width;
-				this.points[index] = points[indexOriginal].copy();
-				this.colors[index] = rgbImg.pixels[indexOriginal];
-				this.visibilityMask[index] = depthMap[indexOriginal] > 0;
-			}
-		}
+		update(points, rgbImg, depthMap, reductionFactor);
+	}
 
-		rgbImg.updatePixels();
+	/**
+	 * Constructs a KinectPoints object from the provided Kinect depth map, calculating the real world coordinates only
+	 * for the sampled points
+	 * 
+	 * @param rgbImg the Kinect color image
+	 * @param depthMap the Kinect depth map
+	 * @param projection the depth projection used to calculate the real world coordinates
+	 * @param reductionFactor the scale reduction factor
+	 */
+	public KinectPoints(PImage rgbImg, int[] depthMap, DepthProjection projection, int reductionFactor) {
+		reductionFactor = Math.max(1, reductionFactor);
+		this.width = rgbImg.width / reductionFactor;
+		this.height = rgbImg.height / reductionFactor;
+		this.nPoints = this.width * this.height;
+		this.points = new float[3 * this.nPoints];
+		this.colors = new int[this.nPoints];
+		this.visibilityMask = new boolean[this.nPoints];
+
+		// Populate the arrays
+		update(rgbImg, depthMap, projection, reductionFactor);
 	}
 
 	/**
@@ -110,7 +142,7 @@ public class KinectPoints {
 			int widthNew = width / reductionFactor;
 			int heightNew = height / reductionFactor;
 			int nPointsNew = widthNew * heightNew;
-			PVector[] pointsNew = new PVector[nPointsNew];
+			float[] pointsNew = new float[3 * nPointsNew];
 			int[] colorsNew = new int[nPointsNew];
 			boolean[] visibilityMaskNew = new boolean[nPointsNew];
 
@@ -119,7 +151,7 @@ public class KinectPoints {
 				for (int col = 0; col < widthNew; col++) {
 					int indexNew = col + row * widthNew;
 					int index = col * reductionFactor + row * reductionFactor * width;
-					pointsNew[indexNew] = points[index];
+					System.arraycopy(points, 3 * index, pointsNew, 3 * indexNew, 3);
 					colorsNew[indexNew] = colors[index];
 					visibilityMaskNew[indexNew] = visibilityMask[index];
 				}
@@ -144,39 +176,123 @@ public class KinectPoints {
 	 * @param reductionFactor the scale reduction factor
 	 */
 	public void update(PVector[] pointsNew, PImage rgbImgNew, int[] depthMapNew, int reductionFactor) {
-		reductionFactor = Math.max(1, reductionFactor);
-		int widthNew = rgbImgNew.width / reductionFactor;
-		int heightNew = rgbImgNew.height / reductionFactor;
+		int factor = Math.max(1, reductionFactor);
+		int widthNew = rgbImgNew.width / factor;
+		int heightNew = rgbImgNew.height / factor;
 
 		// Check if the arrays resolution has changed
+		resize(widthNew, heightNew);
+
+		// Update the arrays
+		rgbImgNew.loadPixels();
+		int[] pixels = rgbImgNew.pixels;
+		int originalWidth = rgbImgNew.width;
+
+		forEachBand(getNBands(), (band, rowStart, rowEnd) -> {
+			for (int row = rowStart; row < rowEnd; row++) {
+				for (int col = 0; col < width; col++) {
+					int index = col + row * width;
+					int indexOriginal = col * factor + row * factor * originalWidth;
+					PVector point = pointsNew[indexOriginal];
+					points[3 * index] = point.x;
+					points[3 * index + 1] = point.y;
+					points[3 * index + 2] = point.z;
+					colors[index] = pixels[indexOriginal];
+					visibilityMask[index] = depthMapNew[indexOriginal] > 0;
+				}
+			}
+		});
+
+		rgbImgNew.updatePixels();
+	}
+
+	/**
+	 * Updates the Kinect points with a new Kinect depth map, calculating the real world coordinates only for the
+	 * sampled points
+	 * 
+	 * @param rgbImgNew the new Kinect color image
+	 * @param depthMapNew the new Kinect depth map
+	 * @param projection the depth projection used to calculate the real world coordinates
+	 * @param reductionFactor the scale reduction factor
+	 */
+	public void update(PImage rgbImgNew, int[] depthMapNew, DepthProjection projection, int reductionFactor) {
+		int factor = Math.max(1, reductionFactor);
+		int widthNew = rgbImgNew.width / factor;
+		int heightNew = rgbImgNew.height / factor;
+		float[] rays = projection.getRays(factor);
+
+		// Check if the arrays resolution has changed
+		resize(widthNew, heightNew);
+
+		// Update the arrays
+		rgbImgNew.loadPixels();
+		int[] pixels = rgbImgNew.pixels;
+		int originalWidth = rgbImgNew.width;
+
+		forEachBand(getNBands(), (band, rowStart, rowEnd) -> {
+			for (int row = rowStart; row < rowEnd; row++) {
+				for (int col = 0; col < width; col++) {
+					int index = col + row * width;
+					int indexOriginal = col * factor + row * factor * originalWidth;
+					int depth = depthMapNew[indexOriginal];
+					points[3 * index] = rays[2 * index] * depth;
+					points[3 * index + 1] = rays[2 * index + 1] * depth;
+					points[3 * index + 2] = depth;
+					colors[index] = pixels[indexOriginal];
+					visibilityMask[index] = depth > 0;
+				}
+			}
+		});
+
+		rgbImgNew.updatePixels();
+	}
+
+	/**
+	 * Resizes the arrays if their dimensions are different from the given dimensions
+	 * 
+	 * @param widthNew the new arrays horizontal dimension
+	 * @param heightNew the new arrays vertical dimension
+	 */
+	private void resize(int widthNew, int heightNew) {
 		if (widthNew != width || heightNew != height) {
 			width = widthNew;
 			height = heightNew;
 			nPoints = width * height;
-			points = new PVector[nPoints];
+			points = new float[3 * nPoints];
 			colors = new int[nPoints];
 			visibilityMask = new boolean[nPoints];
+		}
+	}
 
-			// Initialize the points array
-			for (int i = 0; i < nPoints; i++) {
-				points[i] = new PVector();
-			}
+	/**
+	 * Calculates the number of row bands that should be used to process the points in parallel
+	 * 
+	 * @return the number of row bands
+	 */
+	int getNBands() {
+		if (height < 2) {
+			return 1;
 		}
 
-		// Update the arrays
-		rgbImgNew.loadPixels();
+		int maxBands = 4 * Runtime.getRuntime().availableProcessors();
 
-		for (int row = 0; row < height; row++) {
-			for (int col = 0; col < width; col++) {
-				int index = col + row * width;
-				int indexOriginal = col * reductionFactor + row * reductionFactor * rgbImgNew.width;
-				points[index].set(pointsNew[indexOriginal]);
-				colors[index] = rgbImgNew.pixels[indexOriginal];
-				visibilityMask[index] = depthMapNew[indexOriginal] > 0;
-			}
-		}
+		return Math.max(1, Math.min(Math.min(height, maxBands), nPoints / MIN_BAND_POINTS));
+	}
 
-		rgbImgNew.updatePixels();
+	/**
+	 * Runs a task over all the row bands. The bands are processed in parallel on the common fork-join pool
+	 * 
+	 * @param nBands the number of row bands
+	 * @param task the task to run in each band
+	 */
+	void forEachBand(int nBands, BandTask task) {
+		if (nBands == 1) {
+			task.run(0, 0, height);
+		} else {
+			IntStream.range(0, nBands).parallel().forEach(band -> {
+				task.run(band, (band * height) / nBands, ((band + 1) * height) / nBands);
+			});
+		}
 	}
 
 	/**
@@ -192,11 +308,15 @@ public class KinectPoints {
 		float yMax = corners[1].y;
 		float zMax = corners[1].z;
 
-		for (int i = 0; i < nPoints; i++) {
-			PVector point = points[i];
-			visibilityMask[i] &= (point.x > xMin) && (point.x < xMax) && (point.y > yMin) && (point.y < yMax)
-					&& (point.z > zMin) && (point.z < zMax);
-		}
+		forEachBand(getNBands(), (band, rowStart, rowEnd) -> {
+			for (int i = rowStart * width, j = 3 * i, end = rowEnd * width; i < end; i++, j += 3) {
+				float x = points[j];
+				float y = points[j + 1];
+				float z = points[j + 2];
+				visibilityMask[i] &= (x > xMin) && (x < xMax) && (y > yMin) && (y < yMax) && (z > zMin)
+						&& (z < zMax);
+			}
+		});
 	}
 
 	/**
@@ -205,62 +325,202 @@ public class KinectPoints {
 	 * @return a points array with the lower and upper corner limits
 	 */
 	public PVector[] calculateLimits() {
-		float xMin = Float.MAX_VALUE;
-		float yMin = Float.MAX_VALUE;
-		float zMin = Float.MAX_VALUE;
-		float xMax = -Float.MAX_VALUE;
-		float yMax = -Float.MAX_VALUE;
-		float zMax = -Float.MAX_VALUE;
-
-		for (int i = 0; i < nPoints; i++) {
-			if (visibilityMask[i]) {
-				PVector point = points[i];
-
-				if (point.x < xMin) {
-					xMin = point.x;
-				}
+		// Calculate the limits of each band
+		int nBands = getNBands();
+		float[][] bandLimits = new float[nBands][];
+
+		forEachBand(nBands, (band, rowStart, rowEnd) -> {
+			float xMin = Float.MAX_VALUE;
+			float yMin = Float.MAX_VALUE;
+			float zMin = Float.MAX_VALUE;
+			float xMax = -Float.MAX_VALUE;
+			float yMax = -Float.MAX_VALUE;
+			float zMax = -Float.MAX_VALUE;
+
+			for (int i = rowStart * width, j = 3 * i, end = rowEnd * width; i < end; i++, j += 3) {
+				if (visibilityMask[i]) {
+					float x = points[j];
+					float y = points[j + 1];
+					float z = points[j + 2];
+
+					if (x < xMin) {
+						xMin = x;
+					}
 
-				if (point.x > xMax) {
-					xMax = point.x;
-				}
+					if (x > xMax) {
+						xMax = x;
+					}
 
-				if (point.y < yMin) {
-					yMin = point.y;
-				}
+					if (y < yMin) {
+						yMin = y;
+					}
 
-				if (point.y > yMax) {
-					yMax = point.y;
-				}
+					if (y > yMax) {
+						yMax = y;
+					}
 
-				if (point.z < zMin) {
-					zMin = point.z;
-				}
+					if (z < zMin) {
+						zMin = z;
+					}
 
-				if (point.z > zMax) {
-					zMax = point.z;
+					if (z > zMax) {
+						zMax = z;
+					}
 				}
 			}
+
+			bandLimits[band] = new float[] { xMin, yMin, zMin, xMax, yMax, zMax };
+		});
+
+		// Combine the bands limits
+		float[] limits = bandLimits[0];
+
+		for (int band = 1; band < nBands; band++) {
+			for (int k = 0; k < 3; k++) {
+				limits[k] = Math.min(limits[k], bandLimits[band][k]);
+				limits[k + 3] = Math.max(limits[k + 3], bandLimits[band][k + 3]);
+			}
 		}
 
 		// Check that there was at least a visible point
-		if ((xMax - xMin) >= 0) {
-			return new PVector[] { new PVector(xMin, yMin, zMin), new PVector(xMax, yMax, zMax) };
+		if ((limits[3] - limits[0]) >= 0) {
+			return new PVector[] { new PVector(limits[0], limits[1], limits[2]),
+					new PVector(limits[3], limits[4], limits[5]) };
 		} else {
 			return null;
 		}
 	}
 
+	/**
+	 * Calculates the corner limits that contain most of the visible points, ignoring a given percentage of the points
+	 * at each side of the three coordinates. The limits are obtained from the coordinates histograms, so a few stray
+	 * points will not inflate them
+	 * 
+	 * @param percentile the percentage of visible points that will be left outside each of the limits
+	 * @return a points array with the lower and upper corner limits
+	 */
+	public PVector[] calculateLimits(float percentile) {
+		PVector[] limits = calculateLimits();
+
+		if (limits == null || percentile <= 0) {
+			return limits;
+		}
+
+		// Calculate the coordinates histograms in each band
+		float[] minValues = new float[] { limits[0].x, limits[0].y, limits[0].z };
+		float[] maxValues = new float[] { limits[1].x, limits[1].y, limits[1].z };
+		float[] binScales = new float[3];
+
+		for (int k = 0; k < 3; k++) {
+			float range = maxValues[k] - minValues[k];
+			binScales[k] = range > 0 ? HISTOGRAM_BINS / range : 0;
+		}
+
+		int nBands = getNBands();
+		int[][] bandHistograms = new int[nBands][];
+
+		forEachBand(nBands, (band, rowStart, rowEnd) -> {
+			int[] histogram = new int[3 * HISTOGRAM_BINS];
+
+			for (int i = rowStart * width, j = 3 * i, end = rowEnd * width; i < end; i++, j += 3) {
+				if (visibilityMask[i]) {
+					for (int k = 0; k < 3; k++) {
+						int bin = (int) ((points[j + k] - minValues[k]) * binScales[k]);
+						histogram[k * HISTOGRAM_BINS + Math.min(bin, HISTOGRAM_BINS - 1)]++;
+					}
+				}
+			}
+
+			bandHistograms[band] = histogram;
+		});
+
+		// Combine the bands histograms
+		int[] histogram = bandHistograms[0];
+
+		for (int band = 1; band < nBands; band++) {
+			for (int bin = 0; bin < histogram.length; bin++) {
+				histogram[bin] += bandHistograms[band][bin];
+			}
+		}
+
+		// Find the histogram bins that leave the given percentage of visible points outside
+		int nVisible = 0;
+
+		for (int bin = 0; bin < HISTOGRAM_BINS; bin++) {
+			nVisible += histogram[bin];
+		}
+
+		int nExcluded = (int) (nVisible * Math.min(percentile, 50) / 100);
+		float[] lowerLimits = new float[3];
+		float[] upperLimits = new float[3];
+
+		for (int k = 0; k < 3; k++) {
+			if (binScales[k] == 0) {
+				lowerLimits[k] = minValues[k];
+				upperLimits[k] = minValues[k];
+				continue;
+			}
+
+			int offset = k * HISTOGRAM_BINS;
+			int lowerBin = 0;
+			int counter = histogram[offset];
+
+			while (counter <= nExcluded) {
+				lowerBin++;
+				counter += histogram[offset + lowerBin];
+			}
+
+			int upperBin = HISTOGRAM_BINS - 1;
+			counter = histogram[offset + upperBin];
+
+			while (counter <= nExcluded) {
+				upperBin--;
+				counter += histogram[offset + upperBin];
+			}
+
+			lowerLimits[k] = minValues[k] + lowerBin / binScales[k];
+			upperLimits[k] = minValues[k] + (upperBin + 1) / binScales[k];
+		}
+
+		return new PVector[] { new PVector(lowerLimits[0], lowerLimits[1], lowerLimits[2]),
+				new PVector(upperLimits[0], upperLimits[1], upperLimits[2]) };
+	}
+
+	/**
+	 * Returns a copy of the coordinates of a given point
+	 * 
+	 * @param index the point index
+	 * @return the point coordinates
+	 */
+	public PVector getPoint(int index) {
+		return new PVector(points[3 * index], points[3 * index + 1], points[3 * index + 2]);
+	}
+
+	/**
+	 * Sets the coordinates of a given point
+	 * 
+	 * @param index the point index
+	 * @param x the point x coordinate
+	 * @param y the point y coordinate
+	 * @param z the point z coordinate
+	 */
+	public void setPoint(int index, float x, float y, float z) {
+		points[3 * index] = x;
+		points[3 * index + 1] = y;
+		points[3 * index + 2] = z;
+	}
+
 	/**
 	 * Returns true if the two points are close enough to be considered connected
 	 * 
-	 * @param point1 the first point
-	 * @param point2 the second point
+	 * @param index1 the first point index
+	 * @param index2 the second point index
 	 * @return true if the points can be considered connected
 	 */
-	private static boolean connected(PVector point1, PVector point2) {
-		float dx = point1.x - point2.x;
-		float dy = point1.y - point2.y;
-		float dz = point1.z - point2.z;
+	boolean connected(int index1, int index2) {
+		float dx = points[3 * index1] - points[3 * index2];
+		float dy = points[3 * index1 + 1] - points[3 * index2 + 1];
+		float dz = points[3 * index1 + 2] - points[3 * index2 + 2];
 
 		return (dx * dx + dy * dy + dz * dz) < MAX_SEPARATION_SQ;
 	}
@@ -274,15 +534,7 @@ public class KinectPoints {
 	public void drawAsPixels(PApplet p, int pixelSize) {
 		p.pushStyle();
 		p.strokeWeight(pixelSize);
-
-		for (int i = 0; i < nPoints; i++) {
-			if (visibilityMask[i]) {
-				PVector point = points[i];
-				p.stroke(colors[i]);
-				p.point(point.x, point.y, point.z);
-			}
-		}
-
+		KinectMesh.pixels(this).draw(p);
 		p.popStyle();
 	}
 
@@ -296,15 +548,7 @@ public class KinectPoints {
 	public void drawAsPixels(PApplet p, int pixelSize, int pixelColor) {
 		p.pushStyle();
 		p.strokeWeight(pixelSize);
-		p.stroke(pixelColor);
-
-		for (int i = 0; i < nPoints; i++) {
-			if (visibilityMask[i]) {
-				PVector point = points[i];
-				p.point(point.x, point.y, point.z);
-			}
-		}
-
+		KinectMesh.pixels(this).draw(p, pixelColor);
 		p.popStyle();
 	}
 
@@ -317,82 +561,7 @@ public class KinectPoints {
 	public void drawAsBands(PApplet p, int verticalGap) {
 		p.pushStyle();
 		p.noStroke();
-		boolean bandStarted = false;
-
-		for (int row = 0; row < height - 1; row += verticalGap) {
-			// Finish the band if we are starting a new row and the last shape was not closed
-			if (bandStarted) {
-				p.endShape();
-				bandStarted = false;
-			}
-
-			for (int col = 0; col < width; col++) {
-				int index = col + row * width;
-
-				// Check if the point is valid
-				if (visibilityMask[index]) {
-					PVector point = points[index];
-
-					if (!bandStarted) {
-						// Start a new band
-						p.beginShape(PApplet.TRIANGLE_STRIP);
-						p.fill(colors[index]);
-						p.vertex(point.x, point.y, point.z);
-						bandStarted = true;
-					} else if (KinectPoints.connected(point, points[index - 1])) {
-						p.fill(colors[index]);
-						p.vertex(point.x, point.y, point.z);
-					} else {
-						p.endShape();
-						bandStarted = false;
-
-						// It's a good point, use it in the next loop as starting point for a new band
-						col--;
-						continue;
-					}
-
-					// Check if the lower point is valid
-					int lowerIndex = index + width;
-
-					if (visibilityMask[lowerIndex]) {
-						PVector lowerPoint = points[lowerIndex];
-
-						if (KinectPoints.connected(point, lowerPoint)) {
-							p.fill(colors[lowerIndex]);
-							p.vertex(lowerPoint.x, lowerPoint.y, lowerPoint.z);
-						} else {
-							p.fill(colors[index]);
-							p.vertex(point.x, point.y, point.z);
-						}
-					} else {
-						p.fill(colors[index]);
-						p.vertex(point.x, point.y, point.z);
-					}
-				} else if (bandStarted) {
-					// The point is not valid, let's see if we can use the lower point for the last point in the band
-					int lowerIndex = index + width;
-
-					if (visibilityMask[lowerIndex]) {
-						PVector lowerPoint = points[lowerIndex];
-
-						if (KinectPoints.connected(lowerPoint, points[index - 1])) {
-							p.fill(colors[lowerIndex]);
-							p.vertex(lowerPoint.x, lowerPoint.y, lowerPoint.z);
-						}
-					}
-
-					// Finish the band
-					p.endShape();
-					bandStarted = false;
-				}
-			}
-		}
-
-		// Finish the band if the last shape was not closed
-		if (bandStarted) {
-			p.endShape();
-		}
-
+		KinectMesh.bands(this, verticalGap).draw(p);
 		p.popStyle();
 	}
 
@@ -406,108 +575,10 @@ public class KinectPoints {
 	public void drawAsBands(PApplet p, int verticalGap, int bandsColor) {
 		p.pushStyle();
 		p.noStroke();
-		p.fill(bandsColor);
-		boolean bandStarted = false;
-
-		for (int row = 0; row < height - 1; row += verticalGap) {
-			// Finish the band if we are starting a new row and the last shape was not closed
-			if (bandStarted) {
-				p.endShape();
-				bandStarted = false;
-			}
-
-			for (int col = 0; col < width; col++) {
-				int index = col + row * width;
-
-				// Check if the point is valid
-				if (visibilityMask[index]) {
-					PVector point = points[index];
-
-					if (!bandStarted) {
-						// Start a new band
-						p.beginShape(PApplet.TRIANGLE_STRIP);
-						p.vertex(point.x, point.y, point.z);
-						bandStarted = true;
-					} else if (KinectPoints.connected(point, points[index - 1])) {
-						p.vertex(point.x, point.y, point.z);
-					} else {
-						p.endShape();
-						bandStarted = false;
-
-						// It's a good point, use it in the next loop as starting point for a new band
-						col--;
-						continue;
-					}
-
-					// Check if the lower point is valid
-					int lowerIndex = index + width;
-
-					if (visibilityMask[lowerIndex]) {
-						PVector lowerPoint = points[lowerIndex];
-
-						if (KinectPoints.connected(point, lowerPoint)) {
-							p.vertex(lowerPoint.x, lowerPoint.y, lowerPoint.z);
-						} else {
-							p.vertex(point.x, point.y, point.z);
-						}
-					} else {
-						p.vertex(point.x, point.y, point.z);
-					}
-				} else if (bandStarted) {
-					// The point is not valid, let's see if we can use the lower point for the last point in the band
-					int lowerIndex = index + width;
-
-					if (visibilityMask[lowerIndex]) {
-						PVector lowerPoint = points[lowerIndex];
-
-						if (KinectPoints.connected(lowerPoint, points[index - 1])) {
-							p.vertex(lowerPoint.x, lowerPoint.y, lowerPoint.z);
-						}
-					}
-
-					// Finish the band
-					p.endShape();
-					bandStarted = false;
-				}
-			}
-		}
-
-		// Finish the band if the last shape was not closed
-		if (bandStarted) {
-			p.endShape();
-		}
-
+		KinectMesh.bands(this, verticalGap).draw(p, bandsColor);
 		p.popStyle();
 	}
 
-	/**
-	 * Draws a line between two Kinect points if they are connected
-	 * 
-	 * @param p the parent Processing applet
-	 * @param point1 the first point
-	 * @param point2 the second point
-	 * @param lineColor the line color
-	 */
-	private void drawLine(PApplet p, PVector point1, PVector point2, int lineColor) {
-		if (KinectPoints.connected(point1, point2)) {
-			p.stroke(lineColor);
-			p.line(point1.x, point1.y, point1.z, point2.x, point2.y, point2.z);
-		}
-	}
-
-	/**
-	 * Draws a line between two Kinect points if they are connected
-	 * 
-	 * @param p the parent Processing applet
-	 * @param point1 the first point
-	 * @param point2 the second point
-	 */
-	private void drawLine(PApplet p, PVector point1, PVector point2) {
-		if (KinectPoints.connected(point1, point2)) {
-			p.line(point1.x, point1.y, point1.z, point2.x, point2.y, point2.z);
-		}
-	}
-
 	/**
 	 * Draws the Kinect points as lines on the screen
 	 * 
@@ -517,30 +588,7 @@ public class KinectPoints {
 	public void drawAsLines(PApplet p, float lineWeight) {
 		p.pushStyle();
 		p.strokeWeight(lineWeight);
-
-		for (int row = 0; row < height - 1; row++) {
-			for (int col = 0; col < width - 1; col++) {
-				int index = col + row * width;
-
-				if (visibilityMask[index]) {
-					PVector point = points[index];
-					int lineColor = colors[index];
-
-					if (visibilityMask[index + 1]) {
-						drawLine(p, point, points[index + 1], lineColor);
-					}
-
-					if (visibilityMask[index + width]) {
-						drawLine(p, point, points[index + width], lineColor);
-					}
-
-					if (visibilityMask[index + 1 + width]) {
-						drawLine(p, point, points[index + 1 + width], lineColor);
-					}
-				}
-			}
-		}
-
+		KinectMesh.lines(this).draw(p);
 		p.popStyle();
 	}
 
@@ -554,78 +602,10 @@ public class KinectPoints {
 	public void drawAsLines(PApplet p, float lineWeight, int lineColor) {
 		p.pushStyle();
 		p.strokeWeight(lineWeight);
-		p.stroke(lineColor);
-
-		for (int row = 0; row < height - 1; row++) {
-			for (int col = 0; col < width - 1; col++) {
-				int index = col + row * width;
-
-				if (visibilityMask[index]) {
-					PVector point = points[index];
-
-					if (visibilityMask[index + 1]) {
-						drawLine(p, point, points[index + 1]);
-					}
-
-					if (visibilityMask[index + width]) {
-						drawLine(p, point, points[index + width]);
-					}
-
-					if (visibilityMask[index + 1 + width]) {
-						drawLine(p, point, points[index + 1 + width]);
-					}
-				}
-			}
-		}
-
+		KinectMesh.lines(this).draw(p, lineColor);
 		p.popStyle();
 	}
 
-	/**
-	 * Draws a triangle between three Kinect points if they are connected
-	 * 
-	 * @param p the parent Processing applet
-	 * @param point1 the first point
-	 * @param point2 the second point
-	 * @param point3 the third point
-	 */
-	private void drawTriangle(PApplet p, PVector point1, PVector point2, PVector point3) {
-		if (KinectPoints.connected(point1, point2) && KinectPoints.connected(point1, point3)
-				&& KinectPoints.connected(point2, point3)) {
-			p.beginShape(PApplet.TRIANGLES);
-			p.vertex(point1.x, point1.y, point1.z);
-			p.vertex(point2.x, point2.y, point2.z);
-			p.vertex(point3.x, point3.y, point3.z);
-			p.endShape();
-		}
-	}
-
-	/**
-	 * Draws a triangle between three Kinect points if they are connected
-	 * 
-	 * @param p the parent Processing applet
-	 * @param point1 the first point
-	 * @param point2 the second point
-	 * @param point3 the third point
-	 * @param color1 the first point color
-	 * @param color2 the second point color
-	 * @param color3 the third point color
-	 */
-	private void drawTriangle(PApplet p, PVector point1, PVector point2, PVector point3, int color1, int color2,
-			int color3) {
-		if (KinectPoints.connected(point1, point2) && KinectPoints.connected(point1, point3)
-				&& KinectPoints.connected(point2, point3)) {
-			p.beginShape(PApplet.TRIANGLES);
-			p.fill(color1);
-			p.vertex(point1.x, point1.y, point1.z);
-			p.fill(color2);
-			p.vertex(point2.x, point2.y, point2.z);
-			p.fill(color3);
-			p.vertex(point3.x, point3.y, point3.z);
-			p.endShape();
-		}
-	}
-
 	/**
 	 * Draws the Kinect points as triangles on the screen
 	 * 
@@ -634,35 +614,7 @@ public class KinectPoints {
 	public void drawAsTriangles(PApplet p) {
 		p.pushStyle();
 		p.noStroke();
-
-		for (int row = 0; row < height - 1; row++) {
-			for (int col = 0; col < width - 1; col++) {
-				int index = col + row * width;
-
-				// First triangle
-				if (visibilityMask[index] && visibilityMask[index + width]) {
-					if (visibilityMask[index + 1]) {
-						drawTriangle(p, points[index], points[index + 1], points[index + width], colors[index],
-								colors[index + 1], colors[index + width]);
-					} else if (visibilityMask[index + 1 + width]) {
-						drawTriangle(p, points[index], points[index + 1 + width], points[index + width], colors[index],
-								colors[index + 1 + width], colors[index + width]);
-					}
-				}
-
-				// Second triangle
-				if (visibilityMask[index + 1] && visibilityMask[index + 1 + width]) {
-					if (visibilityMask[index + width]) {
-						drawTriangle(p, points[index + 1], points[index + 1 + width], points[index + width],
-								colors[index + 1], colors[index + 1 + width], colors[index + width]);
-					} else if (visibilityMask[index]) {
-						drawTriangle(p, points[index], points[index + 1], points[index + 1 + width], colors[index],
-								colors[index + 1], colors[index + 1 + width]);
-					}
-				}
-			}
-		}
-
+		KinectMesh.triangles(this).draw(p);
 		p.popStyle();
 	}
 
@@ -675,32 +627,7 @@ public class KinectPoints {
 	public void drawAsTriangles(PApplet p, int trianglesColor) {
 		p.pushStyle();
 		p.noStroke();
-		p.fill(trianglesColor);
-
-		for (int y = 0; y < height - 1; y++) {
-			for (int x = 0; x < width - 1; x++) {
-				int index = x + y * width;
-
-				// First triangle
-				if (visibilityMask[index] && visibilityMask[index + width]) {
-					if (visibilityMask[index + 1]) {
-						drawTriangle(p, points[index], points[index + 1], points[index + width]);
-					} else if (visibilityMask[index + 1 + width]) {
-						drawTriangle(p, points[index], points[index + 1 + width], points[index + width]);
-					}
-				}
-
-				// Second triangle
-				if (visibilityMask[index + 1] && visibilityMask[index + 1 + width]) {
-					if (visibilityMask[index + width]) {
-						drawTriangle(p, points[index + 1], points[index + 1 + width], points[index + width]);
-					} else if (visibilityMask[index]) {
-						drawTriangle(p, points[index], points[index + 1], points[index + 1 + width]);
-					}
-				}
-			}
-		}
-
+		KinectMesh.triangles(this).draw(p, trianglesColor);
 		p.popStyle();
 	}
-}
\ No newline at end of file
+}
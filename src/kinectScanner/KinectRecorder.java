@@ -0,0 +1,162 @@
+package kinectScanner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import processing.core.PImage;
+
+/**
+ * Class used to record the frames from a Kinect frame source in a binary file, that can be replayed later with the
+ * RecordedKinectSource class.
+ * 
+ * The file starts with a header containing the depth map dimensions and the depth camera fields of view. Each frame
+ * contains the frame time stamp, the depth map values as 16 bits integers and the RGB image pixels. The real world
+ * coordinates are not saved, because they can be calculated from the depth map and the fields of view.
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class KinectRecorder {
+
+	/**
+	 * The recording file header identifier
+	 */
+	static final int MAGIC = 0x4b4e4354;
+
+	/**
+	 * The recording file format version. It should be increased every time the format changes
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * The recording file header size in bytes
+	 */
+	static final int HEADER_SIZE = 6 * 4;
+
+	private FileChannel channel;
+	private int width;
+	private int height;
+	private ByteBuffer frameBuffer;
+	private long startTime;
+	private int nFrames;
+
+	/**
+	 * Constructs a Kinect recorder object
+	 * 
+	 * @param fileName the recording file name
+	 * @param source the Kinect frame source that will be recorded
+	 */
+	public KinectRecorder(String fileName, KinectFrameSource source) {
+		this.width = source.getWidth();
+		this.height = source.getHeight();
+		this.frameBuffer = ByteBuffer.allocateDirect(getFrameSize(this.width, this.height));
+		this.startTime = -1;
+		this.nFrames = 0;
+
+		try {
+			this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+			// Write the file header
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).putInt(this.width).putInt(this.height);
+			header.putFloat(source.getHorizontalFieldOfView()).putFloat(source.getVerticalFieldOfView());
+			header.flip();
+			write(header);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("KinectRecorder class: could not create " + fileName, e);
+		}
+	}
+
+	/**
+	 * Returns the size in bytes of a recorded frame
+	 * 
+	 * @param width the depth map width
+	 * @param height the depth map height
+	 * @return the frame size in bytes
+	 */
+	static int getFrameSize(int width, int height) {
+		return 8 + (2 + 4) * width * height;
+	}
+
+	/**
+	 * Records the current frame of a Kinect frame source
+	 * 
+	 * @param source the Kinect frame source. It should have the same dimensions as the source used to create the
+	 *            recorder
+	 */
+	public void record(KinectFrameSource source) {
+		int[] depthMap = source.getDepthMap();
+		PImage rgbImg = source.getRgbImage();
+		int nPoints = width * height;
+
+		if (depthMap.length != nPoints || rgbImg.width * rgbImg.height != nPoints) {
+			throw new IllegalArgumentException("KinectRecorder class: the frame dimensions have changed");
+		}
+
+		// Calculate the frame time stamp relative to the first recorded frame
+		long time = System.nanoTime();
+
+		if (startTime < 0) {
+			startTime = time;
+		}
+
+		// Fill the frame buffer
+		frameBuffer.clear();
+		frameBuffer.putLong(time - startTime);
+		ShortBuffer depthBuffer = frameBuffer.asShortBuffer();
+
+		for (int i = 0; i < nPoints; i++) {
+			depthBuffer.put((short) depthMap[i]);
+		}
+
+		frameBuffer.position(frameBuffer.position() + 2 * nPoints);
+		rgbImg.loadPixels();
+		frameBuffer.asIntBuffer().put(rgbImg.pixels, 0, nPoints);
+		frameBuffer.position(frameBuffer.position() + 4 * nPoints);
+		frameBuffer.flip();
+
+		// Write the frame in the file
+		try {
+			write(frameBuffer);
+			nFrames++;
+		} catch (IOException e) {
+			throw new IllegalStateException("KinectRecorder class: could not write frame " + nFrames, e);
+		}
+	}
+
+	/**
+	 * Writes the buffer contents in the recording file
+	 * 
+	 * @param buffer the buffer to write
+	 * @throws IOException if the buffer could not be written
+	 */
+	private void write(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Returns the number of recorded frames
+	 * 
+	 * @return the number of recorded frames
+	 */
+	public int getNFrames() {
+		return nFrames;
+	}
+
+	/**
+	 * Closes the recording file
+	 */
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			System.out.println("KinectRecorder class: could not close the recording file");
+		}
+	}
+}
@@ -1,6 +1,6 @@
 package kinectScanner;
 
-import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import SimpleOpenNI.SimpleOpenNI;
 import processing.core.PApplet;
@@ -32,14 +32,22 @@ public class KinectScannerSketch extends PApplet {
 	public int monochromeColor = 255;
 	public int resolution = 2;
 	public PVector[] limits = null;
+	public float limitsPercentile = 0;
 	// public PVector[] limits = new PVector[] { new PVector(-1100, -1500, 0), new PVector(1100, 1000, 3300) };
 	public String fileName = "test";
 	public String fileDir = "src/kinectScanner/out/";
 	public boolean drawBox = false;
 	public int framesPerScan = 10;
+	public ScanAccumulator.Method scanAveraging = ScanAccumulator.Method.MEAN;
 	public boolean takeScan = false;
 	public boolean drawScan = false;
 	public boolean saveScan = false;
+	// Scan file format: "points" (text), "bpoints" (binary) or "ply" (binary PLY)
+	public String scanFileFormat = "points";
+	// Mesh file format used to also export the saved scans and sculptures: PLY, OBJ, STL or null (no mesh)
+	public MeshExporter.Format meshFileFormat = null;
+	public String scanToLoad = null;
+	// public String scanToLoad = "src/kinectScanner/out/test-1.bpoints";
 	public boolean verticalSlitScan = true;
 	public boolean rotateSlitScan = false;
 	public boolean centerSlitScan = false;
@@ -52,8 +60,19 @@ public class KinectScannerSketch extends PApplet {
 	public boolean oktoberfest = false;
 	public boolean handControl = false;
 
+	// Kinect frames source variables. Set the recording file to replay a recorded session instead of using the sensor
+	public String recordingFile = null;
+	// public String recordingFile = "src/kinectScanner/out/test.kinect";
+	public boolean replayAtMaxSpeed = false;
+	public boolean recordSession = false;
+	public boolean backgroundAcquisition = true;
+
 	// Main sketch objects
 	public SimpleOpenNI context;
+	public KinectFrameSource frameSource;
+	public KinectRecorder recorder;
+	public DepthProjection projection;
+	public KinectAcquisition acquisition;
 	public KinectPoints kPoints;
 	public ScanBox box;
 	public Sculpture sculpture;
@@ -63,9 +82,8 @@ public class KinectScannerSketch extends PApplet {
 	public Floor floor;
 	public KinectControlPanel controlPanel;
 	public Scan scan;
-	public Scan slitScan;
-	public ArrayList<Scan> scansToAverage = new ArrayList<Scan>();
-	public ArrayList<Slit> slits = new ArrayList<Slit>();
+	public SlitScan slitScan;
+	public ScanAccumulator scanAccumulator;
 
 	// Scene perspective variables
 	public float initZoom = 0.35f;
@@ -84,6 +102,7 @@ public class KinectScannerSketch extends PApplet {
 	private int handGesture = 0;
 	private PVector handPosition = null;
 	private PVector previousHandPosition = null;
+	private ConcurrentLinkedQueue<Runnable> handEvents = new ConcurrentLinkedQueue<Runnable>();
 
 	/**
 	 * Sets the default window size
@@ -102,28 +121,55 @@ public class KinectScannerSketch extends PApplet {
 		// The 3D perspective should also affect the points and lines
 		hint(ENABLE_STROKE_PERSPECTIVE);
 
-		// Initialize SimpleOpenNI context
-		context = new SimpleOpenNI(this);
-		context.setMirror(true);
-		context.enableDepth();
-		context.enableRGB();
-		context.alternativeViewPointDepthToImage();
+		// Initialize the Kinect frames source
+		if (recordingFile != null) {
+			// Replay the recorded session. The hand detection and tracking will not be available
+			context = null;
+			frameSource = new RecordedKinectSource(recordingFile, replayAtMaxSpeed, true);
+		} else {
+			// Initialize SimpleOpenNI context
+			context = new SimpleOpenNI(this);
+			context.setMirror(true);
+			context.enableDepth();
+			context.enableRGB();
+			context.alternativeViewPointDepthToImage();
+			frameSource = new LiveKinectSource(context);
+			frameSource.update();
+		}
 
 		// Set the hand gesture that will be used to detect hands
 		handGesture = SimpleOpenNI.GESTURE_HAND_RAISE;
 
-		// Initialize the KinectPoints object
-		context.update();
-		kPoints = new KinectPoints(context.depthMapRealWorld(), context.rgbImage(), context.depthMap(), resolution);
+		// Initialize the Kinect session recorder if necessary
+		if (recordSession) {
+			String recordingFileName = fileDir + fileName + ".kinect";
+			recorder = new KinectRecorder(recordingFileName, frameSource);
+			println("Record session: Kinect frames will be saved in " + recordingFileName);
+		}
+
+		// Initialize the KinectPoints object. The depth map is converted to real world coordinates by the sketch
+		projection = new DepthProjection(frameSource);
+		kPoints = new KinectPoints(frameSource.getRgbImage(), frameSource.getDepthMap(), projection, resolution);
 
 		// Calculate the scene limits if necessary
 		if (limits == null) {
-			limits = kPoints.calculateLimits();
+			limits = kPoints.calculateLimits(limitsPercentile);
+		}
+
+		// Start acquiring the Kinect frames in a background thread if necessary
+		if (backgroundAcquisition) {
+			acquisition = new KinectAcquisition(frameSource, projection, recorder, resolution, limits);
+			acquisition.start();
 		}
 
 		// Initialize the scan box
 		box = new ScanBox(PVector.add(limits[0], limits[1]).mult(0.5f), 400);
 
+		// Load a previously saved scan if necessary
+		if (scanToLoad != null) {
+			scan = Scan.loadBinaryPoints(this, scanToLoad);
+		}
+
 		// Initialize the sculpture
 		sculpture = new Sculpture(60f, 30, 10);
 
@@ -163,7 +209,12 @@ public class KinectScannerSketch extends PApplet {
 	 */
 	public void draw() {
 		// Write the frame rate on the screen title
-		surface.setTitle("Kinect Munich Creative Coding Workshop 2016 // " + (int) frameRate + " fps");
+		if (acquisition != null) {
+			surface.setTitle("Kinect Munich Creative Coding Workshop 2016 // " + (int) frameRate + " fps // "
+					+ (int) acquisition.getFrameRate() + " Kinect fps");
+		} else {
+			surface.setTitle("Kinect Munich Creative Coding Workshop 2016 // " + (int) frameRate + " fps");
+		}
 
 		// Draw the background
 		if (backgroundImg != null) {
@@ -173,22 +224,51 @@ public class KinectScannerSketch extends PApplet {
 		}
 
 		// Update the kinect points
-		context.update();
-		kPoints.update(context.depthMapRealWorld(), context.rgbImage(), context.depthMap(), resolution);
+		boolean newFrame;
+
+		if (acquisition != null) {
+			// Use the most recent frame from the acquisition thread
+			acquisition.setResolution(resolution);
+			acquisition.setLimits(limits);
+			kPoints = acquisition.getLatestPoints();
+			newFrame = acquisition.isNewFrame();
+		} else {
+			// Get the next frame, and record it if necessary
+			newFrame = frameSource.update();
+
+			if (newFrame && recorder != null) {
+				recorder.record(frameSource);
+			}
+
+			kPoints.update(frameSource.getRgbImage(), frameSource.getDepthMap(), projection, resolution);
 
-		// Constrain the Kinect points visibility to the limits defined by the user
-		kPoints.constrainPoints(limits);
+			// Constrain the Kinect points visibility to the limits defined by the user
+			kPoints.constrainPoints(limits);
+		}
+
+		// Apply the hand events received since the last frame
+		Runnable handEvent;
+
+		while ((handEvent = handEvents.poll()) != null) {
+			handEvent.run();
+		}
 
-		// Check if the hand detection and tracking should be enabled or disabled
-		if (takeSculpture || oktoberfest || handControl) {
+		// Check if the hand detection and tracking should be enabled or disabled. It's only available with the sensor
+		if (context != null && (takeSculpture || oktoberfest || handControl)) {
 			if (!handIsEnabled) {
-				context.enableHand();
-				context.startGesture(handGesture);
+				synchronized (frameSource) {
+					context.enableHand();
+					context.startGesture(handGesture);
+				}
+
 				handIsEnabled = true;
 			}
 		} else if (handIsEnabled) {
-			context.enableHand(false);
-			context.endGesture(handGesture);
+			synchronized (frameSource) {
+				context.enableHand(false);
+				context.endGesture(handGesture);
+			}
+
 			handIsEnabled = false;
 			handPosition = null;
 			previousHandPosition = null;
@@ -256,23 +336,30 @@ public class KinectScannerSketch extends PApplet {
 			}
 		}
 
-		// Check if a scan should be taken
-		if (takeScan) {
+		// Check if a scan should be taken. Only new frames are used, since the sketch can run faster than the sensor
+		if (takeScan && newFrame) {
 			if (framesPerScan == 1) {
 				scan = new Scan(kPoints, box);
 				frameIterator = framesPerScan;
 			} else {
-				scansToAverage.add(new Scan(kPoints, box));
+				// Start a new accumulation if necessary (the resolution could have changed)
+				if (scanAccumulator == null || scanAccumulator.width != kPoints.width
+						|| scanAccumulator.height != kPoints.height) {
+					scanAccumulator = new ScanAccumulator(kPoints.width, kPoints.height, scanAveraging);
+					frameIterator = 0;
+				}
+
+				scanAccumulator.add(kPoints, box);
 				frameIterator++;
 				println("Take scan: Running (frame " + frameIterator + ")");
 
 				if (frameIterator >= framesPerScan) {
-					scan = KinectHelper.averageScans(scansToAverage);
+					scan = scanAccumulator.getScan();
 				}
 			}
 
 			if (frameIterator >= framesPerScan) {
-				scansToAverage.clear();
+				scanAccumulator = null;
 				frameIterator = 0;
 				scanCounter++;
 				takeScan = false;
@@ -292,19 +379,27 @@ public class KinectScannerSketch extends PApplet {
 		// Save the last scan taken
 		if (saveScan) {
 			if (scan != null) {
-				String scanFileName = fileDir + fileName + "-" + scanCounter + ".points";
-				scan.savePoints(this, scanFileName);
+				String scanFileName = fileDir + fileName + "-" + scanCounter + "." + scanFileFormat;
+				saveScanFile(scan, scanFileName);
 				println("Save scan: 3D points saved in " + scanFileName);
 			}
 
 			saveScan = false;
 		}
 
-		// Check if a slit scan should be taken
-		if (takeSlitScan) {
-			slits.add(new Slit(kPoints, box, verticalSlitScan));
-			slitScan = KinectHelper.combineSlits(slits, rotateSlitScan, centerSlitScan);
-			println("Take slit scan: Running (" + slits.size() + " slits)");
+		// Apply the slit scan options, which can be changed from the control panel
+		if (slitScan != null) {
+			slitScan.setOptions(rotateSlitScan, centerSlitScan);
+		}
+
+		// Check if a slit scan should be taken. Only new frames are used, to avoid duplicated slits
+		if (takeSlitScan && newFrame) {
+			if (slitScan == null) {
+				slitScan = new SlitScan(rotateSlitScan, centerSlitScan);
+			}
+
+			slitScan.addSlit(new Slit(kPoints, box, verticalSlitScan, slitScan.getLastSlitPosition()));
+			println("Take slit scan: Running (" + slitScan.getNSlits() + " slits)");
 		}
 
 		// Draw the last slit scan taken
@@ -320,8 +415,8 @@ public class KinectScannerSketch extends PApplet {
 		if (saveSlitScan) {
 			if (slitScan != null) {
 				slitScanCounter++;
-				String slitScanFileName = fileDir + fileName + "-slit" + slitScanCounter + ".points";
-				slitScan.savePoints(this, slitScanFileName);
+				String slitScanFileName = fileDir + fileName + "-slit" + slitScanCounter + "." + scanFileFormat;
+				saveScanFile(slitScan.getScan(), slitScanFileName);
 				println("Save slit scan: 3D points saved in " + slitScanFileName);
 			}
 
@@ -356,6 +451,11 @@ public class KinectScannerSketch extends PApplet {
 			sculptureCounter++;
 			String sculptureFileName = fileDir + fileName + "-" + sculptureCounter + ".sculpt";
 			sculpture.savePoints(this, sculptureFileName);
+
+			if (meshFileFormat != null) {
+				sculpture.exportMesh(this, getMeshFileName(sculptureFileName), color(230, 100, 100), meshFileFormat);
+			}
+
 			saveSculpture = false;
 			println("Save sculpture: control points saved in " + sculptureFileName);
 		}
@@ -402,6 +502,56 @@ public class KinectScannerSketch extends PApplet {
 		}
 	}
 
+	/**
+	 * Stops the acquisition thread and closes the Kinect frames source and the session recorder before the sketch exits
+	 */
+	public void exit() {
+		if (acquisition != null) {
+			acquisition.stop();
+			acquisition = null;
+		}
+
+		if (recorder != null) {
+			recorder.close();
+			println("Record session: " + recorder.getNFrames() + " frames saved");
+			recorder = null;
+		}
+
+		frameSource.close();
+		super.exit();
+	}
+
+	/**
+	 * Saves a scan on a file using the selected scan file format
+	 * 
+	 * @param scanToSave the scan to save
+	 * @param scanFileName the file name
+	 */
+	public void saveScanFile(Scan scanToSave, String scanFileName) {
+		if (scanFileFormat.equals("bpoints")) {
+			scanToSave.saveBinaryPoints(this, scanFileName);
+		} else if (scanFileFormat.equals("ply")) {
+			scanToSave.savePly(this, scanFileName);
+		} else {
+			scanToSave.savePoints(this, scanFileName);
+		}
+
+		if (meshFileFormat != null) {
+			scanToSave.exportMesh(this, getMeshFileName(scanFileName), meshFileFormat);
+		}
+	}
+
+	/**
+	 * Returns the name of the mesh file associated to a scan or sculpture file
+	 * 
+	 * @param dataFileName the scan or sculpture file name
+	 * @return the mesh file name
+	 */
+	public String getMeshFileName(String dataFileName) {
+		return dataFileName.substring(0, dataFileName.lastIndexOf('.')) + "-mesh."
+				+ meshFileFormat.toString().toLowerCase();
+	}
+
 	/**
 	 * Sets the sketch scene lights
 	 */
@@ -481,7 +631,8 @@ public class KinectScannerSketch extends PApplet {
 	}
 
 	/**
-	 * Starts tracking a hand when a hand gesture is recognized within the sketch limits
+	 * Starts tracking a hand when a hand gesture is recognized within the sketch limits. The SimpleOpenNI callbacks can
+	 * be called from the acquisition thread, so the changes in the sketch variables are applied in the next draw call
 	 * 
 	 * @param context the SimpleOpenNI context object
 	 * @param gestureType the identified gesture type
@@ -495,8 +646,11 @@ public class KinectScannerSketch extends PApplet {
 				&& position.z > limits[0].z && position.z < limits[1].z) {
 			context.endGesture(gestureType);
 			context.startTrackingHand(position);
-			handPosition = position.copy();
-			previousHandPosition = position.copy();
+			PVector startPosition = position.copy();
+			handEvents.add(() -> {
+				handPosition = startPosition.copy();
+				previousHandPosition = startPosition.copy();
+			});
 		}
 	}
 
@@ -519,12 +673,15 @@ public class KinectScannerSketch extends PApplet {
 	 * @param position the hand position
 	 */
 	public void onTrackedHand(SimpleOpenNI context, int handId, PVector position) {
-		previousHandPosition = handPosition;
-		handPosition = position.copy();
+		PVector trackedPosition = position.copy();
+		handEvents.add(() -> {
+			previousHandPosition = handPosition != null ? handPosition : trackedPosition;
+			handPosition = trackedPosition;
 
-		if (takeSculpture) {
-			sculpture.addControlPoint(position);
-		}
+			if (takeSculpture) {
+				sculpture.addControlPoint(trackedPosition);
+			}
+		});
 	}
 
 	/**
@@ -536,15 +693,17 @@ public class KinectScannerSketch extends PApplet {
 	public void onLostHand(SimpleOpenNI context, int handId) {
 		println("SimpleOpenNI hand information: Hand lost (id: " + handId + ")");
 		context.startGesture(handGesture);
-		handPosition = null;
-		previousHandPosition = null;
+		handEvents.add(() -> {
+			handPosition = null;
+			previousHandPosition = null;
 
-		// Set the original zoom and orientation view if we were using the hand to control them
-		if (handControl) {
-			zoom = initZoom;
-			rotX = initRotX;
-			rotY = initRotY;
-		}
+			// Set the original zoom and orientation view if we were using the hand to control them
+			if (handControl) {
+				zoom = initZoom;
+				rotX = initRotX;
+				rotY = initRotY;
+			}
+		});
 	}
 
 	/**
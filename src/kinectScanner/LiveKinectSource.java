@@ -0,0 +1,88 @@
+package kinectScanner;
+
+import SimpleOpenNI.SimpleOpenNI;
+import processing.core.PImage;
+import processing.core.PVector;
+
+/**
+ * Kinect frame source that reads the frames from the Kinect sensor using the SimpleOpenNI library
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class LiveKinectSource implements KinectFrameSource {
+
+	private SimpleOpenNI context;
+
+	/**
+	 * Constructs a live Kinect source object. The SimpleOpenNI context should have the depth and RGB cameras enabled,
+	 * and the depth view point aligned to the RGB camera
+	 * 
+	 * @param context the SimpleOpenNI context object
+	 */
+	public LiveKinectSource(SimpleOpenNI context) {
+		this.context = context;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean update() {
+		return context.update();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getWidth() {
+		return context.depthWidth();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getHeight() {
+		return context.depthHeight();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int[] getDepthMap() {
+		return context.depthMap();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public PVector[] getRealWorldPoints() {
+		return context.depthMapRealWorld();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public PImage getRgbImage() {
+		return context.rgbImage();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public float getHorizontalFieldOfView() {
+		return context.hFieldOfView();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public float getVerticalFieldOfView() {
+		return context.vFieldOfView();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void close() {
+		context.close();
+	}
+}
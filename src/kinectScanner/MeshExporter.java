@@ -0,0 +1,677 @@
+package kinectScanner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.IntStream;
+
+import colorUtils.PackedColor;
+import toxi.geom.Vec3D;
+
+/**
+ * Helper class used to export the scan and sculpture meshes in binary PLY, OBJ and binary STL files.
+ * 
+ * The meshes are never built completely in memory. They are divided in chunks of rows (scans) or sections
+ * (sculptures) that are generated and encoded in parallel, a few chunks at a time, and then written to the file in
+ * order. The scan triangles follow the same rules as the drawAsTriangles method, and the sculpture triangles follow
+ * the same tube geometry as the Sculpture draw method.
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class MeshExporter {
+
+	/**
+	 * The supported mesh file formats
+	 */
+	public enum Format {
+		PLY, OBJ, STL
+	}
+
+	/**
+	 * The approximate number of scan points in each chunk
+	 */
+	private static final int CHUNK_POINTS = 1 << 14;
+
+	/**
+	 * The number of sculpture sections in each chunk
+	 */
+	private static final int CHUNK_SECTIONS = 64;
+
+	/**
+	 * The number of chunks generated in parallel before they are written
+	 */
+	private static final int WINDOW_CHUNKS = 2 * Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The number of digits used to write the face count in the PLY header
+	 */
+	private static final int COUNT_DIGITS = 10;
+
+	/**
+	 * A mesh that can be generated in independent chunks. The vertices should be numbered consecutively in chunk order
+	 */
+	interface MeshSource {
+
+		/**
+		 * Returns the total number of vertices in the mesh
+		 * 
+		 * @return the number of vertices
+		 */
+		int getNVertices();
+
+		/**
+		 * Returns the number of chunks in the mesh
+		 * 
+		 * @return the number of chunks
+		 */
+		int getNChunks();
+
+		/**
+		 * Adds the vertices that belong to a chunk
+		 * 
+		 * @param chunk the chunk index
+		 * @param out the chunk where the vertices should be added
+		 */
+		void addVertices(int chunk, MeshChunk out);
+
+		/**
+		 * Adds the triangles that belong to a chunk
+		 * 
+		 * @param chunk the chunk index
+		 * @param out the chunk where the triangles should be added
+		 */
+		void addTriangles(int chunk, MeshChunk out);
+	}
+
+	/**
+	 * Growable container with the vertices or the triangles generated for a mesh chunk. The coordinates of the triangle
+	 * corners are only kept if the chunk is created for a format that needs them
+	 */
+	static class MeshChunk {
+		float[] vertices = new float[3 * 256];
+		int[] colors = new int[256];
+		int nVertices = 0;
+		int[] triangles = new int[3 * 256];
+		float[] corners;
+		int nTriangles = 0;
+
+		/**
+		 * Creates an empty mesh chunk
+		 * 
+		 * @param storeCorners true if the coordinates of the triangle corners should be kept
+		 */
+		MeshChunk(boolean storeCorners) {
+			corners = storeCorners ? new float[9 * 256] : null;
+		}
+
+		/**
+		 * Checks if the chunk keeps the coordinates of the triangle corners
+		 * 
+		 * @return true if the triangle corners are kept
+		 */
+		boolean storesCorners() {
+			return corners != null;
+		}
+
+		/**
+		 * Adds a vertex to the chunk
+		 * 
+		 * @param x the vertex x coordinate
+		 * @param y the vertex y coordinate
+		 * @param z the vertex z coordinate
+		 * @param color the vertex color
+		 */
+		void addVertex(float x, float y, float z, int color) {
+			if (nVertices == colors.length) {
+				vertices = grow(vertices);
+				colors = grow(colors);
+			}
+
+			vertices[3 * nVertices] = x;
+			vertices[3 * nVertices + 1] = y;
+			vertices[3 * nVertices + 2] = z;
+			colors[nVertices] = color;
+			nVertices++;
+		}
+
+		/**
+		 * Adds a triangle to the chunk
+		 * 
+		 * @param id1 the first vertex id
+		 * @param id2 the second vertex id
+		 * @param id3 the third vertex id
+		 * @param triangleCorners the nine coordinates of the triangle vertices. Ignored if the corners are not kept
+		 */
+		void addTriangle(int id1, int id2, int id3, float[] triangleCorners) {
+			if (3 * nTriangles == triangles.length) {
+				triangles = grow(triangles);
+
+				if (corners != null) {
+					corners = grow(corners);
+				}
+			}
+
+			triangles[3 * nTriangles] = id1;
+			triangles[3 * nTriangles + 1] = id2;
+			triangles[3 * nTriangles + 2] = id3;
+
+			if (corners != null) {
+				System.arraycopy(triangleCorners, 0, corners, 9 * nTriangles, 9);
+			}
+
+			nTriangles++;
+		}
+
+		/**
+		 * Doubles the size of an array
+		 * 
+		 * @param array the array
+		 * @return the new array
+		 */
+		private static float[] grow(float[] array) {
+			float[] arrayNew = new float[2 * array.length];
+			System.arraycopy(array, 0, arrayNew, 0, array.length);
+
+			return arrayNew;
+		}
+
+		/**
+		 * Doubles the size of an array
+		 * 
+		 * @param array the array
+		 * @return the new array
+		 */
+		private static int[] grow(int[] array) {
+			int[] arrayNew = new int[2 * array.length];
+			System.arraycopy(array, 0, arrayNew, 0, array.length);
+
+			return arrayNew;
+		}
+	}
+
+	/**
+	 * Encodes a chunk in the bytes that should be written to the file
+	 */
+	private interface ChunkEncoder {
+
+		/**
+		 * Encodes a chunk
+		 * 
+		 * @param chunk the mesh chunk
+		 * @return the encoded bytes
+		 */
+		byte[] encode(MeshChunk chunk);
+	}
+
+	/**
+	 * This class has no public constructor
+	 */
+	private MeshExporter() {
+
+	}
+
+	/**
+	 * Exports the triangles mesh of a scan. Only the visible points are written, so the scan doesn't need to be cropped
+	 * and it's not modified. The coordinates are written relative to the scan center
+	 * 
+	 * @param scan the scan
+	 * @param fileName the absolute file name
+	 * @param format the file format
+	 * @throws IOException if the file could not be written
+	 */
+	public static void export(Scan scan, String fileName, Format format) throws IOException {
+		export(new ScanSource(scan), fileName, format, "kinectScanner scan");
+	}
+
+	/**
+	 * Exports the tube mesh of a sculpture, including the front and back caps
+	 * 
+	 * @param sculpture the sculpture
+	 * @param color the sculpture color
+	 * @param fileName the absolute file name
+	 * @param format the file format
+	 * @throws IOException if the file could not be written
+	 */
+	public static void export(Sculpture sculpture, int color, String fileName, Format format) throws IOException {
+		export(new SculptureSource(sculpture.getSections(), color), fileName, format, "kinectScanner sculpture");
+	}
+
+	/**
+	 * Exports a mesh in a file
+	 * 
+	 * @param source the mesh source
+	 * @param fileName the absolute file name
+	 * @param format the file format
+	 * @param comment the comment added to the file header
+	 * @throws IOException if the file could not be written
+	 */
+	private static void export(MeshSource source, String fileName, Format format, String comment)
+			throws IOException {
+		try (ChannelWriter writer = new ChannelWriter(fileName, ByteOrder.LITTLE_ENDIAN)) {
+			long nTriangles;
+
+			switch (format) {
+			case PLY:
+				writer.putText("ply\nformat binary_little_endian 1.0\ncomment " + comment + "\nelement vertex "
+						+ source.getNVertices() + "\nproperty float x\nproperty float y\nproperty float z\n"
+						+ "property uchar red\nproperty uchar green\nproperty uchar blue\nelement face ");
+				long countPosition = writer.getPosition();
+				writer.putText(formatCount(0) + "\nproperty list uchar int vertex_indices\nend_header\n");
+				writeChunks(source, writer, true, false, MeshExporter::encodePlyVertices);
+				nTriangles = writeChunks(source, writer, false, false, MeshExporter::encodePlyTriangles);
+				writer.putBytesAt(countPosition, formatCount(nTriangles).getBytes(StandardCharsets.US_ASCII));
+				break;
+			case OBJ:
+				writer.putText("# " + comment + "\n");
+				writeChunks(source, writer, true, false, MeshExporter::encodeObjVertices);
+				writeChunks(source, writer, false, false, MeshExporter::encodeObjTriangles);
+				break;
+			case STL:
+				byte[] header = new byte[80];
+				byte[] headerText = ("binary " + comment).getBytes(StandardCharsets.US_ASCII);
+				System.arraycopy(headerText, 0, header, 0, Math.min(headerText.length, header.length));
+				writer.putBytes(header);
+				writer.putInt(0);
+				nTriangles = writeChunks(source, writer, false, true, MeshExporter::encodeStlTriangles);
+				writer.putBytesAt(header.length, ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN)
+						.putInt((int) nTriangles).array());
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Generates and encodes the mesh chunks in parallel, a window of chunks at a time, and writes them in order
+	 * 
+	 * @param source the mesh source
+	 * @param writer the channel writer
+	 * @param vertices true if the chunk vertices should be written, false if the chunk triangles should be written
+	 * @param corners true if the encoder needs the coordinates of the triangle corners
+	 * @param encoder the chunk encoder
+	 * @return the total number of vertices or triangles written
+	 * @throws IOException if the data could not be written
+	 */
+	private static long writeChunks(MeshSource source, ChannelWriter writer, boolean vertices, boolean corners,
+			ChunkEncoder encoder) throws IOException {
+		int nChunks = source.getNChunks();
+		long nElements = 0;
+
+		for (int windowStart = 0; windowStart < nChunks; windowStart += WINDOW_CHUNKS) {
+			int windowEnd = Math.min(windowStart + WINDOW_CHUNKS, nChunks);
+			int[] counts = new int[windowEnd - windowStart];
+			int offset = windowStart;
+			byte[][] encodedChunks = IntStream.range(windowStart, windowEnd).parallel().mapToObj(chunk -> {
+				MeshChunk meshChunk = new MeshChunk(corners);
+
+				if (vertices) {
+					source.addVertices(chunk, meshChunk);
+					counts[chunk - offset] = meshChunk.nVertices;
+				} else {
+					source.addTriangles(chunk, meshChunk);
+					counts[chunk - offset] = meshChunk.nTriangles;
+				}
+
+				return encoder.encode(meshChunk);
+			}).toArray(byte[][]::new);
+
+			for (int i = 0; i < encodedChunks.length; i++) {
+				writer.putBytes(encodedChunks[i]);
+				nElements += counts[i];
+			}
+		}
+
+		return nElements;
+	}
+
+	/**
+	 * Formats the PLY face count with a fixed number of digits, so it can be overwritten once it's known
+	 * 
+	 * @param count the face count
+	 * @return the formatted face count
+	 */
+	private static String formatCount(long count) {
+		return String.format("%0" + COUNT_DIGITS + "d", count);
+	}
+
+	/**
+	 * Encodes the chunk vertices in the binary PLY format
+	 * 
+	 * @param chunk the mesh chunk
+	 * @return the encoded bytes
+	 */
+	private static byte[] encodePlyVertices(MeshChunk chunk) {
+		ByteBuffer buffer = ByteBuffer.allocate(15 * chunk.nVertices).order(ByteOrder.LITTLE_ENDIAN);
+
+		for (int i = 0; i < chunk.nVertices; i++) {
+			int color = chunk.colors[i];
+			buffer.putFloat(chunk.vertices[3 * i]).putFloat(chunk.vertices[3 * i + 1])
+					.putFloat(chunk.vertices[3 * i + 2]);
+			buffer.put((byte) PackedColor.red(color)).put((byte) PackedColor.green(color))
+					.put((byte) PackedColor.blue(color));
+		}
+
+		return buffer.array();
+	}
+
+	/**
+	 * Encodes the chunk triangles in the binary PLY format
+	 * 
+	 * @param chunk the mesh chunk
+	 * @return the encoded bytes
+	 */
+	private static byte[] encodePlyTriangles(MeshChunk chunk) {
+		ByteBuffer buffer = ByteBuffer.allocate(13 * chunk.nTriangles).order(ByteOrder.LITTLE_ENDIAN);
+
+		for (int i = 0; i < 3 * chunk.nTriangles; i += 3) {
+			buffer.put((byte) 3).putInt(chunk.triangles[i]).putInt(chunk.triangles[i + 1])
+					.putInt(chunk.triangles[i + 2]);
+		}
+
+		return buffer.array();
+	}
+
+	/**
+	 * Encodes the chunk vertices in the OBJ format, using the common vertex colors extension
+	 * 
+	 * @param chunk the mesh chunk
+	 * @return the encoded bytes
+	 */
+	private static byte[] encodeObjVertices(MeshChunk chunk) {
+		StringBuilder text = new StringBuilder(64 * chunk.nVertices);
+
+		for (int i = 0; i < chunk.nVertices; i++) {
+			int color = chunk.colors[i];
+			text.append("v ").append(chunk.vertices[3 * i]).append(' ').append(chunk.vertices[3 * i + 1])
+					.append(' ').append(chunk.vertices[3 * i + 2]).append(' ').append(PackedColor.red(color) / 255f)
+					.append(' ').append(PackedColor.green(color) / 255f).append(' ')
+					.append(PackedColor.blue(color) / 255f).append('\n');
+		}
+
+		return text.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Encodes the chunk triangles in the OBJ format. The OBJ vertex indices start at 1
+	 * 
+	 * @param chunk the mesh chunk
+	 * @return the encoded bytes
+	 */
+	private static byte[] encodeObjTriangles(MeshChunk chunk) {
+		StringBuilder text = new StringBuilder(24 * chunk.nTriangles);
+
+		for (int i = 0; i < 3 * chunk.nTriangles; i += 3) {
+			text.append("f ").append(chunk.triangles[i] + 1).append(' ').append(chunk.triangles[i + 1] + 1)
+					.append(' ').append(chunk.triangles[i + 2] + 1).append('\n');
+		}
+
+		return text.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Encodes the chunk triangles in the binary STL format, calculating the triangle normals
+	 * 
+	 * @param chunk the mesh chunk
+	 * @return the encoded bytes
+	 */
+	private static byte[] encodeStlTriangles(MeshChunk chunk) {
+		ByteBuffer buffer = ByteBuffer.allocate(50 * chunk.nTriangles).order(ByteOrder.LITTLE_ENDIAN);
+		float[] c = chunk.corners;
+
+		for (int i = 0; i < 9 * chunk.nTriangles; i += 9) {
+			// Calculate the triangle normal
+			float ux = c[i + 3] - c[i];
+			float uy = c[i + 4] - c[i + 1];
+			float uz = c[i + 5] - c[i + 2];
+			float vx = c[i + 6] - c[i];
+			float vy = c[i + 7] - c[i + 1];
+			float vz = c[i + 8] - c[i + 2];
+			float nx = uy * vz - uz * vy;
+			float ny = uz * vx - ux * vz;
+			float nz = ux * vy - uy * vx;
+			float norm = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+			if (norm > 0) {
+				nx /= norm;
+				ny /= norm;
+				nz /= norm;
+			}
+
+			buffer.putFloat(nx).putFloat(ny).putFloat(nz);
+
+			for (int j = i; j < i + 9; j++) {
+				buffer.putFloat(c[j]);
+			}
+
+			buffer.putShort((short) 0);
+		}
+
+		return buffer.array();
+	}
+
+	/**
+	 * The scan mesh source. The vertices are the visible scan points and the chunks are bands of scan rows
+	 */
+	private static class ScanSource implements MeshSource {
+		private Scan scan;
+		private int rowsPerChunk;
+		private int nChunks;
+		private int[] vertexIds;
+		private int nVertices;
+
+		/**
+		 * Creates the scan mesh source, numbering the visible scan points
+		 * 
+		 * @param scan the scan
+		 */
+		ScanSource(Scan scan) {
+			this.scan = scan;
+			this.rowsPerChunk = Math.max(1, CHUNK_POINTS / Math.max(1, scan.width));
+			this.nChunks = (scan.height + rowsPerChunk - 1) / rowsPerChunk;
+
+			// Count the visible points in each chunk
+			int[] chunkOffsets = new int[nChunks + 1];
+			IntStream.range(0, nChunks).parallel().forEach(chunk -> {
+				int count = 0;
+
+				for (int i = getFirstPoint(chunk); i < getFirstPoint(chunk + 1); i++) {
+					if (scan.visibilityMask[i]) {
+						count++;
+					}
+				}
+
+				chunkOffsets[chunk + 1] = count;
+			});
+
+			for (int chunk = 0; chunk < nChunks; chunk++) {
+				chunkOffsets[chunk + 1] += chunkOffsets[chunk];
+			}
+
+			// Assign consecutive ids to the visible points
+			this.vertexIds = new int[scan.nPoints];
+			this.nVertices = chunkOffsets[nChunks];
+			IntStream.range(0, nChunks).parallel().forEach(chunk -> {
+				int id = chunkOffsets[chunk];
+
+				for (int i = getFirstPoint(chunk); i < getFirstPoint(chunk + 1); i++) {
+					vertexIds[i] = scan.visibilityMask[i] ? id++ : -1;
+				}
+			});
+		}
+
+		/**
+		 * Returns the index of the first point in a chunk
+		 * 
+		 * @param chunk the chunk index
+		 * @return the first point index
+		 */
+		private int getFirstPoint(int chunk) {
+			return Math.min(chunk * rowsPerChunk, scan.height) * scan.width;
+		}
+
+		public int getNVertices() {
+			return nVertices;
+		}
+
+		public int getNChunks() {
+			return nChunks;
+		}
+
+		public void addVertices(int chunk, MeshChunk out) {
+			float[] points = scan.points;
+			float cx = scan.center.x;
+			float cy = scan.center.y;
+			float cz = scan.center.z;
+
+			for (int i = getFirstPoint(chunk); i < getFirstPoint(chunk + 1); i++) {
+				if (scan.visibilityMask[i]) {
+					out.addVertex(points[3 * i] - cx, points[3 * i + 1] - cy, points[3 * i + 2] - cz, scan.colors[i]);
+				}
+			}
+		}
+
+		public void addTriangles(int chunk, MeshChunk out) {
+			float[] points = scan.points;
+			float cx = scan.center.x;
+			float cy = scan.center.y;
+			float cz = scan.center.z;
+			KinectMesh.IndexList list = new KinectMesh.IndexList();
+			int rowEnd = Math.min((chunk + 1) * rowsPerChunk, scan.height);
+
+			for (int row = chunk * rowsPerChunk; row < rowEnd; row++) {
+				KinectMesh.addRowTriangles(scan, row, list);
+			}
+
+			float[] corners = new float[9];
+			boolean storeCorners = out.storesCorners();
+
+			for (int i = 0; i < list.size; i += 3) {
+				for (int k = 0; k < 3 && storeCorners; k++) {
+					int index = list.values[i + k];
+					corners[3 * k] = points[3 * index] - cx;
+					corners[3 * k + 1] = points[3 * index + 1] - cy;
+					corners[3 * k + 2] = points[3 * index + 2] - cz;
+				}
+
+				out.addTriangle(vertexIds[list.values[i]], vertexIds[list.values[i + 1]],
+						vertexIds[list.values[i + 2]], corners);
+			}
+		}
+	}
+
+	/**
+	 * The sculpture mesh source. The vertices are the section contour points, followed by the front and back cap
+	 * centers, and the chunks are groups of consecutive sections
+	 */
+	private static class SculptureSource implements MeshSource {
+		private SculptureSection[] sections;
+		private int color;
+		private int sides;
+		private int nChunks;
+
+		/**
+		 * Creates the sculpture mesh source
+		 * 
+		 * @param sections the sculpture sections
+		 * @param color the sculpture color
+		 */
+		SculptureSource(SculptureSection[] sections, int color) {
+			this.sections = sections;
+			this.color = color;
+			this.sides = sections.length > 0 ? sections[0].points.length : 0;
+			this.nChunks = (sections.length + CHUNK_SECTIONS - 1) / CHUNK_SECTIONS;
+		}
+
+		public int getNVertices() {
+			return sections.length > 0 ? sections.length * sides + 2 : 0;
+		}
+
+		public int getNChunks() {
+			return nChunks;
+		}
+
+		public void addVertices(int chunk, MeshChunk out) {
+			int sectionEnd = Math.min((chunk + 1) * CHUNK_SECTIONS, sections.length);
+
+			for (int s = chunk * CHUNK_SECTIONS; s < sectionEnd; s++) {
+				for (Vec3D point : sections[s].points) {
+					out.addVertex(point.x, point.y, point.z, color);
+				}
+			}
+
+			// The cap centers go after all the section points
+			if (chunk == nChunks - 1) {
+				Vec3D frontCenter = sections[0].center;
+				Vec3D backCenter = sections[sections.length - 1].center;
+				out.addVertex(frontCenter.x, frontCenter.y, frontCenter.z, color);
+				out.addVertex(backCenter.x, backCenter.y, backCenter.z, color);
+			}
+		}
+
+		public void addTriangles(int chunk, MeshChunk out) {
+			int sectionEnd = Math.min((chunk + 1) * CHUNK_SECTIONS, sections.length - 1);
+			int frontId = sections.length * sides;
+			int backId = frontId + 1;
+			float[] corners = new float[9];
+
+			// Add the front cap
+			if (chunk == 0) {
+				SculptureSection section = sections[0];
+
+				for (int j = 0; j < sides; j++) {
+					int next = (j + 1) % sides;
+					setCorners(corners, section.center, section.points[next], section.points[j]);
+					out.addTriangle(frontId, next, j, corners);
+				}
+			}
+
+			// Add the tube between consecutive sections
+			for (int s = chunk * CHUNK_SECTIONS; s < sectionEnd; s++) {
+				Vec3D[] points1 = sections[s].points;
+				Vec3D[] points2 = sections[s + 1].points;
+				int offset1 = s * sides;
+				int offset2 = offset1 + sides;
+
+				for (int j = 0; j < sides; j++) {
+					int next = (j + 1) % sides;
+					setCorners(corners, points1[j], points2[j], points2[next]);
+					out.addTriangle(offset1 + j, offset2 + j, offset2 + next, corners);
+					setCorners(corners, points1[j], points2[next], points1[next]);
+					out.addTriangle(offset1 + j, offset2 + next, offset1 + next, corners);
+				}
+			}
+
+			// Add the back cap
+			if (chunk == nChunks - 1) {
+				SculptureSection section = sections[sections.length - 1];
+				int offset = (sections.length - 1) * sides;
+
+				for (int j = 0; j < sides; j++) {
+					int next = (j + 1) % sides;
+					setCorners(corners, section.center, section.points[j], section.points[next]);
+					out.addTriangle(backId, offset + j, offset + next, corners);
+				}
+			}
+		}
+
+		/**
+		 * Copies the coordinates of the triangle vertices in the corners array
+		 * 
+		 * @param corners the corners array
+		 * @param point1 the first triangle vertex
+		 * @param point2 the second triangle vertex
+		 * @param point3 the third triangle vertex
+		 */
+		private static void setCorners(float[] corners, Vec3D point1, Vec3D point2, Vec3D point3) {
+			corners[0] = point1.x;
+			corners[1] = point1.y;
+			corners[2] = point1.z;
+			corners[3] = point2.x;
+			corners[4] = point2.y;
+			corners[5] = point2.z;
+			corners[6] = point3.x;
+			corners[7] = point3.y;
+			corners[8] = point3.z;
+		}
+	}
+}
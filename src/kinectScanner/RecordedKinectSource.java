@@ -0,0 +1,295 @@
+package kinectScanner;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import processing.core.PImage;
+import processing.core.PVector;
+
+/**
+ * Kinect frame source that replays the frames saved with the KinectRecorder class. The recording file is memory-mapped,
+ * so the frames are read directly from the operating system page cache.
+ * 
+ * The frames can be replayed at the recorded speed, skipping frames if the sketch is slower than the Kinect frame
+ * rate, or at the maximum speed, returning a new frame every time the source is updated.
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class RecordedKinectSource implements KinectFrameSource {
+
+	private MappedByteBuffer[] segments;
+	private int framesPerSegment;
+	private int frameSize;
+	private int nFrames;
+	private int width;
+	private int height;
+	private float hFieldOfView;
+	private float vFieldOfView;
+	private DepthProjection projection;
+	private boolean maxSpeed;
+	private boolean loop;
+	private int currentFrame;
+	private long playbackStartTime;
+	private int[] depthMap;
+	private PVector[] realWorldPoints;
+	private boolean realWorldPointsUpdated;
+	private PImage rgbImg;
+
+	/**
+	 * Constructs a recorded Kinect source object
+	 * 
+	 * @param fileName the recording file name
+	 * @param maxSpeed if true the frames will be replayed at the maximum speed. Otherwise they will be replayed at the
+	 *            recorded speed
+	 * @param loop if true the recording will start again from the beginning when it reaches the last frame
+	 */
+	public RecordedKinectSource(String fileName, boolean maxSpeed, boolean loop) {
+		this.maxSpeed = maxSpeed;
+		this.loop = loop;
+
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			// Read the file header
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, KinectRecorder.HEADER_SIZE);
+
+			if (header.getInt() != KinectRecorder.MAGIC || header.getInt() != KinectRecorder.VERSION) {
+				throw new IllegalArgumentException("RecordedKinectSource class: " + fileName
+						+ " is not a valid recording file");
+			}
+
+			this.width = header.getInt();
+			this.height = header.getInt();
+			this.hFieldOfView = header.getFloat();
+			this.vFieldOfView = header.getFloat();
+			this.frameSize = KinectRecorder.getFrameSize(this.width, this.height);
+			this.nFrames = (int) ((channel.size() - KinectRecorder.HEADER_SIZE) / this.frameSize);
+
+			if (this.nFrames == 0) {
+				throw new IllegalArgumentException("RecordedKinectSource class: " + fileName + " has no frames");
+			}
+
+			// Map the frames in segments, because a single mapped buffer cannot be larger than 2GB
+			this.framesPerSegment = Integer.MAX_VALUE / this.frameSize;
+			int nSegments = (this.nFrames + this.framesPerSegment - 1) / this.framesPerSegment;
+			this.segments = new MappedByteBuffer[nSegments];
+
+			for (int i = 0; i < nSegments; i++) {
+				long offset = KinectRecorder.HEADER_SIZE + (long) i * this.framesPerSegment * this.frameSize;
+				int framesInSegment = Math.min(this.framesPerSegment, this.nFrames - i * this.framesPerSegment);
+				this.segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+						(long) framesInSegment * this.frameSize);
+			}
+		} catch (IOException | BufferUnderflowException e) {
+			throw new IllegalArgumentException("RecordedKinectSource class: could not read " + fileName, e);
+		}
+
+		// Initialize the frame arrays. The real world points are only calculated if they are requested
+		this.projection = new DepthProjection(this.width, this.height, this.hFieldOfView, this.vFieldOfView);
+		this.depthMap = new int[this.width * this.height];
+		this.realWorldPoints = null;
+		this.realWorldPointsUpdated = false;
+		this.rgbImg = new PImage(this.width, this.height);
+
+		// Load the first frame
+		this.currentFrame = -1;
+		this.playbackStartTime = -1;
+		readFrame(0);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean update() {
+		int nextFrame;
+
+		if (maxSpeed) {
+			nextFrame = currentFrame + 1;
+		} else {
+			// Select the last frame that was recorded before the current playback time
+			long time = System.nanoTime();
+
+			if (playbackStartTime < 0) {
+				playbackStartTime = time - getTimeStamp(currentFrame);
+			}
+
+			long playbackTime = time - playbackStartTime;
+			nextFrame = currentFrame;
+
+			while (nextFrame + 1 < nFrames && getTimeStamp(nextFrame + 1) <= playbackTime) {
+				nextFrame++;
+			}
+
+			// Check if the last frame was already replayed
+			if (currentFrame == nFrames - 1) {
+				nextFrame = nFrames;
+			}
+		}
+
+		if (nextFrame >= nFrames) {
+			if (!loop) {
+				return false;
+			}
+
+			nextFrame = 0;
+			playbackStartTime = -1;
+		}
+
+		if (nextFrame == currentFrame) {
+			return false;
+		}
+
+		readFrame(nextFrame);
+
+		return true;
+	}
+
+	/**
+	 * Returns the buffer containing a given frame, positioned at the frame start
+	 * 
+	 * @param frame the frame index
+	 * @return the buffer containing the frame
+	 */
+	private ByteBuffer getFrameBuffer(int frame) {
+		ByteBuffer buffer = segments[frame / framesPerSegment].duplicate();
+		buffer.position((frame % framesPerSegment) * frameSize);
+
+		return buffer;
+	}
+
+	/**
+	 * Returns the time stamp of a given frame
+	 * 
+	 * @param frame the frame index
+	 * @return the frame time stamp in nanoseconds, relative to the first recorded frame
+	 */
+	private long getTimeStamp(int frame) {
+		return getFrameBuffer(frame).getLong();
+	}
+
+	/**
+	 * Reads a frame from the recording file and updates the frame arrays
+	 * 
+	 * @param frame the frame index
+	 */
+	private void readFrame(int frame) {
+		ByteBuffer buffer = getFrameBuffer(frame);
+		buffer.getLong();
+		int nPoints = width * height;
+
+		// Read the depth map
+		ShortBuffer depthBuffer = buffer.asShortBuffer();
+
+		for (int i = 0; i < nPoints; i++) {
+			depthMap[i] = depthBuffer.get(i) & 0xffff;
+		}
+
+		realWorldPointsUpdated = false;
+
+		// Read the RGB image pixels
+		buffer.position(buffer.position() + 2 * nPoints);
+		buffer.asIntBuffer().get(rgbImg.pixels, 0, nPoints);
+		rgbImg.updatePixels();
+
+		currentFrame = frame;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int[] getDepthMap() {
+		return depthMap;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public PVector[] getRealWorldPoints() {
+		if (!realWorldPointsUpdated) {
+			int nPoints = width * height;
+
+			if (realWorldPoints == null) {
+				realWorldPoints = new PVector[nPoints];
+
+				for (int i = 0; i < nPoints; i++) {
+					realWorldPoints[i] = new PVector();
+				}
+			}
+
+			float[] rays = projection.getRays(1);
+
+			for (int i = 0; i < nPoints; i++) {
+				int depth = depthMap[i];
+				realWorldPoints[i].set(rays[2 * i] * depth, rays[2 * i + 1] * depth, depth);
+			}
+
+			realWorldPointsUpdated = true;
+		}
+
+		return realWorldPoints;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public PImage getRgbImage() {
+		return rgbImg;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public float getHorizontalFieldOfView() {
+		return hFieldOfView;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public float getVerticalFieldOfView() {
+		return vFieldOfView;
+	}
+
+	/**
+	 * Returns the number of frames in the recording
+	 * 
+	 * @return the number of frames
+	 */
+	public int getNFrames() {
+		return nFrames;
+	}
+
+	/**
+	 * Returns the index of the current frame
+	 * 
+	 * @return the current frame index
+	 */
+	public int getCurrentFrame() {
+		return currentFrame;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void close() {
+		segments = null;
+	}
+}
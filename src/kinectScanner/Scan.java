@@ -1,6 +1,17 @@
 package kinectScanner;
 
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+import colorUtils.PackedColor;
 import processing.core.PApplet;
+import processing.core.PShape;
 import processing.core.PVector;
 
 /**
@@ -10,11 +21,26 @@ import processing.core.PVector;
  */
 public class Scan extends KinectPoints {
 
+	/**
+	 * The binary points file header identifier
+	 */
+	private static final int MAGIC = 0x4b505453;
+
+	/**
+	 * The binary points file format version. It should be increased every time the format changes
+	 */
+	private static final int VERSION = 1;
+
 	/**
 	 * The scan central coordinates
 	 */
 	public PVector center;
 
+	private KinectMesh trianglesMesh;
+	private PShape trianglesShape;
+	private PShape uniformTrianglesShape;
+	private int uniformTrianglesColor;
+
 	/**
 	 * Constructs an empty Scan object with the specified dimensions
 	 * 
@@ -37,11 +63,12 @@ public class Scan extends KinectPoints {
 		this.center = box.center.copy();
 
 		// Update the arrays
-		for (int i = 0; i < this.nPoints; i++) {
-			PVector point = kp.points[i];
-			this.points[i].set(point);
-			this.colors[i] = kp.colors[i];
-			this.visibilityMask[i] = kp.visibilityMask[i] && box.isInside(point);
+		System.arraycopy(kp.points, 0, this.points, 0, this.points.length);
+		System.arraycopy(kp.colors, 0, this.colors, 0, this.nPoints);
+
+		for (int i = 0, j = 0; i < this.nPoints; i++, j += 3) {
+			this.visibilityMask[i] = kp.visibilityMask[i]
+					&& box.isInside(this.points[j], this.points[j + 1], this.points[j + 2]);
 		}
 	}
 
@@ -51,14 +78,15 @@ public class Scan extends KinectPoints {
 	 * @param rotationAngle the scan rotation angle in radians
 	 */
 	public void rotate(float rotationAngle) {
+		invalidateMesh();
 		float cos = PApplet.cos(rotationAngle);
 		float sin = PApplet.sin(rotationAngle);
 
-		for (int i = 0; i < nPoints; i++) {
-			PVector point = points[i];
-			point.sub(center);
-			point.set(cos * point.x - sin * point.z, point.y, sin * point.x + cos * point.z);
-			point.add(center);
+		for (int j = 0; j < points.length; j += 3) {
+			float x = points[j] - center.x;
+			float z = points[j + 2] - center.z;
+			points[j] = cos * x - sin * z + center.x;
+			points[j + 2] = sin * x + cos * z + center.z;
 		}
 	}
 
@@ -100,7 +128,7 @@ public class Scan extends KinectPoints {
 			int widthNew = colEnd - colIni + 1;
 			int heightNew = rowEnd - rowIni + 1;
 			int nPointsNew = widthNew * heightNew;
-			PVector[] pointsNew = new PVector[nPointsNew];
+			float[] pointsNew = new float[3 * nPointsNew];
 			int[] colorsNew = new int[nPointsNew];
 			boolean[] visibilityMaskNew = new boolean[nPointsNew];
 
@@ -109,7 +137,7 @@ public class Scan extends KinectPoints {
 				for (int col = 0; col < widthNew; col++) {
 					int indexNew = col + row * widthNew;
 					int index = (colIni + col) + (rowIni + row) * width;
-					pointsNew[indexNew] = points[index];
+					System.arraycopy(points, 3 * index, pointsNew, 3 * indexNew, 3);
 					colorsNew[indexNew] = colors[index];
 					visibilityMaskNew[indexNew] = visibilityMask[index];
 				}
@@ -122,7 +150,61 @@ public class Scan extends KinectPoints {
 			points = pointsNew;
 			colors = colorsNew;
 			visibilityMask = visibilityMaskNew;
+			invalidateMesh();
+		}
+	}
+
+	/**
+	 * Discards the cached scan mesh. It should be called every time the scan arrays are modified
+	 */
+	public void invalidateMesh() {
+		trianglesMesh = null;
+		trianglesShape = null;
+		uniformTrianglesShape = null;
+	}
+
+	/**
+	 * Returns the scan triangles mesh. The mesh is cached until the scan is modified, and it keeps a copy of the scan
+	 * points and colors
+	 * 
+	 * @return the scan triangles mesh
+	 */
+	public KinectMesh getTrianglesMesh() {
+		if (trianglesMesh == null) {
+			trianglesMesh = KinectMesh.triangles(this).copy();
+		}
+
+		return trianglesMesh;
+	}
+
+	/**
+	 * Draws the scan as triangles on the screen, using a cached shape
+	 * 
+	 * @param p the parent Processing applet
+	 */
+	@Override
+	public void drawAsTriangles(PApplet p) {
+		if (trianglesShape == null) {
+			trianglesShape = getTrianglesMesh().createShape(p);
+		}
+
+		p.shape(trianglesShape);
+	}
+
+	/**
+	 * Draws the scan as triangles on the screen with a uniform color, using a cached shape
+	 * 
+	 * @param p the parent Processing applet
+	 * @param trianglesColor the triangles color
+	 */
+	@Override
+	public void drawAsTriangles(PApplet p, int trianglesColor) {
+		if (uniformTrianglesShape == null || uniformTrianglesColor != trianglesColor) {
+			uniformTrianglesShape = getTrianglesMesh().createShape(p, trianglesColor);
+			uniformTrianglesColor = trianglesColor;
 		}
+
+		p.shape(uniformTrianglesShape);
 	}
 
 	/**
@@ -145,10 +227,12 @@ public class Scan extends KinectPoints {
 		for (int i = 0; i < nPoints; i++) {
 			if (visibilityMask[i]) {
 				// Center the points coordinates
-				PVector point = PVector.sub(points[i], center);
+				float x = points[3 * i] - center.x;
+				float y = points[3 * i + 1] - center.y;
+				float z = points[3 * i + 2] - center.z;
 				int col = colors[i];
-				lines[i + 1] = point.x + " " + point.y + " " + point.z + " " + p.red(col) + " " + p.green(col) + " "
-						+ p.blue(col);
+				lines[i + 1] = x + " " + y + " " + z + " " + (float) PackedColor.red(col) + " "
+						+ (float) PackedColor.green(col) + " " + (float) PackedColor.blue(col);
 			} else {
 				// Use a dummy line if the point should be masked
 				lines[i + 1] = "-99" + " " + "-99" + " " + "-99" + " " + "-99" + " " + "-99" + " " + "-99";
@@ -158,4 +242,162 @@ public class Scan extends KinectPoints {
 		// Save the data on the file
 		p.saveStrings(fileName, lines);
 	}
+
+	/**
+	 * Saves the scan points, colors and visibility mask on a binary file. The file starts with a header containing
+	 * the scan dimensions and center, followed by the centered points coordinates, the ARGB colors and the visibility
+	 * mask bits
+	 * 
+	 * @param p the parent Processing applet
+	 * @param fileName the file name
+	 */
+	public void saveBinaryPoints(PApplet p, String fileName) {
+		// Crop the scan to avoid writing unnecessary empty data points
+		crop();
+
+		// Create the visibility mask bit set
+		BitSet mask = new BitSet(nPoints);
+
+		for (int i = 0; i < nPoints; i++) {
+			if (visibilityMask[i]) {
+				mask.set(i);
+			}
+		}
+
+		long[] words = mask.toLongArray();
+
+		// Write the data on the file
+		try (ChannelWriter writer = new ChannelWriter(p.savePath(fileName), ByteOrder.BIG_ENDIAN)) {
+			writer.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height);
+			writer.putFloat(center.x).putFloat(center.y).putFloat(center.z).putInt(words.length);
+
+			for (int j = 0; j < points.length; j += 3) {
+				writer.putFloat(points[j] - center.x).putFloat(points[j + 1] - center.y)
+						.putFloat(points[j + 2] - center.z);
+			}
+
+			for (int i = 0; i < nPoints; i++) {
+				writer.putInt(colors[i]);
+			}
+
+			for (long word : words) {
+				writer.putLong(word);
+			}
+		} catch (IOException e) {
+			System.out.println("Scan class: there was a problem writing the points in " + fileName);
+		}
+	}
+
+	/**
+	 * Loads a scan from a binary file created with the saveBinaryPoints method. The file is memory-mapped
+	 * 
+	 * @param p the parent Processing applet
+	 * @param fileName the file name
+	 * @return the scan. null if the file could not be read
+	 */
+	public static Scan loadBinaryPoints(PApplet p, String fileName) {
+		try (FileChannel channel = FileChannel.open(Paths.get(p.sketchPath(fileName)), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				System.out.println("Scan class: " + fileName + " is not a binary points file");
+				return null;
+			}
+
+			// Check that the header dimensions are consistent with the file size
+			int width = buffer.getInt();
+			int height = buffer.getInt();
+			float centerX = buffer.getFloat();
+			float centerY = buffer.getFloat();
+			float centerZ = buffer.getFloat();
+			int nWords = buffer.getInt();
+			long nPoints = (long) width * height;
+
+			if (width < 0 || height < 0 || nWords < 0 || nWords > (nPoints + 63) / 64
+					|| 16 * nPoints + 8L * nWords > buffer.remaining()) {
+				System.out.println("Scan class: " + fileName + " has an invalid header");
+				return null;
+			}
+
+			// Create an empty scan with the file dimensions
+			Scan scan = new Scan(width, height);
+			scan.center.set(centerX, centerY, centerZ);
+
+			// Read the scan arrays
+			buffer.asFloatBuffer().get(scan.points);
+			buffer.position(buffer.position() + 4 * scan.points.length);
+			buffer.asIntBuffer().get(scan.colors);
+			buffer.position(buffer.position() + 4 * scan.colors.length);
+			long[] words = new long[nWords];
+			buffer.asLongBuffer().get(words);
+			BitSet mask = BitSet.valueOf(words);
+
+			// Move the points back to their original position
+			for (int i = 0, j = 0; i < scan.nPoints; i++, j += 3) {
+				scan.points[j] += scan.center.x;
+				scan.points[j + 1] += scan.center.y;
+				scan.points[j + 2] += scan.center.z;
+				scan.visibilityMask[i] = mask.get(i);
+			}
+
+			return scan;
+		} catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+			System.out.println("Scan class: there was a problem reading the points from " + fileName);
+			return null;
+		}
+	}
+
+	/**
+	 * Saves the visible scan points and colors on a binary PLY file
+	 * 
+	 * @param p the parent Processing applet
+	 * @param fileName the file name
+	 */
+	public void savePly(PApplet p, String fileName) {
+		// Crop the scan to avoid writing unnecessary empty data points
+		crop();
+
+		// Count the number of visible points
+		int nVisible = 0;
+
+		for (int i = 0; i < nPoints; i++) {
+			if (visibilityMask[i]) {
+				nVisible++;
+			}
+		}
+
+		// Write the data on the file
+		try (ChannelWriter writer = new ChannelWriter(p.savePath(fileName), ByteOrder.LITTLE_ENDIAN)) {
+			writer.putText("ply\nformat binary_little_endian 1.0\ncomment kinectScanner scan\nelement vertex "
+					+ nVisible + "\nproperty float x\nproperty float y\nproperty float z\nproperty uchar red\n"
+					+ "property uchar green\nproperty uchar blue\nend_header\n");
+
+			for (int i = 0, j = 0; i < nPoints; i++, j += 3) {
+				if (visibilityMask[i]) {
+					int col = colors[i];
+					writer.putFloat(points[j] - center.x).putFloat(points[j + 1] - center.y)
+							.putFloat(points[j + 2] - center.z);
+					writer.putByte(PackedColor.red(col)).putByte(PackedColor.green(col))
+							.putByte(PackedColor.blue(col));
+				}
+			}
+		} catch (IOException e) {
+			System.out.println("Scan class: there was a problem writing the points in " + fileName);
+		}
+	}
+
+	/**
+	 * Exports the scan triangles mesh in a PLY, OBJ or STL file. The file is written while the mesh is generated
+	 * 
+	 * @param p the parent Processing applet
+	 * @param fileName the file name
+	 * @param format the mesh file format
+	 */
+	public void exportMesh(PApplet p, String fileName, MeshExporter.Format format) {
+		try {
+			MeshExporter.export(this, p.savePath(fileName), format);
+		} catch (IOException e) {
+			System.out.println("Scan class: there was a problem writing the mesh in " + fileName);
+		}
+	}
 }
\ No newline at end of file
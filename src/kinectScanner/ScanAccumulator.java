@@ -0,0 +1,266 @@
+package kinectScanner;
+
+import colorUtils.PackedColor;
+
+/**
+ * Class used to average the Kinect points inside the scan box over many frames, without keeping a copy of each frame.
+ * 
+ * The accumulator keeps per point running statistics: the number of valid frames, the mean and variance of the
+ * coordinates (Welford's algorithm) and the sum of the color channels. Optionally, it can reject the outliers with a
+ * running sigma clipping or estimate the median coordinates with a stochastic approximation. The memory needed doesn't
+ * depend on the number of averaged frames.
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class ScanAccumulator {
+
+	/**
+	 * The methods that can be used to combine the frames
+	 */
+	public enum Method {
+		/**
+		 * The mean of all the frames
+		 */
+		MEAN,
+
+		/**
+		 * The mean of the frames that are not too far from the running mean
+		 */
+		SIGMA_CLIPPED_MEAN,
+
+		/**
+		 * An approximation of the median of all the frames
+		 */
+		MEDIAN
+	}
+
+	/**
+	 * The number of standard deviations from the running mean used to reject a point in the sigma clipping
+	 */
+	private static final float CLIPPING_SIGMAS = 2.5f;
+
+	/**
+	 * The minimum number of frames needed before starting to reject points in the sigma clipping
+	 */
+	private static final int MIN_CLIPPING_FRAMES = 4;
+
+	/**
+	 * The Kinect depth quantization step divided by the squared depth, in 1/millimeters. It comes from the 1/8 pixel
+	 * disparity resolution, the 580 pixels focal length and the 75 millimeters baseline of the Kinect depth camera
+	 */
+	private static final float DEPTH_QUANTIZATION = 1 / (8 * 580f * 75f);
+
+	/**
+	 * The median estimator gain, in units of the standard deviation. It's the optimal gain for normal distributions
+	 */
+	private static final float MEDIAN_GAIN = 1.2533f;
+
+	/**
+	 * The accumulator horizontal dimension
+	 */
+	public int width;
+
+	/**
+	 * The accumulator vertical dimension
+	 */
+	public int height;
+
+	/**
+	 * Total number of points in the accumulator
+	 */
+	public int nPoints;
+
+	private Method method;
+	private int nFrames;
+	private float[] centerSum;
+	private int[] counter;
+	private float[] mean;
+	private float[] m2;
+	private float[] median;
+	private int[] red;
+	private int[] green;
+	private int[] blue;
+
+	/**
+	 * Constructs an empty scan accumulator with the specified dimensions
+	 * 
+	 * @param width the accumulator horizontal dimension
+	 * @param height the accumulator vertical dimension
+	 * @param method the method used to combine the frames
+	 */
+	public ScanAccumulator(int width, int height, Method method) {
+		this.width = width;
+		this.height = height;
+		this.nPoints = this.width * this.height;
+		this.method = method;
+		this.nFrames = 0;
+		this.centerSum = new float[3];
+		this.counter = new int[this.nPoints];
+		this.mean = new float[3 * this.nPoints];
+		this.m2 = new float[3 * this.nPoints];
+		this.median = this.method == Method.MEDIAN ? new float[3 * this.nPoints] : null;
+		this.red = new int[this.nPoints];
+		this.green = new int[this.nPoints];
+		this.blue = new int[this.nPoints];
+	}
+
+	/**
+	 * Adds the Kinect points inside the scan box to the accumulator
+	 * 
+	 * @param kp the KinectPoints object. It should have the same dimensions as the accumulator
+	 * @param box the scan box from which the points will be selected
+	 */
+	public void add(KinectPoints kp, ScanBox box) {
+		if (kp.width != width || kp.height != height) {
+			throw new IllegalArgumentException("ScanAccumulator class: the Kinect points dimensions have changed");
+		}
+
+		centerSum[0] += box.center.x;
+		centerSum[1] += box.center.y;
+		centerSum[2] += box.center.z;
+		nFrames++;
+
+		kp.forEachBand(kp.getNBands(), (band, rowStart, rowEnd) -> {
+			for (int i = rowStart * width, end = rowEnd * width; i < end; i++) {
+				int j = 3 * i;
+				float x = kp.points[j];
+				float y = kp.points[j + 1];
+				float z = kp.points[j + 2];
+
+				if (kp.visibilityMask[i] && box.isInside(x, y, z)) {
+					if (method == Method.SIGMA_CLIPPED_MEAN && isOutlier(i, x, y, z)) {
+						continue;
+					}
+
+					addPoint(i, x, y, z, kp.colors[i]);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Checks if a point is too far from the running mean of the previous frames. The variance can't be smaller than the
+	 * squared depth quantization step at the point distance, otherwise identical values in the first frames would make
+	 * any later depth change an outlier
+	 * 
+	 * @param index the point index
+	 * @param x the point x coordinate
+	 * @param y the point y coordinate
+	 * @param z the point z coordinate
+	 * @return true if the point should be rejected
+	 */
+	private boolean isOutlier(int index, float x, float y, float z) {
+		int n = counter[index];
+
+		if (n < MIN_CLIPPING_FRAMES) {
+			return false;
+		}
+
+		int j = 3 * index;
+		float dx = x - mean[j];
+		float dy = y - mean[j + 1];
+		float dz = z - mean[j + 2];
+		float depthStep = DEPTH_QUANTIZATION * mean[j + 2] * mean[j + 2];
+		float variance = Math.max((m2[j] + m2[j + 1] + m2[j + 2]) / (n - 1), depthStep * depthStep);
+
+		return dx * dx + dy * dy + dz * dz > CLIPPING_SIGMAS * CLIPPING_SIGMAS * variance;
+	}
+
+	/**
+	 * Updates the running statistics of a point
+	 * 
+	 * @param index the point index
+	 * @param x the point x coordinate
+	 * @param y the point y coordinate
+	 * @param z the point z coordinate
+	 * @param color the point color
+	 */
+	private void addPoint(int index, float x, float y, float z, int color) {
+		int n = ++counter[index];
+		int j = 3 * index;
+		addCoordinate(j, x, n);
+		addCoordinate(j + 1, y, n);
+		addCoordinate(j + 2, z, n);
+
+		red[index] += PackedColor.red(color);
+		green[index] += PackedColor.green(color);
+		blue[index] += PackedColor.blue(color);
+	}
+
+	/**
+	 * Updates the running statistics of a single coordinate
+	 * 
+	 * @param position the coordinate position in the statistics arrays
+	 * @param value the coordinate value
+	 * @param n the number of values added so far, including this one
+	 */
+	private void addCoordinate(int position, float value, int n) {
+		float delta = value - mean[position];
+		mean[position] += delta / n;
+		m2[position] += delta * (value - mean[position]);
+
+		if (median != null) {
+			if (n == 1) {
+				median[position] = value;
+			} else {
+				// Robbins-Monro step towards the median, scaled with the running standard deviation
+				float sigma = (float) Math.sqrt(m2[position] / (n - 1));
+				median[position] += MEDIAN_GAIN * sigma * Math.signum(value - median[position]) / n;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of frames added to the accumulator
+	 * 
+	 * @return the number of frames
+	 */
+	public int getNFrames() {
+		return nFrames;
+	}
+
+	/**
+	 * Returns the variance of a point coordinates, summed over the three axes
+	 * 
+	 * @param index the point index
+	 * @return the point coordinates variance. Zero if the point was visible in less than two frames
+	 */
+	public float getVariance(int index) {
+		int n = counter[index];
+
+		if (n < 2) {
+			return 0;
+		}
+
+		int j = 3 * index;
+
+		return (m2[j] + m2[j + 1] + m2[j + 2]) / (n - 1);
+	}
+
+	/**
+	 * Creates a scan with the combination of all the frames added to the accumulator
+	 * 
+	 * @return the combined scan. null if no frames were added
+	 */
+	public Scan getScan() {
+		if (nFrames == 0) {
+			return null;
+		}
+
+		Scan scan = new Scan(width, height);
+		scan.center.set(centerSum[0] / nFrames, centerSum[1] / nFrames, centerSum[2] / nFrames);
+		float[] coordinates = median != null ? median : mean;
+
+		for (int i = 0; i < nPoints; i++) {
+			int n = counter[i];
+
+			if (n > 0) {
+				System.arraycopy(coordinates, 3 * i, scan.points, 3 * i, 3);
+				scan.colors[i] = PackedColor.pack(red[i] / n, green[i] / n, blue[i] / n);
+				scan.visibilityMask[i] = true;
+			}
+		}
+
+		return scan;
+	}
+}
@@ -1,6 +1,10 @@
 package kinectScanner;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
 
 import processing.core.PApplet;
 import processing.core.PVector;
@@ -19,6 +23,22 @@ public class Sculpture {
 	 */
 	private static final float MINIMUM_DISTANCE_SQ = 50 * 50;
 
+	/**
+	 * The number of spline segments that are recalculated when a new control point is added. The influence of a new
+	 * control point on the previous segments decreases geometrically, and it's negligible for older segments
+	 */
+	private static final int UPDATED_SEGMENTS = 4;
+
+	/**
+	 * The number of control points used to calculate the updated spline segments
+	 */
+	private static final int LOCAL_SPLINE_POINTS = 12;
+
+	/**
+	 * The minimum number of sections that are worth calculating in parallel
+	 */
+	private static final int MIN_PARALLEL_SECTIONS = 256;
+
 	/**
 	 * The sculpture section radius
 	 */
@@ -49,6 +69,11 @@ public class Sculpture {
 	 */
 	private ArrayList<SculptureSection> sections;
 
+	/**
+	 * The sculpture mesh
+	 */
+	private SculptureMesh mesh;
+
 	/**
 	 * Constructs an empty sculpture
 	 * 
@@ -63,6 +88,7 @@ public class Sculpture {
 		this.spline = new Spline3D();
 		this.previousPoint = new Vec3D();
 		this.sections = new ArrayList<SculptureSection>();
+		this.mesh = new SculptureMesh();
 	}
 
 	/**
@@ -77,8 +103,8 @@ public class Sculpture {
 			spline.add(toxiPoint);
 			previousPoint.set(toxiPoint);
 
-			// Calculate the sculpture sections
-			calculateSections();
+			// Update the sculpture sections affected by the new point
+			updateLastSections();
 		}
 	}
 
@@ -137,6 +163,15 @@ public class Sculpture {
 		return sectionSides;
 	}
 
+	/**
+	 * Returns the sculpture sections
+	 * 
+	 * @return the sculpture sections
+	 */
+	SculptureSection[] getSections() {
+		return sections.toArray(new SculptureSection[sections.size()]);
+	}
+
 	/**
 	 * Calculates the sculpture sections between consecutive spline vertices
 	 */
@@ -146,18 +181,84 @@ public class Sculpture {
 
 		if (getNumControlPoints() > 1) {
 			// Obtain the new sections
-			ArrayList<Vec3D> vertices = (ArrayList<Vec3D>) spline.computeVertices(nSubdivisions);
-			Vec3D refPoint = new Vec3D();
-			Vec3D refNormal = vertices.get(1).sub(vertices.get(0)).normalize();
-
-			for (int i = 0; i < vertices.size() - 1; i++) {
-				SculptureSection section = new SculptureSection(vertices.get(i), vertices.get(i + 1), refPoint,
-						refNormal, sectionRadius, sectionSides);
-				refPoint = section.points[0];
-				refNormal = section.normal;
-				sections.add(section);
+			List<Vec3D> vertices = spline.computeVertices(nSubdivisions);
+			addSections(vertices, 0, new Vec3D(), vertices.get(1).sub(vertices.get(0)).normalize());
+		}
+
+		mesh.update(sections, 0);
+	}
+
+	/**
+	 * Recalculates the sculpture sections in the last spline segments, the only ones affected by the last control
+	 * point. The spline vertices are calculated using only the last control points
+	 */
+	private void updateLastSections() {
+		int nControlPoints = getNumControlPoints();
+
+		if (nControlPoints > 1) {
+			// Remove the sections that need to be updated
+			int firstSegment = Math.max(0, nControlPoints - 1 - UPDATED_SEGMENTS);
+			int firstSection = Math.min(firstSegment * nSubdivisions, sections.size());
+			sections.subList(firstSection, sections.size()).clear();
+
+			// Calculate the spline vertices using the last control points
+			int firstControlPoint = Math.max(0, nControlPoints - LOCAL_SPLINE_POINTS);
+			List<Vec3D> controlPoints = spline.getPointList();
+			Spline3D localSpline = new Spline3D(
+					new ArrayList<Vec3D>(controlPoints.subList(firstControlPoint, nControlPoints)));
+			localSpline.setTightness(spline.getTightness());
+			List<Vec3D> vertices = localSpline.computeVertices(nSubdivisions);
+
+			// Add the new sections, continuing from the last section that was kept
+			int firstVertex = firstSection - firstControlPoint * nSubdivisions;
+
+			if (firstSection == 0) {
+				addSections(vertices, firstVertex, new Vec3D(), vertices.get(1).sub(vertices.get(0)).normalize());
+			} else {
+				SculptureSection lastSection = sections.get(firstSection - 1);
+				addSections(vertices, firstVertex, lastSection.points[0], lastSection.normal);
 			}
+
+			mesh.update(sections, firstSection);
+		}
+	}
+
+	/**
+	 * Adds the sections between consecutive spline vertices. The section orientations are calculated sequentially,
+	 * because each section depends on the previous one, and the section points are calculated in parallel
+	 * 
+	 * @param vertices the spline vertices
+	 * @param firstVertex the index of the first vertex to use
+	 * @param refPoint the reference point from the previous section
+	 * @param refNormal the normal vector from the previous section
+	 */
+	private void addSections(List<Vec3D> vertices, int firstVertex, Vec3D refPoint, Vec3D refNormal) {
+		int nNewSections = vertices.size() - 1 - firstVertex;
+		Vec3D[] centers = new Vec3D[nNewSections];
+		Vec3D[] normals = new Vec3D[nNewSections];
+		Vec3D[] perpendiculars = new Vec3D[nNewSections];
+
+		for (int i = 0; i < nNewSections; i++) {
+			Vec3D pointBefore = vertices.get(firstVertex + i);
+			Vec3D pointAfter = vertices.get(firstVertex + i + 1);
+			centers[i] = pointAfter.add(pointBefore).scaleSelf(0.5f);
+			normals[i] = pointAfter.sub(pointBefore).normalize();
+			perpendiculars[i] = SculptureSection.calculatePerpendicular(centers[i], normals[i], refPoint, refNormal,
+					sectionRadius);
+			refPoint = centers[i].add(perpendiculars[i]);
+			refNormal = normals[i];
+		}
+
+		SculptureSection[] newSections = new SculptureSection[nNewSections];
+		IntStream indices = IntStream.range(0, nNewSections);
+
+		if (nNewSections >= MIN_PARALLEL_SECTIONS) {
+			indices = indices.parallel();
 		}
+
+		indices.forEach(i -> newSections[i] = new SculptureSection(centers[i], normals[i], perpendiculars[i],
+				sectionSides));
+		sections.addAll(Arrays.asList(newSections));
 	}
 
 	/**
@@ -167,6 +268,7 @@ public class Sculpture {
 		spline = new Spline3D();
 		previousPoint.set(0, 0, 0);
 		sections.clear();
+		mesh.update(sections, 0);
 	}
 
 	/**
@@ -203,40 +305,9 @@ public class Sculpture {
 	 * @param color the sculpture color
 	 */
 	public void draw(PApplet p, int color) {
-		if (sections.size() > 0) {
-			// Draw the front side
-			sections.get(0).draw(p, color);
-
-			// Draw the sculpture surface
-			p.pushStyle();
-			p.noStroke();
-			p.fill(color);
-
-			for (int i = 0; i < sections.size() - 1; i++) {
-				SculptureSection section1 = sections.get(i);
-				SculptureSection section2 = sections.get(i + 1);
-
-				p.beginShape(PApplet.TRIANGLE_STRIP);
-
-				for (int j = 0; j < section1.points.length; j++) {
-					Vec3D point1 = section1.points[j];
-					Vec3D point2 = section2.points[j];
-					p.vertex(point1.x, point1.y, point1.z);
-					p.vertex(point2.x, point2.y, point2.z);
-				}
-
-				Vec3D closePoint1 = section1.points[0];
-				Vec3D closePoint2 = section2.points[0];
-				p.vertex(closePoint1.x, closePoint1.y, closePoint1.z);
-				p.vertex(closePoint2.x, closePoint2.y, closePoint2.z);
-				p.endShape();
-			}
-
-			p.popStyle();
-
-			// Draw the back side
-			sections.get(sections.size() - 1).draw(p, color);
-		}
+		p.pushStyle();
+		mesh.draw(p, color);
+		p.popStyle();
 	}
 
 	/**
@@ -287,4 +358,20 @@ public class Sculpture {
 
 		p.saveStrings(fileName, pointsCoordinates);
 	}
+
+	/**
+	 * Exports the sculpture mesh in a PLY, OBJ or STL file. The file is written while the mesh is generated
+	 * 
+	 * @param p the parent Processing applet
+	 * @param fileName the file name
+	 * @param color the sculpture color
+	 * @param format the mesh file format
+	 */
+	public void exportMesh(PApplet p, String fileName, int color, MeshExporter.Format format) {
+		try {
+			MeshExporter.export(this, color, p.savePath(fileName), format);
+		} catch (IOException e) {
+			System.out.println("Sculpture class: there was a problem writing the mesh in " + fileName);
+		}
+	}
 }
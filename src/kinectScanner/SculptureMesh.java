@@ -0,0 +1,246 @@
+package kinectScanner;
+
+import java.util.List;
+
+import processing.core.PApplet;
+import processing.core.PShape;
+import toxi.geom.Vec3D;
+
+/**
+ * Class used to keep the sculpture tube mesh, with the vertex normals needed for the scene lights. The mesh is extended
+ * incrementally when new sections are added to the sculpture, and it's drawn with a retained shape. The shape is
+ * divided in chunks of sections, and only the chunks affected by the new sections are recreated
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class SculptureMesh {
+
+	/**
+	 * The number of sections in each shape chunk
+	 */
+	private static final int CHUNK_SECTIONS = 64;
+
+	private int sides = 0;
+	private int nSections = 0;
+	private float[] vertices = new float[0];
+	private float[] normals = new float[0];
+	private int[] indices = new int[0];
+	private int nIndices = 0;
+	private SculptureSection frontSection = null;
+	private SculptureSection backSection = null;
+	private PShape shape = null;
+	private int shapeColor;
+	private int nShapeChunks = 0;
+	private boolean shapeUpdated = false;
+
+	/**
+	 * Updates the mesh after some sculpture sections have been changed. The sections before the first changed
+	 * section are supposed to be the same as in the previous update
+	 * 
+	 * @param sections the sculpture sections
+	 * @param firstChangedSection the index of the first section that has changed
+	 */
+	public void update(List<SculptureSection> sections, int firstChangedSection) {
+		int newSides = sections.size() > 0 ? sections.get(0).points.length : 0;
+
+		if (newSides != sides) {
+			sides = newSides;
+			firstChangedSection = 0;
+		}
+
+		// Remove the changed sections and the shape chunks that contain them
+		nSections = Math.min(nSections, firstChangedSection);
+		nIndices = 6 * sides * Math.max(0, nSections - 1);
+		nShapeChunks = Math.min(nShapeChunks, Math.max(0, nSections - 1) / CHUNK_SECTIONS);
+
+		// Add the new sections vertices and normals
+		int nNewSections = sections.size();
+		ensureCapacity(nNewSections);
+
+		for (int i = nSections; i < nNewSections; i++) {
+			SculptureSection section = sections.get(i);
+			Vec3D center = section.center;
+			int offset = 3 * i * sides;
+
+			for (Vec3D point : section.points) {
+				float nx = point.x - center.x;
+				float ny = point.y - center.y;
+				float nz = point.z - center.z;
+				float norm = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+				if (norm > 0) {
+					nx /= norm;
+					ny /= norm;
+					nz /= norm;
+				}
+
+				vertices[offset] = point.x;
+				vertices[offset + 1] = point.y;
+				vertices[offset + 2] = point.z;
+				normals[offset] = nx;
+				normals[offset + 1] = ny;
+				normals[offset + 2] = nz;
+				offset += 3;
+			}
+		}
+
+		// Add the triangles between the new consecutive sections
+		for (int i = Math.max(0, nSections - 1); i < nNewSections - 1; i++) {
+			int offset1 = i * sides;
+			int offset2 = offset1 + sides;
+
+			for (int j = 0; j < sides; j++) {
+				int next = (j + 1) % sides;
+				indices[nIndices++] = offset1 + j;
+				indices[nIndices++] = offset2 + j;
+				indices[nIndices++] = offset2 + next;
+				indices[nIndices++] = offset1 + j;
+				indices[nIndices++] = offset2 + next;
+				indices[nIndices++] = offset1 + next;
+			}
+		}
+
+		nSections = nNewSections;
+		frontSection = nSections > 0 ? sections.get(0) : null;
+		backSection = nSections > 0 ? sections.get(nSections - 1) : null;
+		shapeUpdated = false;
+	}
+
+	/**
+	 * Makes sure that the mesh arrays can hold a given number of sections
+	 * 
+	 * @param nNewSections the number of sections
+	 */
+	private void ensureCapacity(int nNewSections) {
+		int nVertices = nNewSections * sides;
+
+		if (vertices.length < 3 * nVertices) {
+			int capacity = Math.max(3 * nVertices, 2 * vertices.length);
+			float[] verticesNew = new float[capacity];
+			float[] normalsNew = new float[capacity];
+			System.arraycopy(vertices, 0, verticesNew, 0, 3 * nSections * sides);
+			System.arraycopy(normals, 0, normalsNew, 0, 3 * nSections * sides);
+			vertices = verticesNew;
+			normals = normalsNew;
+		}
+
+		int nNewIndices = 6 * sides * Math.max(0, nNewSections - 1);
+
+		if (indices.length < nNewIndices) {
+			int[] indicesNew = new int[Math.max(nNewIndices, 2 * indices.length)];
+			System.arraycopy(indices, 0, indicesNew, 0, nIndices);
+			indices = indicesNew;
+		}
+	}
+
+	/**
+	 * Draws the mesh on the screen with a single shape call. The shape chunks that changed since the last update are
+	 * recreated first
+	 * 
+	 * @param p the parent Processing applet
+	 * @param color the mesh color
+	 */
+	public void draw(PApplet p, int color) {
+		if (nSections == 0) {
+			return;
+		}
+
+		// Create the shape again if the color changed
+		if (shape == null || shapeColor != color) {
+			shape = p.createShape(PApplet.GROUP);
+			shapeColor = color;
+			nShapeChunks = 0;
+			shapeUpdated = false;
+		}
+
+		if (!shapeUpdated) {
+			// Remove the changed chunks, the last incomplete chunk and the caps, which are always the last child
+			while (shape.getChildCount() > nShapeChunks) {
+				shape.removeChild(shape.getChildCount() - 1);
+			}
+
+			// Add the new chunks and the caps
+			int nStrips = nSections - 1;
+			int nChunks = (nStrips + CHUNK_SECTIONS - 1) / CHUNK_SECTIONS;
+
+			for (int chunk = nShapeChunks; chunk < nChunks; chunk++) {
+				shape.addChild(createChunkShape(p, chunk));
+			}
+
+			shape.addChild(createCapsShape(p));
+
+			// Only the complete chunks can be kept in the next update
+			nShapeChunks = nStrips / CHUNK_SECTIONS;
+			shapeUpdated = true;
+		}
+
+		// Draw the shape
+		p.shape(shape);
+	}
+
+	/**
+	 * Creates the shape with the triangles between the sections in a chunk
+	 * 
+	 * @param p the parent Processing applet
+	 * @param chunk the chunk index
+	 * @return the chunk shape
+	 */
+	private PShape createChunkShape(PApplet p, int chunk) {
+		int start = 6 * sides * chunk * CHUNK_SECTIONS;
+		int end = Math.min(start + 6 * sides * CHUNK_SECTIONS, nIndices);
+		PShape chunkShape = p.createShape();
+		chunkShape.beginShape(PApplet.TRIANGLES);
+		chunkShape.noStroke();
+		chunkShape.fill(shapeColor);
+
+		for (int i = start; i < end; i++) {
+			int offset = 3 * indices[i];
+			chunkShape.normal(normals[offset], normals[offset + 1], normals[offset + 2]);
+			chunkShape.vertex(vertices[offset], vertices[offset + 1], vertices[offset + 2]);
+		}
+
+		chunkShape.endShape();
+
+		return chunkShape;
+	}
+
+	/**
+	 * Creates the shape with the front and back sculpture caps
+	 * 
+	 * @param p the parent Processing applet
+	 * @return the caps shape
+	 */
+	private PShape createCapsShape(PApplet p) {
+		PShape capsShape = p.createShape();
+		capsShape.beginShape(PApplet.TRIANGLES);
+		capsShape.noStroke();
+		capsShape.fill(shapeColor);
+		addCap(capsShape, frontSection, -1);
+		addCap(capsShape, backSection, 1);
+		capsShape.endShape();
+
+		return capsShape;
+	}
+
+	/**
+	 * Adds the triangles of a sculpture cap to a shape
+	 * 
+	 * @param capsShape the shape
+	 * @param section the section that closes the sculpture
+	 * @param direction 1 if the cap faces in the section normal direction, -1 if it faces in the opposite direction
+	 */
+	private void addCap(PShape capsShape, SculptureSection section, int direction) {
+		Vec3D center = section.center;
+		Vec3D normal = section.normal;
+		Vec3D[] points = section.points;
+		capsShape.normal(direction * normal.x, direction * normal.y, direction * normal.z);
+
+		for (int j = 0; j < points.length; j++) {
+			Vec3D point1 = points[j];
+			Vec3D point2 = points[(j + 1) % points.length];
+			capsShape.vertex(center.x, center.y, center.z);
+			capsShape.vertex(point1.x, point1.y, point1.z);
+			capsShape.vertex(point2.x, point2.y, point2.z);
+		}
+	}
+}
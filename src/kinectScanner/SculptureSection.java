@@ -39,21 +39,66 @@ public class SculptureSection {
 			float radius, int sides) {
 		this.center = pointAfter.add(pointBefore).scaleSelf(0.5f);
 		this.normal = pointAfter.sub(pointBefore).normalize();
-		this.points = new Vec3D[Math.max(2, sides)];
+		this.points = calculatePoints(this.center, this.normal,
+				calculatePerpendicular(this.center, this.normal, referencePoint, referenceNormal, radius), sides);
+	}
+
+	/**
+	 * Constructs a sculpture section from its center, its normal and the vector pointing from the center to the first
+	 * section point
+	 * 
+	 * @param center the section center
+	 * @param normal the section plane normal
+	 * @param perpendicular the vector from the section center to the first section point
+	 * @param sides the number of section sides
+	 */
+	public SculptureSection(Vec3D center, Vec3D normal, Vec3D perpendicular, int sides) {
+		this.center = center;
+		this.normal = normal;
+		this.points = calculatePoints(center, normal, perpendicular.copy(), sides);
+	}
 
+	/**
+	 * Calculates the vector from the section center to the first section point. It points to the intersection
+	 * between the section plane and the line defined by the reference point and the reference normal, so
+	 * consecutive sections don't twist
+	 * 
+	 * @param center the section center
+	 * @param normal the section plane normal
+	 * @param referencePoint the reference point from the previous section
+	 * @param referenceNormal the normal vector from the previous section
+	 * @param radius the section radius
+	 * @return the perpendicular vector, with a length equal to the section radius
+	 */
+	public static Vec3D calculatePerpendicular(Vec3D center, Vec3D normal, Vec3D referencePoint,
+			Vec3D referenceNormal, float radius) {
 		// Calculate the intersection point between the line defined by the reference point and the reference normal
 		// and the section plane
-		float c = (this.center.dot(this.normal) - referencePoint.dot(this.normal)) / referenceNormal.dot(this.normal);
+		float c = (center.dot(normal) - referencePoint.dot(normal)) / referenceNormal.dot(normal);
 		Vec3D intersectionPoint = referenceNormal.scale(c).addSelf(referencePoint);
 
-		// Calculate the section points
-		Vec3D perpendicularPoint = intersectionPoint.subSelf(this.center).normalizeTo(radius);
+		return intersectionPoint.subSelf(center).normalizeTo(radius);
+	}
+
+	/**
+	 * Calculates the section contour points
+	 * 
+	 * @param center the section center
+	 * @param normal the section plane normal
+	 * @param perpendicular the vector from the section center to the first section point. It will be modified
+	 * @param sides the number of section sides
+	 * @return the section contour points
+	 */
+	private static Vec3D[] calculatePoints(Vec3D center, Vec3D normal, Vec3D perpendicular, int sides) {
+		Vec3D[] points = new Vec3D[Math.max(2, sides)];
 		float deltaAngle = PApplet.TWO_PI / sides;
 
-		for (int i = 0; i < this.points.length; i++) {
-			this.points[i] = this.center.add(perpendicularPoint);
-			perpendicularPoint.rotateAroundAxis(this.normal, deltaAngle);
+		for (int i = 0; i < points.length; i++) {
+			points[i] = center.add(perpendicular);
+			perpendicular.rotateAroundAxis(normal, deltaAngle);
 		}
+
+		return points;
 	}
 
 	/**
@@ -14,6 +14,11 @@ public class Slit {
 	 */
 	private static final float MINIMUM_DISTANTE = 5f;
 
+	/**
+	 * The number of columns or rows at each side of the expected slit position that are searched first
+	 */
+	private static final int SEARCH_HALF_WIDTH = 8;
+
 	/**
 	 * The slit orientation
 	 */
@@ -25,9 +30,20 @@ public class Slit {
 	public PVector center;
 
 	/**
-	 * Array containing the points coordinates
+	 * Total number of points in the slit
+	 */
+	public int nPoints;
+
+	/**
+	 * The slit column (vertical slits) or row (horizontal slits) in the KinectPoints object. -1 if the slit could not
+	 * be found
 	 */
-	public PVector[] points;
+	public int position;
+
+	/**
+	 * Array containing the points coordinates, with the x, y and z coordinates of each point stored consecutively
+	 */
+	public float[] points;
 
 	/**
 	 * Array containing the points colors
@@ -47,47 +63,98 @@ public class Slit {
 	 * @param vertical true if the slit should have a vertical orientation, false for horizontal orientation
 	 */
 	public Slit(KinectPoints kp, ScanBox box, boolean vertical) {
+		this(kp, box, vertical, -1);
+	}
+
+	/**
+	 * Constructs a slit of the given orientation centered on the scan box position. The slit is searched first near
+	 * the expected position, and in the whole KinectPoints object only if it's not found there
+	 * 
+	 * @param kp the KinectPoints object
+	 * @param box the scan box from which the slit will be selected
+	 * @param vertical true if the slit should have a vertical orientation, false for horizontal orientation
+	 * @param expectedPosition the expected slit column or row, normally the position of the previous slit. A
+	 *            negative value will search the whole KinectPoints object
+	 */
+	public Slit(KinectPoints kp, ScanBox box, boolean vertical, int expectedPosition) {
 		this.vertical = vertical;
 		this.center = box.center.copy();
-		this.points = new PVector[this.vertical ? kp.height : kp.width];
-		this.colors = new int[this.points.length];
-		this.visibilityMask = new boolean[this.points.length];
+		this.nPoints = this.vertical ? kp.height : kp.width;
+		this.points = new float[3 * this.nPoints];
+		this.colors = new int[this.nPoints];
+		this.visibilityMask = new boolean[this.nPoints];
 
 		// Find the slit position in the KinectPoints object
+		int nPositions = this.vertical ? kp.width : kp.height;
+		this.position = -1;
+
+		if (expectedPosition >= 0 && expectedPosition < nPositions) {
+			this.position = findPosition(kp, box, Math.max(0, expectedPosition - SEARCH_HALF_WIDTH),
+					Math.min(nPositions, expectedPosition + SEARCH_HALF_WIDTH + 1));
+		}
+
+		if (this.position < 0) {
+			this.position = findPosition(kp, box, 0, nPositions);
+		}
+
+		// Populate the slit arrays
+		if (this.position >= 0) {
+			for (int i = 0; i < this.nPoints; i++) {
+				int index = getIndex(kp, this.position, i);
+
+				if (kp.visibilityMask[index]
+						&& box.isInside(kp.points[3 * index], kp.points[3 * index + 1], kp.points[3 * index + 2])) {
+					System.arraycopy(kp.points, 3 * index, this.points, 3 * i, 3);
+					this.colors[i] = kp.colors[index];
+					this.visibilityMask[i] = kp.visibilityMask[index];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the column or row with the visible point inside the scan box that is closest to the box center
+	 * 
+	 * @param kp the KinectPoints object
+	 * @param box the scan box
+	 * @param firstPosition the first column or row to search
+	 * @param lastPosition the column or row after the last one to search
+	 * @return the slit position. -1 if no point is close enough to the box center
+	 */
+	private int findPosition(KinectPoints kp, ScanBox box, int firstPosition, int lastPosition) {
 		int slitPos = -1;
 		float minDistance = MINIMUM_DISTANTE;
 
-		for (int y = 0; y < kp.height; y++) {
-			for (int x = 0; x < kp.width; x++) {
-				int index = x + y * kp.width;
-				PVector point = kp.points[index];
+		for (int pos = firstPosition; pos < lastPosition; pos++) {
+			for (int i = 0; i < nPoints; i++) {
+				int index = getIndex(kp, pos, i);
+				float pointX = kp.points[3 * index];
+				float pointY = kp.points[3 * index + 1];
+				float pointZ = kp.points[3 * index + 2];
 
-				if (kp.visibilityMask[index] && box.isInside(point)) {
-					float distance = this.vertical ? Math.abs(point.x - this.center.x)
-							: Math.abs(point.y - this.center.y);
+				if (kp.visibilityMask[index] && box.isInside(pointX, pointY, pointZ)) {
+					float distance = vertical ? Math.abs(pointX - center.x) : Math.abs(pointY - center.y);
 
 					if (distance < minDistance) {
-						slitPos = this.vertical ? x : y;
+						slitPos = pos;
 						minDistance = distance;
 					}
 				}
 			}
 		}
 
-		// Populate the slit arrays
-		for (int i = 0; i < this.points.length; i++) {
-			this.points[i] = new PVector();
-
-			if (slitPos >= 0) {
-				int index = this.vertical ? slitPos + i * kp.width : i + slitPos * kp.width;
-				PVector point = kp.points[index];
+		return slitPos;
+	}
 
-				if (kp.visibilityMask[index] && box.isInside(point)) {
-					this.points[i].set(point);
-					this.colors[i] = kp.colors[index];
-					this.visibilityMask[i] = kp.visibilityMask[index];
-				}
-			}
-		}
+	/**
+	 * Returns the KinectPoints index of a slit point
+	 * 
+	 * @param kp the KinectPoints object
+	 * @param pos the slit column or row
+	 * @param i the point position along the slit
+	 * @return the KinectPoints index
+	 */
+	private int getIndex(KinectPoints kp, int pos, int i) {
+		return vertical ? pos + i * kp.width : i + pos * kp.width;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,555 @@
+package kinectScanner;
+
+import java.util.ArrayList;
+import java.util.stream.IntStream;
+
+import processing.core.PApplet;
+import processing.core.PShape;
+
+/**
+ * Subclass of the Scan class used to assemble a scan from consecutive slits. The slits are appended to preallocated
+ * arrays that grow when they get full, so adding a slit only writes the new slit points.
+ * 
+ * The slits in a slit scan are shifted or rotated with respect to the last slit, and they can be moved to the last slit
+ * center. These transformations change with every new slit, but they can be split in a fixed part that depends on
+ * the slit number, which is applied when the slit is written, and a common part that depends on the total number of
+ * slits, which is applied when the scan is drawn or exported. The slits are only written again when the options
+ * change, or when the slits are rotated around centers that don't coincide, because then the offset between the
+ * slit center and the first slit center has to be written in the frame of the common rotation.
+ * 
+ * The public methods inherited from the Scan class that save or export the points use the final slit scan points
+ * returned by getScan(), and the methods that would modify the arrays are not supported.
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class SlitScan extends Scan {
+
+	/**
+	 * The shift between consecutive slits when they are not rotated
+	 */
+	private static final float SLIT_OFFSET = 5;
+
+	/**
+	 * The rotation angle between consecutive slits in radians
+	 */
+	private static final float SLIT_ROTATION = 4 * PApplet.PI / 180;
+
+	/**
+	 * The initial number of slits that the arrays can hold
+	 */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * The number of triangle strips between consecutive slits in each shape chunk
+	 */
+	private static final int CHUNK_STRIPS = 64;
+
+	private boolean rotate;
+	private boolean commonCenter;
+	private boolean vertical;
+	private boolean centersMoved;
+	private int slitLength;
+	private ArrayList<Slit> slits;
+	private KinectMesh.IndexList triangles;
+	private KinectMesh.IndexList stripStarts;
+	private PShape shape;
+	private boolean shapeUniform;
+	private int shapeColor;
+	private int nShapeChunks;
+	private boolean shapeUpdated;
+
+	/**
+	 * Constructs an empty slit scan
+	 * 
+	 * @param rotate if true the slits will be rotated around their center
+	 * @param commonCenter if true all the slits will be moved to have the same center
+	 */
+	public SlitScan(boolean rotate, boolean commonCenter) {
+		super(0, 0);
+		this.rotate = rotate;
+		this.commonCenter = commonCenter;
+		this.slits = new ArrayList<Slit>();
+		this.triangles = new KinectMesh.IndexList();
+		this.stripStarts = new KinectMesh.IndexList();
+		this.shape = null;
+		this.nShapeChunks = 0;
+		this.shapeUpdated = false;
+	}
+
+	/**
+	 * Adds a new slit to the slit scan. The slit scan is restarted if the slit orientation or dimensions are different
+	 * from the previous slits. Only the triangles between the new slit and the previous one are added to the mesh,
+	 * unless the arrays had to grow
+	 * 
+	 * @param slit the new slit
+	 */
+	public void addSlit(Slit slit) {
+		if (slits.size() > 0 && (slit.vertical != vertical || slit.nPoints != slitLength)) {
+			slits.clear();
+		}
+
+		boolean resized = true;
+
+		if (slits.isEmpty()) {
+			vertical = slit.vertical;
+			slitLength = slit.nPoints;
+			centersMoved = false;
+			resize(INITIAL_CAPACITY);
+		} else if (slits.size() == getCapacity()) {
+			resize(2 * getCapacity());
+		} else {
+			resized = false;
+		}
+
+		Slit firstSlit = slits.isEmpty() ? slit : slits.get(0);
+		centersMoved |= slit.center.x != firstSlit.center.x || slit.center.y != firstSlit.center.y
+				|| slit.center.z != firstSlit.center.z;
+		slits.add(slit);
+		center.set(slit.center);
+		invalidateMesh();
+
+		// The center offsets of the rotated slits depend on the number of slits
+		if (rotate && !commonCenter && centersMoved) {
+			IntStream.range(0, slits.size()).parallel().forEach(this::writeSlit);
+			calculateStrips();
+			return;
+		}
+
+		writeSlit(slits.size() - 1);
+
+		// The points indices change when the arrays grow
+		if (resized) {
+			calculateStrips();
+		} else {
+			addStrip(slits.size() - 1);
+		}
+	}
+
+	/**
+	 * Sets the slit scan options. All the slits are written again if the options change
+	 * 
+	 * @param newRotate if true the slits will be rotated around their center
+	 * @param newCommonCenter if true all the slits will be moved to have the same center
+	 */
+	public void setOptions(boolean newRotate, boolean newCommonCenter) {
+		if (rotate != newRotate || commonCenter != newCommonCenter) {
+			rotate = newRotate;
+			commonCenter = newCommonCenter;
+			IntStream.range(0, slits.size()).parallel().forEach(this::writeSlit);
+			invalidateMesh();
+			calculateStrips();
+		}
+	}
+
+	/**
+	 * Returns the number of slits in the slit scan
+	 * 
+	 * @return the number of slits
+	 */
+	public int getNSlits() {
+		return slits.size();
+	}
+
+	/**
+	 * Returns the position of the last slit added, which is the expected position of the next slit
+	 * 
+	 * @return the last slit column or row. -1 if the slit scan is empty
+	 */
+	public int getLastSlitPosition() {
+		return slits.isEmpty() ? -1 : slits.get(slits.size() - 1).position;
+	}
+
+	/**
+	 * Returns the number of slits that the arrays can hold
+	 * 
+	 * @return the slits capacity
+	 */
+	private int getCapacity() {
+		return vertical ? width : height;
+	}
+
+	/**
+	 * Returns the array index of a slit point
+	 * 
+	 * @param slitIndex the slit index
+	 * @param i the point position along the slit
+	 * @return the array index
+	 */
+	private int getIndex(int slitIndex, int i) {
+		return vertical ? slitIndex + i * width : i + slitIndex * width;
+	}
+
+	/**
+	 * Changes the number of slits that the arrays can hold, keeping the slits already written
+	 * 
+	 * @param capacity the new slits capacity
+	 */
+	private void resize(int capacity) {
+		float[] pointsOld = points;
+		int[] colorsOld = colors;
+		boolean[] visibilityMaskOld = visibilityMask;
+		int widthOld = width;
+		boolean verticalOld = vertical;
+
+		width = vertical ? capacity : slitLength;
+		height = vertical ? slitLength : capacity;
+		nPoints = width * height;
+		points = new float[3 * nPoints];
+		colors = new int[nPoints];
+		visibilityMask = new boolean[nPoints];
+
+		// Copy the slits that have been written already
+		for (int slitIndex = 0; slitIndex < slits.size(); slitIndex++) {
+			for (int i = 0; i < slitLength; i++) {
+				int indexOld = verticalOld ? slitIndex + i * widthOld : i + slitIndex * widthOld;
+				int index = getIndex(slitIndex, i);
+				System.arraycopy(pointsOld, 3 * indexOld, points, 3 * index, 3);
+				colors[index] = colorsOld[indexOld];
+				visibilityMask[index] = visibilityMaskOld[indexOld];
+			}
+		}
+	}
+
+	/**
+	 * Writes a slit in the arrays, applying the transformations that depend on the slit number. The points are rotated
+	 * around the slit center and written relative to the first slit center, or relative to the slit center if all the
+	 * slits should have the same center. The offset between the slit center and the first slit center is rotated back
+	 * by the common rotation, so it's not rotated when the scan is drawn
+	 * 
+	 * @param slitIndex the slit index
+	 */
+	private void writeSlit(int slitIndex) {
+		Slit slit = slits.get(slitIndex);
+		Slit firstSlit = slits.get(0);
+		float angle = rotate ? -SLIT_ROTATION * slitIndex : 0;
+		float cos = PApplet.cos(angle);
+		float sin = PApplet.sin(angle);
+		float shift = rotate ? 0 : -SLIT_OFFSET * slitIndex;
+		float dx = commonCenter ? 0 : slit.center.x - firstSlit.center.x;
+		float dy = commonCenter ? 0 : slit.center.y - firstSlit.center.y;
+		float dz = commonCenter ? 0 : slit.center.z - firstSlit.center.z;
+
+		if (rotate && !commonCenter) {
+			float commonAngle = -SLIT_ROTATION * (slits.size() - 1);
+			float commonCos = PApplet.cos(commonAngle);
+			float commonSin = PApplet.sin(commonAngle);
+			float rotatedDz;
+
+			if (vertical) {
+				rotatedDz = commonSin * dx + commonCos * dz;
+				dx = commonCos * dx - commonSin * dz;
+			} else {
+				rotatedDz = commonSin * dy + commonCos * dz;
+				dy = commonCos * dy - commonSin * dz;
+			}
+
+			dz = rotatedDz;
+		}
+
+		for (int i = 0; i < slitLength; i++) {
+			int index = getIndex(slitIndex, i);
+			visibilityMask[index] = slit.visibilityMask[i];
+
+			if (slit.visibilityMask[i]) {
+				float x = slit.points[3 * i] - slit.center.x;
+				float y = slit.points[3 * i + 1] - slit.center.y;
+				float z = slit.points[3 * i + 2] - slit.center.z;
+				float rotatedZ;
+
+				if (vertical) {
+					rotatedZ = sin * x + cos * z;
+					x = cos * x - sin * z + shift;
+				} else {
+					rotatedZ = sin * y + cos * z;
+					y = cos * y - sin * z + shift;
+				}
+
+				setPoint(index, x + dx, y + dy, rotatedZ + dz);
+				colors[index] = slit.colors[i];
+			}
+		}
+	}
+
+	/**
+	 * Applies the transformations that are common to all the slits to the applet transformation matrix
+	 * 
+	 * @param p the parent Processing applet
+	 */
+	private void applyCommonTransformation(PApplet p) {
+		int lastIndex = slits.size() - 1;
+		Slit referenceSlit = slits.get(commonCenter ? lastIndex : 0);
+		float shift = rotate ? 0 : SLIT_OFFSET * lastIndex;
+		float angle = rotate ? SLIT_ROTATION * lastIndex : 0;
+
+		if (vertical) {
+			p.translate(referenceSlit.center.x + shift, referenceSlit.center.y, referenceSlit.center.z);
+			p.rotateY(-angle);
+		} else {
+			p.translate(referenceSlit.center.x, referenceSlit.center.y + shift, referenceSlit.center.z);
+			p.rotateX(angle);
+		}
+	}
+
+	/**
+	 * Adds the triangles between a slit and the previous slit to the mesh
+	 * 
+	 * @param slitIndex the slit index
+	 */
+	private void addStrip(int slitIndex) {
+		stripStarts.add(triangles.size);
+
+		if (vertical) {
+			for (int i = 0; i < slitLength - 1; i++) {
+				KinectMesh.addCellTriangles(this, getIndex(slitIndex - 1, i), triangles);
+			}
+		} else {
+			KinectMesh.addRowTriangles(this, slitIndex - 1, triangles);
+		}
+
+		shapeUpdated = false;
+	}
+
+	/**
+	 * Calculates the triangles between all the consecutive slits, discarding the shape chunks created before
+	 */
+	private void calculateStrips() {
+		triangles = new KinectMesh.IndexList();
+		stripStarts = new KinectMesh.IndexList();
+
+		for (int slitIndex = 1; slitIndex < slits.size(); slitIndex++) {
+			addStrip(slitIndex);
+		}
+
+		nShapeChunks = 0;
+		shapeUpdated = false;
+	}
+
+	/**
+	 * Draws the slit scan triangles with a retained shape. The shape is divided in chunks of triangle strips, and only
+	 * the chunks that changed since the last call are recreated
+	 * 
+	 * @param p the parent Processing applet
+	 * @param uniform true if the triangles should have a uniform color
+	 * @param trianglesColor the triangles color, if they have a uniform color
+	 */
+	private void drawShape(PApplet p, boolean uniform, int trianglesColor) {
+		// Create the shape again if the color changed
+		if (shape == null || shapeUniform != uniform || (uniform && shapeColor != trianglesColor)) {
+			shape = p.createShape(PApplet.GROUP);
+			shapeUniform = uniform;
+			shapeColor = trianglesColor;
+			nShapeChunks = 0;
+			shapeUpdated = false;
+		}
+
+		if (!shapeUpdated) {
+			// Remove the changed chunks and the last incomplete chunk
+			while (shape.getChildCount() > nShapeChunks) {
+				shape.removeChild(shape.getChildCount() - 1);
+			}
+
+			// Add the new chunks
+			int nStrips = stripStarts.size;
+			int nChunks = (nStrips + CHUNK_STRIPS - 1) / CHUNK_STRIPS;
+
+			for (int chunk = nShapeChunks; chunk < nChunks; chunk++) {
+				shape.addChild(createChunkShape(p, chunk));
+			}
+
+			// Only the complete chunks can be kept in the next update
+			nShapeChunks = nStrips / CHUNK_STRIPS;
+			shapeUpdated = true;
+		}
+
+		p.pushMatrix();
+		applyCommonTransformation(p);
+		p.shape(shape);
+		p.popMatrix();
+	}
+
+	/**
+	 * Creates the shape with the triangles in a chunk of strips
+	 * 
+	 * @param p the parent Processing applet
+	 * @param chunk the chunk index
+	 * @return the chunk shape
+	 */
+	private PShape createChunkShape(PApplet p, int chunk) {
+		int firstStrip = chunk * CHUNK_STRIPS;
+		int lastStrip = firstStrip + CHUNK_STRIPS;
+		int start = stripStarts.values[firstStrip];
+		int end = lastStrip < stripStarts.size ? stripStarts.values[lastStrip] : triangles.size;
+		PShape chunkShape = p.createShape();
+		chunkShape.beginShape(PApplet.TRIANGLES);
+		chunkShape.noStroke();
+
+		if (shapeUniform) {
+			chunkShape.fill(shapeColor);
+		}
+
+		for (int i = start; i < end; i++) {
+			int index = triangles.values[i];
+
+			if (!shapeUniform) {
+				chunkShape.fill(colors[index]);
+			}
+
+			chunkShape.vertex(points[3 * index], points[3 * index + 1], points[3 * index + 2]);
+		}
+
+		chunkShape.endShape();
+
+		return chunkShape;
+	}
+
+	/**
+	 * Draws the slit scan as triangles on the screen. The triangles mesh is extended every time a slit is added
+	 * 
+	 * @param p the parent Processing applet
+	 */
+	@Override
+	public void drawAsTriangles(PApplet p) {
+		if (slits.size() > 0) {
+			drawShape(p, false, 0);
+		}
+	}
+
+	/**
+	 * Draws the slit scan as triangles on the screen with a uniform color. The triangles mesh is extended every time a
+	 * slit is added
+	 * 
+	 * @param p the parent Processing applet
+	 * @param trianglesColor the triangles color
+	 */
+	@Override
+	public void drawAsTriangles(PApplet p, int trianglesColor) {
+		if (slits.size() > 0) {
+			drawShape(p, true, trianglesColor);
+		}
+	}
+
+	/**
+	 * Rotation is not supported by slit scans. Use getScan() to obtain a scan that can be rotated
+	 * 
+	 * @param rotationAngle the scan rotation angle in radians
+	 */
+	@Override
+	public void rotate(float rotationAngle) {
+		throw new UnsupportedOperationException("SlitScan class: use getScan() to obtain a scan that can be rotated");
+	}
+
+	/**
+	 * Cropping is not supported by slit scans. Use getScan() to obtain a scan that can be cropped
+	 */
+	@Override
+	public void crop() {
+		throw new UnsupportedOperationException("SlitScan class: use getScan() to obtain a scan that can be cropped");
+	}
+
+	/**
+	 * Returns the triangles mesh of the final slit scan points
+	 * 
+	 * @return the triangles mesh
+	 */
+	@Override
+	public KinectMesh getTrianglesMesh() {
+		return getScan().getTrianglesMesh();
+	}
+
+	/**
+	 * Saves the final slit scan points and colors on a file
+	 * 
+	 * @param p the parent Processing applet
+	 * @param fileName the file name
+	 */
+	@Override
+	public void savePoints(PApplet p, String fileName) {
+		getScan().savePoints(p, fileName);
+	}
+
+	/**
+	 * Saves the final slit scan points, colors and visibility mask on a binary file
+	 * 
+	 * @param p the parent Processing applet
+	 * @param fileName the file name
+	 */
+	@Override
+	public void saveBinaryPoints(PApplet p, String fileName) {
+		getScan().saveBinaryPoints(p, fileName);
+	}
+
+	/**
+	 * Saves the visible final slit scan points and colors on a binary PLY file
+	 * 
+	 * @param p the parent Processing applet
+	 * @param fileName the file name
+	 */
+	@Override
+	public void savePly(PApplet p, String fileName) {
+		getScan().savePly(p, fileName);
+	}
+
+	/**
+	 * Exports the final slit scan triangles mesh in a PLY, OBJ or STL file
+	 * 
+	 * @param p the parent Processing applet
+	 * @param fileName the file name
+	 * @param format the mesh file format
+	 */
+	@Override
+	public void exportMesh(PApplet p, String fileName, MeshExporter.Format format) {
+		getScan().exportMesh(p, fileName, format);
+	}
+
+	/**
+	 * Returns a scan with the final slit scan points, including the transformations that are common to all the
+	 * slits. The returned scan is independent of the slit scan and can be cropped, rotated or saved
+	 * 
+	 * @return the scan with the final slit scan points
+	 */
+	public Scan getScan() {
+		int nSlits = slits.size();
+		Scan scan = new Scan(vertical ? nSlits : slitLength, vertical ? slitLength : nSlits);
+		scan.center.set(center);
+
+		if (nSlits == 0) {
+			return scan;
+		}
+
+		int lastIndex = nSlits - 1;
+		Slit referenceSlit = slits.get(commonCenter ? lastIndex : 0);
+		float shift = rotate ? 0 : SLIT_OFFSET * lastIndex;
+		float angle = rotate ? SLIT_ROTATION * lastIndex : 0;
+		float cos = PApplet.cos(angle);
+		float sin = PApplet.sin(angle);
+
+		for (int slitIndex = 0; slitIndex < nSlits; slitIndex++) {
+			for (int i = 0; i < slitLength; i++) {
+				int index = getIndex(slitIndex, i);
+
+				if (visibilityMask[index]) {
+					int scanIndex = vertical ? slitIndex + i * scan.width : i + slitIndex * scan.width;
+					float x = points[3 * index];
+					float y = points[3 * index + 1];
+					float z = points[3 * index + 2];
+					float rotatedZ;
+
+					if (vertical) {
+						rotatedZ = sin * x + cos * z;
+						x = cos * x - sin * z + shift;
+					} else {
+						rotatedZ = sin * y + cos * z;
+						y = cos * y - sin * z + shift;
+					}
+
+					scan.setPoint(scanIndex, x + referenceSlit.center.x, y + referenceSlit.center.y,
+							rotatedZ + referenceSlit.center.z);
+					scan.colors[scanIndex] = colors[index];
+					scan.visibilityMask[scanIndex] = true;
+				}
+			}
+		}
+
+		return scan;
+	}
+}
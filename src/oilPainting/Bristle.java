@@ -28,15 +28,36 @@ public class Bristle {
 		thicknesses = new float[nPositions];
 
 		// Fill the arrays
-		float thicknessDecrement = thickness / nElements;
-
 		for (int i = 0; i < nPositions; i++) {
 			positions[i] = new PVector(0, 0);
 			lengths[i] = nPositions - i;
+		}
+
+		setThickness(thickness);
+	}
+
+	/**
+	 * Sets the bristle elements thickness
+	 * 
+	 * @param thickness the thickness of the first bristle element
+	 */
+	public void setThickness(float thickness) {
+		float thicknessDecrement = thickness / (nPositions - 1);
+
+		for (int i = 0; i < nPositions; i++) {
 			thicknesses[i] = thickness - (i - 1) * thicknessDecrement;
 		}
 	}
 
+	/**
+	 * Returns the total number of bristle elements
+	 * 
+	 * @return the total number of bristle elements
+	 */
+	public int getNElements() {
+		return nPositions - 1;
+	}
+
 	/**
 	 * Moves all the bristle elements to a new position
 	 * 
@@ -1,7 +1,5 @@
 package oilPainting;
 
-import java.util.ArrayList;
-
 import processing.core.PApplet;
 import processing.core.PGraphics;
 import processing.core.PVector;
@@ -49,7 +47,8 @@ public class Brush {
 	private Bristle[] bristles;
 	private PVector[] bOffsets;
 	private PVector[] bPositions;
-	private ArrayList<PVector> positionsHistory;
+	private PVector[] positionsHistory;
+	private int historySize;
 	private PVector averagePosition;
 	private float noiseSeed;
 	private int updatesCounter;
@@ -62,29 +61,91 @@ public class Brush {
 	 * @param size the brush size
 	 */
 	public Brush(PApplet applet, float size) {
+		this(applet, size, getRandomNBristles(applet, size));
+	}
+
+	/**
+	 * Creates a new brush object with a given number of bristles
+	 * 
+	 * @param applet the sketch applet
+	 * @param size the brush size
+	 * @param nBristles the number of bristles in the brush
+	 */
+	Brush(PApplet applet, float size, int nBristles) {
 		this.applet = applet;
 		this.position = new PVector(0, 0);
-		this.nBristles = (int) (size * this.applet.random(1.6f, 1.9f));
+		this.nBristles = nBristles;
 		this.bristles = new Bristle[this.nBristles];
 		this.bOffsets = new PVector[this.nBristles];
 		this.bPositions = new PVector[this.nBristles];
-		this.positionsHistory = new ArrayList<PVector>(POSITIONS_FOR_AVERAGE);
+		this.positionsHistory = new PVector[POSITIONS_FOR_AVERAGE];
+		this.historySize = 0;
 		this.averagePosition = this.position.copy();
-		this.noiseSeed = this.applet.random(1000);
-		this.updatesCounter = 0;
-		this.bristleHorizontalNoise = Math.min(0.3f * size, MAX_BRISTLE_HORIZONTAL_NOISE);
-
-		// Populate the bristles arrays
-		float bristleLength = Math.min(size, MAX_BRISTLE_LENGTH);
-		int nElements = Math.round(PApplet.sqrt(2 * bristleLength));
-		float bristleThickness = Math.min(0.8f * bristleLength, MAX_BRISTLE_THICKNESS);
 
+		// Populate the arrays
 		for (int bristle = 0; bristle < this.nBristles; bristle++) {
-			this.bristles[bristle] = new Bristle(nElements, bristleThickness);
-			this.bOffsets[bristle] = new PVector(size * this.applet.random(-0.5f, 0.5f),
-					BRISTLE_VERTICAL_NOISE * this.applet.random(-0.5f, 0.5f));
+			this.bristles[bristle] = new Bristle(getNBristleElements(size), 0);
+			this.bOffsets[bristle] = new PVector(0, 0);
 			this.bPositions[bristle] = new PVector(0, 0);
 		}
+
+		for (int i = 0; i < POSITIONS_FOR_AVERAGE; i++) {
+			this.positionsHistory[i] = new PVector(0, 0);
+		}
+
+		// Set the size dependent properties
+		reset(size);
+	}
+
+	/**
+	 * Returns a random number of bristles for a brush of the given size
+	 * 
+	 * @param applet the sketch applet
+	 * @param size the brush size
+	 * @return the number of bristles
+	 */
+	static int getRandomNBristles(PApplet applet, float size) {
+		return (int) (size * applet.random(1.6f, 1.9f));
+	}
+
+	/**
+	 * Returns the number of elements in each bristle for a brush of the given size
+	 * 
+	 * @param size the brush size
+	 * @return the number of bristle elements
+	 */
+	static int getNBristleElements(float size) {
+		return Math.round(PApplet.sqrt(2 * Math.min(size, MAX_BRISTLE_LENGTH)));
+	}
+
+	/**
+	 * Recycles the brush for a new size, randomizing again the bristle offsets and the noise seed. The new size should
+	 * have the same number of bristle elements as the current one
+	 * 
+	 * @param size the new brush size
+	 */
+	void reset(float size) {
+		noiseSeed = applet.random(1000);
+		updatesCounter = 0;
+		bristleHorizontalNoise = Math.min(0.3f * size, MAX_BRISTLE_HORIZONTAL_NOISE);
+
+		// Update the bristles arrays
+		float bristleThickness = Math.min(0.8f * Math.min(size, MAX_BRISTLE_LENGTH), MAX_BRISTLE_THICKNESS);
+
+		for (int bristle = 0; bristle < nBristles; bristle++) {
+			bristles[bristle].setThickness(bristleThickness);
+			bOffsets[bristle].set(size * applet.random(-0.5f, 0.5f),
+					BRISTLE_VERTICAL_NOISE * applet.random(-0.5f, 0.5f));
+		}
+	}
+
+	/**
+	 * Returns the number of elements in each bristle
+	 * 
+	 * @return the number of bristle elements
+	 */
+	int getNBristleElements() {
+		return bristles.length > 0 ? bristles[0].getNElements() : 0;
 	}
 
 	/**
@@ -94,7 +155,7 @@ public class Brush {
 	 */
 	public void init(PVector newPosition) {
 		position.set(newPosition.x, newPosition.y);
-		positionsHistory.clear();
+		historySize = 0;
 		averagePosition.set(position.x, position.y);
 		updatesCounter = 0;
 	}
@@ -110,20 +171,19 @@ public class Brush {
 		position.set(newPosition.x, newPosition.y);
 
 		// Add the new position to the positions history
-		int historySize = positionsHistory.size();
-
 		if (historySize < POSITIONS_FOR_AVERAGE) {
-			positionsHistory.add(newPosition.copy());
+			positionsHistory[historySize].set(newPosition.x, newPosition.y);
 			historySize++;
 		} else {
-			positionsHistory.get(updatesCounter % POSITIONS_FOR_AVERAGE).set(newPosition.x, newPosition.y);
+			positionsHistory[updatesCounter % POSITIONS_FOR_AVERAGE].set(newPosition.x, newPosition.y);
 		}
 
 		// Calculate the new average position
 		float xNewAverage = 0;
 		float yNewAverage = 0;
 
-		for (PVector pos : positionsHistory) {
+		for (int i = 0; i < historySize; i++) {
+			PVector pos = positionsHistory[i];
 			xNewAverage += pos.x;
 			yNewAverage += pos.y;
 		}
@@ -164,7 +224,7 @@ public class Brush {
 	 * @param directionAngle the brush movement direction angle
 	 */
 	private void updateBristlePositions(float directionAngle) {
-		if (positionsHistory.size() >= POSITIONS_FOR_AVERAGE - 1) {
+		if (historySize >= POSITIONS_FOR_AVERAGE - 1) {
 			// This saves some calculations
 			float cos = PApplet.cos(directionAngle);
 			float sin = PApplet.sin(directionAngle);
@@ -191,7 +251,7 @@ public class Brush {
 	 * @param canvas the canvas buffer
 	 */
 	public void paintOnCanvas(int[] colors, int alpha, PGraphics canvas) {
-		if (positionsHistory.size() == POSITIONS_FOR_AVERAGE) {
+		if (historySize == POSITIONS_FOR_AVERAGE) {
 			// Shift the alpha value
 			alpha = alpha << 24;
 
@@ -209,7 +269,7 @@ public class Brush {
 	 * @param alpha colors alpha value
 	 */
 	public void paintOnScreen(int[] colors, int alpha) {
-		if (positionsHistory.size() == POSITIONS_FOR_AVERAGE) {
+		if (historySize == POSITIONS_FOR_AVERAGE) {
 			// Shift the alpha value
 			alpha = alpha << 24;
 
@@ -235,6 +295,6 @@ public class Brush {
 	 * @return the current bristles positions
 	 */
 	public PVector[] getBristlesPositions() {
-		return positionsHistory.size() == POSITIONS_FOR_AVERAGE ? bPositions : null;
+		return historySize == POSITIONS_FOR_AVERAGE ? bPositions : null;
 	}
 }
@@ -0,0 +1,90 @@
+package oilPainting;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+import processing.core.PApplet;
+
+/**
+ * This class keeps the brushes that are not used anymore, so they can be recycled by new traces instead of creating new
+ * ones. The brushes are grouped by their number of bristles and bristle elements
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class BrushPool {
+
+	/**
+	 * The maximum number of free brushes kept for each number of bristles
+	 */
+	private static final int MAX_BRUSHES_PER_BUCKET = 8;
+
+	private PApplet applet;
+	private HashMap<Integer, ArrayDeque<Brush>> buckets;
+
+	/**
+	 * Creates a new brush pool object
+	 * 
+	 * @param applet the sketch applet
+	 */
+	public BrushPool(PApplet applet) {
+		this.applet = applet;
+		this.buckets = new HashMap<Integer, ArrayDeque<Brush>>();
+	}
+
+	/**
+	 * Returns the bucket key for a given number of bristles and bristle elements
+	 * 
+	 * @param nBristles the number of bristles
+	 * @param nElements the number of bristle elements
+	 * @return the bucket key
+	 */
+	private static Integer getKey(int nBristles, int nElements) {
+		return (nBristles << 8) | nElements;
+	}
+
+	/**
+	 * Returns a brush of the given size, recycling a free brush if there is one available
+	 * 
+	 * @param size the brush size
+	 * @return the brush
+	 */
+	public synchronized Brush obtain(float size) {
+		int nBristles = Brush.getRandomNBristles(applet, size);
+		ArrayDeque<Brush> bucket = buckets.get(getKey(nBristles, Brush.getNBristleElements(size)));
+
+		if (bucket == null || bucket.isEmpty()) {
+			return new Brush(applet, size, nBristles);
+		}
+
+		Brush brush = bucket.pop();
+		brush.reset(size);
+
+		return brush;
+	}
+
+	/**
+	 * Returns a brush to the pool. The brush should not be used after this call
+	 * 
+	 * @param brush the brush that is not used anymore
+	 */
+	public synchronized void release(Brush brush) {
+		Integer key = getKey(brush.getNBristles(), brush.getNBristleElements());
+		ArrayDeque<Brush> bucket = buckets.get(key);
+
+		if (bucket == null) {
+			bucket = new ArrayDeque<Brush>(MAX_BRUSHES_PER_BUCKET);
+			buckets.put(key, bucket);
+		}
+
+		if (bucket.size() < MAX_BRUSHES_PER_BUCKET) {
+			bucket.push(brush);
+		}
+	}
+
+	/**
+	 * Removes all the free brushes from the pool
+	 */
+	public synchronized void clear() {
+		buckets.clear();
+	}
+}
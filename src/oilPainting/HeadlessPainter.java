@@ -0,0 +1,271 @@
+package oilPainting;
+
+import java.util.Arrays;
+
+import processing.awt.PGraphicsJava2D;
+import processing.core.PApplet;
+import processing.core.PGraphics;
+
+/**
+ * This class paints a picture on an off-screen canvas without opening a sketch window. Each painter uses its own
+ * applet instance for the random numbers and the noise, so several painters can run at the same time in different
+ * threads
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class HeadlessPainter {
+
+	private Picture picture;
+	private PaintingParameters parameters;
+	private int backgroundColor;
+	private PApplet applet;
+	private PGraphics canvas;
+	private int imgWidth;
+	private int imgHeight;
+	private boolean[] similarColorPixels;
+	private boolean[] visitedPixels;
+	private long[] backgroundWords;
+	private int[] badPaintedPixels;
+	private int nBadPaintedPixels;
+	private TraceSearch traceSearch;
+	private volatile int nTraces;
+	private volatile boolean painting;
+	private volatile boolean cancelled;
+	private volatile boolean previewRequested;
+	private int[] previewPixels;
+	private final Object previewLock = new Object();
+	private long paintingTime;
+
+	/**
+	 * Creates a new headless painter object
+	 * 
+	 * @param picture the picture to paint
+	 * @param parameters the painting parameters
+	 * @param backgroundColor the canvas background color
+	 * @param seed the random and noise seed
+	 */
+	public HeadlessPainter(Picture picture, PaintingParameters parameters, int backgroundColor, long seed) {
+		this.picture = picture;
+		this.parameters = parameters;
+		this.backgroundColor = backgroundColor;
+		this.imgWidth = picture.width;
+		this.imgHeight = picture.height;
+
+		// Create the applet that will be used by the traces and brushes
+		this.applet = new PApplet();
+		this.applet.randomSeed(seed);
+		this.applet.noiseSeed(seed);
+
+		// Create the canvas where the picture will be painted
+		this.canvas = createGraphics(this.applet, this.imgWidth, this.imgHeight);
+		this.canvas.beginDraw();
+		this.canvas.background(backgroundColor);
+		this.canvas.endDraw();
+
+		// Initialize the rest of the painter variables
+		int nPixels = this.imgWidth * this.imgHeight;
+		this.similarColorPixels = new boolean[nPixels];
+		this.visitedPixels = new boolean[nPixels];
+		this.backgroundWords = picture.backgroundPixels.toLongArray();
+		this.badPaintedPixels = new int[nPixels];
+		this.nBadPaintedPixels = 0;
+		this.traceSearch = new TraceSearch(this.applet, parameters, backgroundColor, averageBrushSize -> {
+			// Reset the visited pixels array and mask the background regions if necessary
+			Arrays.fill(visitedPixels, false);
+
+			if (parameters.avoidBackgroundRegions) {
+				maskBackgroundRegions();
+			}
+		});
+		this.traceSearch.startPicture(this.imgWidth, this.imgHeight);
+		this.nTraces = 0;
+		this.painting = false;
+		this.cancelled = false;
+		this.previewRequested = false;
+		this.previewPixels = null;
+		this.paintingTime = 0;
+	}
+
+	/**
+	 * Creates an off-screen graphics object that doesn't need a sketch window
+	 * 
+	 * @param applet the applet that will own the graphics object
+	 * @param width the graphics width
+	 * @param height the graphics height
+	 * @return the off-screen graphics object
+	 */
+	private static PGraphics createGraphics(PApplet applet, int width, int height) {
+		PGraphics graphics = new PGraphicsJava2D();
+		graphics.setParent(applet);
+		graphics.setPrimary(false);
+		graphics.setSize(width, height);
+
+		// Apply the default settings
+		graphics.beginDraw();
+		graphics.endDraw();
+
+		return graphics;
+	}
+
+	/**
+	 * Paints the picture until there are no more valid traces or the painting is cancelled
+	 */
+	public void paint() {
+		long startTime = System.nanoTime();
+		boolean continuePainting = true;
+		painting = true;
+
+		while (continuePainting && !cancelled) {
+			// Update the similar color and bad painted pixel arrays
+			updatePixelArrays();
+
+			// Save a copy of the canvas pixels if another thread requested a preview
+			if (previewRequested) {
+				publishPreview();
+			}
+
+			// Mask background regions if necessary
+			if (parameters.avoidBackgroundRegions && nTraces == 0) {
+				maskBackgroundRegions();
+			}
+
+			// Obtain a new valid trace
+			Trace trace = traceSearch.findTrace(picture.img, canvas, similarColorPixels, visitedPixels,
+					badPaintedPixels, nBadPaintedPixels);
+
+			// Check if we should stop painting because there are no more valid traces
+			if (trace == null) {
+				continuePainting = false;
+			} else {
+				// Paint the trace
+				nTraces++;
+				trace.paint(visitedPixels, imgWidth, imgHeight, canvas, true);
+				trace.releaseBrush();
+			}
+		}
+
+		// Load the final canvas pixels
+		canvas.loadPixels();
+		paintingTime += System.nanoTime() - startTime;
+
+		// Save the final preview and wake up the threads waiting for a preview
+		synchronized (previewLock) {
+			painting = false;
+			previewPixels = canvas.pixels.clone();
+			previewLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Stops the painting as soon as the current trace is painted. This method can be called from any thread
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Returns a copy of the canvas pixels. If the picture is being painted, it waits until the painting thread saves a
+	 * copy of the pixels. This method can be called from any thread
+	 * 
+	 * @param timeout the maximum time to wait in milliseconds
+	 * @return the canvas pixels copy. null if the painting didn't start or the waiting time expired
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public int[] getPreview(long timeout) throws InterruptedException {
+		synchronized (previewLock) {
+			if (!painting) {
+				return previewPixels;
+			}
+
+			previewPixels = null;
+			previewRequested = true;
+			long endTime = System.currentTimeMillis() + timeout;
+			long remainingTime = timeout;
+
+			while (previewPixels == null && painting && remainingTime > 0) {
+				previewLock.wait(remainingTime);
+				remainingTime = endTime - System.currentTimeMillis();
+			}
+
+			return previewPixels;
+		}
+	}
+
+	/**
+	 * Saves a copy of the canvas pixels for the threads waiting for a preview. The canvas pixels should be loaded
+	 */
+	private void publishPreview() {
+		synchronized (previewLock) {
+			previewPixels = canvas.pixels.clone();
+			previewRequested = false;
+			previewLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Updates the similar color and bad painted pixel arrays
+	 */
+	private void updatePixelArrays() {
+		// Load the canvas pixels
+		canvas.loadPixels();
+
+		// Update the arrays. The painters usually run in parallel, so the comparison runs in a single band
+		nBadPaintedPixels = PixelKernels.compareColors(canvas.pixels, imgWidth, picture.img.pixels, imgWidth,
+				imgHeight, parameters.maxColorDiff, backgroundColor, parameters.avoidBackgroundRegions,
+				similarColorPixels, badPaintedPixels, false);
+	}
+
+	/**
+	 * Masks all the pixels with a color that is equal to the canvas background color. This method should be called
+	 * after updatePixelArrays(), while the canvas pixels are still loaded.
+	 */
+	private void maskBackgroundRegions() {
+		PixelKernels.maskBackground(backgroundWords, canvas.pixels, imgWidth, imgWidth, backgroundColor,
+				visitedPixels);
+	}
+
+	/**
+	 * Returns the canvas where the picture has been painted
+	 * 
+	 * @return the painting canvas
+	 */
+	public PGraphics getCanvas() {
+		return canvas;
+	}
+
+	/**
+	 * Returns the current average brush size
+	 * 
+	 * @return the average brush size
+	 */
+	public float getAverageBrushSize() {
+		return traceSearch.getAverageBrushSize();
+	}
+
+	/**
+	 * Returns the number of painted traces
+	 * 
+	 * @return the number of painted traces
+	 */
+	public int getNTraces() {
+		return nTraces;
+	}
+
+	/**
+	 * Returns the time spent painting the picture
+	 * 
+	 * @return the painting time in milliseconds
+	 */
+	public double getPaintingTime() {
+		return paintingTime / 1000000.0;
+	}
+
+	/**
+	 * Returns the trace validation statistics
+	 * 
+	 * @return the trace statistics
+	 */
+	public TraceStatistics getTraceStatistics() {
+		return traceSearch.getTraceStatistics();
+	}
+}
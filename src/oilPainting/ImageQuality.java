@@ -0,0 +1,131 @@
+package oilPainting;
+
+import colorUtils.PackedColor;
+
+/**
+ * Helper class to measure how similar a painting is to the original picture
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class ImageQuality {
+
+	/**
+	 * The size of the square windows used to calculate the structural similarity index
+	 */
+	private static final int SSIM_WINDOW_SIZE = 8;
+
+	/**
+	 * The step between two consecutive structural similarity windows
+	 */
+	private static final int SSIM_WINDOW_STEP = 4;
+
+	/**
+	 * The structural similarity index stabilization constants, for 8 bit channels
+	 */
+	private static final double SSIM_C1 = Math.pow(0.01 * 255, 2);
+	private static final double SSIM_C2 = Math.pow(0.03 * 255, 2);
+
+	/**
+	 * This class has no public constructor
+	 */
+	private ImageQuality() {
+
+	}
+
+	/**
+	 * Calculates the peak signal to noise ratio between two images, using the three RGB channels
+	 * 
+	 * @param pixels the first image pixels
+	 * @param referencePixels the reference image pixels
+	 * @return the peak signal to noise ratio in decibels. Infinity if the two images are equal
+	 */
+	public static double psnr(int[] pixels, int[] referencePixels) {
+		double squaredDiffSum = 0;
+
+		for (int i = 0; i < pixels.length; i++) {
+			int col = pixels[i];
+			int referenceCol = referencePixels[i];
+			int redDiff = ((col >> 16) & 0xff) - ((referenceCol >> 16) & 0xff);
+			int greenDiff = ((col >> 8) & 0xff) - ((referenceCol >> 8) & 0xff);
+			int blueDiff = (col & 0xff) - (referenceCol & 0xff);
+			squaredDiffSum += redDiff * redDiff + greenDiff * greenDiff + blueDiff * blueDiff;
+		}
+
+		if (squaredDiffSum == 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+
+		double mse = squaredDiffSum / (3.0 * pixels.length);
+
+		return 10 * Math.log10(255 * 255 / mse);
+	}
+
+	/**
+	 * Calculates the mean structural similarity index between two images, using the pixel luminance. The index is
+	 * averaged over overlapping square windows
+	 * 
+	 * @param pixels the first image pixels
+	 * @param referencePixels the reference image pixels
+	 * @param width the images width
+	 * @param height the images height
+	 * @return the mean structural similarity index, between -1 and 1
+	 */
+	public static double ssim(int[] pixels, int[] referencePixels, int width, int height) {
+		float[] luminance = getLuminance(pixels);
+		float[] referenceLuminance = getLuminance(referencePixels);
+		int windowSize = Math.min(SSIM_WINDOW_SIZE, Math.min(width, height));
+		int nWindowPixels = windowSize * windowSize;
+		double ssimSum = 0;
+		int nWindows = 0;
+
+		for (int y0 = 0; y0 + windowSize <= height; y0 += SSIM_WINDOW_STEP) {
+			for (int x0 = 0; x0 + windowSize <= width; x0 += SSIM_WINDOW_STEP) {
+				double sum = 0;
+				double referenceSum = 0;
+				double sqSum = 0;
+				double referenceSqSum = 0;
+				double crossSum = 0;
+
+				for (int y = y0; y < y0 + windowSize; y++) {
+					for (int x = x0, pixel = x0 + y * width; x < x0 + windowSize; x++, pixel++) {
+						double l = luminance[pixel];
+						double referenceL = referenceLuminance[pixel];
+						sum += l;
+						referenceSum += referenceL;
+						sqSum += l * l;
+						referenceSqSum += referenceL * referenceL;
+						crossSum += l * referenceL;
+					}
+				}
+
+				double mean = sum / nWindowPixels;
+				double referenceMean = referenceSum / nWindowPixels;
+				double variance = sqSum / nWindowPixels - mean * mean;
+				double referenceVariance = referenceSqSum / nWindowPixels - referenceMean * referenceMean;
+				double covariance = crossSum / nWindowPixels - mean * referenceMean;
+				ssimSum += ((2 * mean * referenceMean + SSIM_C1) * (2 * covariance + SSIM_C2))
+						/ ((mean * mean + referenceMean * referenceMean + SSIM_C1)
+								* (variance + referenceVariance + SSIM_C2));
+				nWindows++;
+			}
+		}
+
+		return nWindows > 0 ? ssimSum / nWindows : 1;
+	}
+
+	/**
+	 * Calculates the luminance of each pixel
+	 * 
+	 * @param pixels the image pixels
+	 * @return the pixels luminance
+	 */
+	private static float[] getLuminance(int[] pixels) {
+		float[] luminance = new float[pixels.length];
+
+		for (int i = 0; i < pixels.length; i++) {
+			luminance[i] = PackedColor.luminance(pixels[i]);
+		}
+
+		return luminance;
+	}
+}
@@ -6,7 +6,6 @@ import gifAnimation.GifMaker;
 import processing.core.PApplet;
 import processing.core.PGraphics;
 import processing.core.PImage;
-import processing.core.PVector;
 
 /**
  * This sketch takes a set of pictures as input and simulates a sequence of oil paints. It has many optional parameters,
@@ -23,8 +22,6 @@ public class OilPaintingSketch extends PApplet {
 	private String backgroundPictureFile = null;
 	// The directory where the output files should be saved
 	private String outputDir = "src/oilPainting/out/";
-	// The maximum RGB color difference to consider the pixel correctly painted
-	private int[] maxColorDiff = new int[] { 40, 40, 40 };
 	// The size reduction factor between the original images and the final painting
 	private float sizeReductionFactor = 1.0f;
 	// Use a separate canvas buffer for color mixing (a bit slower)
@@ -41,28 +38,20 @@ public class OilPaintingSketch extends PApplet {
 	private boolean makeGif = false;
 	// Paint the traces step by step, or in one go
 	private boolean paintStepByStep = true;
-	// Avoid painting on areas with the same color as the canvas background
-	private boolean avoidBackgroundRegions = true;
+	// The time in milliseconds that can be spent painting in each frame. If it's zero, one step is painted per frame
+	private int stepTimeBudget = 0;
+	// Run the full frame pixel comparisons in parallel bands
+	private boolean useParallelPixelPasses = true;
 	// Save a picture of the final frame of each picture paint
 	private boolean saveFinalFramePicture = false;
-	// The smaller brush size allowed
-	private float smallerBrushSize = 4;
-	// The brush size decrement ratio
-	private float brushSizeDecrement = 1.3f;
-	// The maximum number of invalid trajectories allowed before the brush size is reduced
-	private int maxInvalidTrajectories = 5000;
-	// The maximum number of invalid trajectories allowed for the smaller brush size before the painting is stopped
-	private int maxInvalidTrajectoriesForSmallerSize = 10000;
-	// The maximum number of invalid traces allowed before the brush size is reduced
-	private int maxInvalidTraces = 250;
-	// The maximum number of invalid traces allowed for the smaller brush size before the painting is stopped
-	private int maxInvalidTracesForSmallerSize = 350;
-	// The trace speed
-	private float traceSpeed = 2;
-	// The typical trace length, relative to the brush size
-	private float relativeTraceLength = 2.3f;
-	// The minimum trace length allowed
-	private float minTraceLength = 16;
+	// The directory where the prepared pictures are cached between runs. If it's null, the pictures are not cached
+	private String pictureCacheDir = null;
+	// The maximum size of the picture cache in MB
+	private int pictureCacheSize = 512;
+	// Save the trace search telemetry of each picture paint as CSV files
+	private boolean saveTelemetry = false;
+	// The painting parameters: color differences, brush sizes, trace lengths, etc. (see PaintingParameters)
+	private PaintingParameters parameters = new PaintingParameters();
 	// The screen and canvas background color
 	private int backgroundColor = color(255);
 	// The animation frame step between two movie frames
@@ -72,22 +61,27 @@ public class OilPaintingSketch extends PApplet {
 
 	// Sketch variables
 	private PImage originalImg;
+	private PictureLoader pictureLoader;
 	private int imgWidth;
 	private int imgHeight;
 	private int imgCounter;
 	private PGraphics canvas;
 	private boolean[] similarColorPixels;
 	private boolean[] visitedPixels;
+	private long[] backgroundWords;
 	private int[] badPaintedPixels;
 	private int nBadPaintedPixels;
 	private GifMaker gifMaker;
-	private float averageBrushSize;
 	private boolean continuePainting;
+	private TraceSearch traceSearch;
+	private TraceStatistics traceStatistics;
+	private PaintingTelemetry telemetry;
 	private Trace trace;
 	private int traceStep;
 	private int nTraces;
 	private int startTime;
 	private int waitCounter;
+	private int animationStep;
 
 	/**
 	 * Sets the default window size
@@ -101,14 +95,36 @@ public class OilPaintingSketch extends PApplet {
 	 */
 	public void setup() {
 		// Load the first image that we want to paint and resize it by the specified amount
-		originalImg = loadImage(pictureFiles[0]);
-		imgWidth = round(originalImg.width / sizeReductionFactor);
-		imgHeight = round(originalImg.height / sizeReductionFactor);
-		originalImg.resize(imgWidth, imgHeight);
+		Picture picture;
+		PictureCache pictureCache = null;
+		int[] imgSize = null;
+
+		if (pictureCacheDir != null) {
+			// Read the image size without decoding the image, so the resized picture can be read from the cache
+			pictureCache = new PictureCache(pictureCacheDir, pictureCacheSize * 1024L * 1024L);
+			imgSize = PictureCache.readImageSize(this, pictureFiles[0]);
+		}
+
+		if (imgSize != null) {
+			imgWidth = round(imgSize[0] / sizeReductionFactor);
+			imgHeight = round(imgSize[1] / sizeReductionFactor);
+			picture = pictureCache.get(this, pictureFiles[0], imgWidth, imgHeight, backgroundColor);
+			originalImg = picture.img;
+		} else {
+			originalImg = loadImage(pictureFiles[0]);
+			imgWidth = round(originalImg.width / sizeReductionFactor);
+			imgHeight = round(originalImg.height / sizeReductionFactor);
+			originalImg.resize(imgWidth, imgHeight);
+
+			// Prepare the original image. This loads the image pixels and finds the background pixels
+			picture = new Picture(pictureFiles[0], originalImg, backgroundColor);
+		}
+
 		imgCounter = 1;
 
-		// Load the original image pixels. This way they will be available all the time
-		originalImg.loadPixels();
+		// Start loading the next picture in the background while the first one is painted
+		pictureLoader = new PictureLoader(this, pictureFiles, imgWidth, imgHeight, backgroundColor, pictureCache);
+		pictureLoader.prefetch(imgCounter);
 
 		// Resize the sketch window
 		surface.setResizable(true);
@@ -129,7 +145,7 @@ public class OilPaintingSketch extends PApplet {
 		// Sketch setup
 		strokeCap(SQUARE);
 		background(backgroundColor);
-		frameRate(2000);
+		frameRate(stepTimeBudget > 0 ? 60 : 2000);
 
 		// Create the canvas buffer
 		canvas = null;
@@ -149,6 +165,7 @@ public class OilPaintingSketch extends PApplet {
 		int nPixels = imgWidth * imgHeight;
 		similarColorPixels = new boolean[nPixels];
 		visitedPixels = new boolean[nPixels];
+		backgroundWords = picture.backgroundPixels.toLongArray();
 		badPaintedPixels = new int[nPixels];
 		nBadPaintedPixels = nPixels;
 
@@ -159,13 +176,18 @@ public class OilPaintingSketch extends PApplet {
 		}
 
 		// Initialize the rest of the sketch variables
-		averageBrushSize = max(smallerBrushSize, max(imgWidth, imgHeight) / 6.0f);
 		continuePainting = true;
+		traceSearch = new TraceSearch(this, parameters, backgroundColor, this::brushSizeChanged);
+		traceSearch.startPicture(imgWidth, imgHeight);
+		traceStatistics = traceSearch.getTraceStatistics();
+		telemetry = new PaintingTelemetry(traceStatistics, saveTelemetry);
+		telemetry.startPicture(pictureFiles[0], traceSearch.getAverageBrushSize());
 		trace = null;
 		traceStep = 0;
 		nTraces = 0;
 		startTime = millis();
 		waitCounter = 0;
+		animationStep = 0;
 	}
 
 	/**
@@ -177,6 +199,25 @@ public class OilPaintingSketch extends PApplet {
 			paintBackgroundPicture();
 		}
 
+		// Run as many animation steps as fit in the time budget, or only one if there is no time budget. The pause
+		// between two pictures is counted in frames, so only one of its steps is run per frame
+		int frameStartTime = millis();
+
+		do {
+			paintAnimationStep();
+		} while (stepTimeBudget > 0 && continuePainting && millis() - frameStartTime < stepTimeBudget);
+
+		// Draw the additional images if necessary
+		if (continuePainting) {
+			drawAdditionalImages();
+		}
+	}
+
+	/**
+	 * Runs one animation step. The movie and gif frames are saved every given number of animation steps, independently
+	 * of how many steps are painted in each screen frame
+	 */
+	private void paintAnimationStep() {
 		// Check that the oil painting simulation from the current image didn't finish
 		if (continuePainting) {
 			// Get a new valid trace if we are not painting one already
@@ -193,40 +234,46 @@ public class OilPaintingSketch extends PApplet {
 				if (saveFinalFramePicture) {
 					save(outputDir + "oilPaint-" + frameCount + ".png");
 				}
+
+				// Save the telemetry data
+				if (saveTelemetry) {
+					telemetry.finishPicture();
+					println(telemetry.getPhaseTimesSummary());
+					telemetry.saveCsv(outputDir + "telemetry-" + (imgCounter - 1));
+				}
 			} else {
 				// Paint the trace step by step or in one go
+				PaintingTelemetry.Phase paintingPhase = telemetry.startPhase(PaintingTelemetry.PAINTING_PHASE);
+
 				if (paintStepByStep) {
 					trace.paintStep(traceStep, visitedPixels, imgWidth, imgHeight, canvas, false);
 					traceStep++;
 
 					// Check if we finished painting the trace
 					if (traceStep == trace.getNSteps()) {
+						trace.releaseBrush();
 						trace = null;
 					}
 				} else {
 					trace.paint(visitedPixels, imgWidth, imgHeight, canvas, false);
+					trace.releaseBrush();
 					trace = null;
 				}
 
-				// Draw the additional images if necessary
-				if (comparisonMode) {
-					image(originalImg, imgWidth, 0);
-				} else if (debugMode) {
-					drawDebugImages();
-				}
+				telemetry.endPhase(paintingPhase);
 			}
 		} else if (imgCounter < pictureFiles.length) {
 			// Wait some frames before starting to paint the next picture
 			if (waitCounter < 60 * movieFrameStep) {
 				waitCounter++;
 			} else {
-				// Load the next image that we want to paint and resize it by the specified amount
-				originalImg = loadImage(pictureFiles[imgCounter]);
-				originalImg.resize(imgWidth, imgHeight);
+				// Get the next image that we want to paint. It should be already loaded and resized
+				Picture picture = pictureLoader.get(imgCounter);
+				originalImg = picture.img;
 				imgCounter++;
 
-				// Load the original image pixels. This way they will be available all the time
-				originalImg.loadPixels();
+				// Start loading the following picture in the background
+				pictureLoader.prefetch(imgCounter);
 
 				// Clean the screen and the canvas if necessary
 				if (startWithCleanCanvas) {
@@ -242,9 +289,14 @@ public class OilPaintingSketch extends PApplet {
 				// Reset the visited pixels array
 				Arrays.fill(visitedPixels, false);
 
+				// Use the picture background pixels to mask the background regions
+				backgroundWords = picture.backgroundPixels.toLongArray();
+
 				// Initialize the rest of the sketch variables
-				averageBrushSize = max(smallerBrushSize, max(imgWidth, imgHeight) / 6.0f);
 				continuePainting = true;
+				traceSearch.startPicture(imgWidth, imgHeight);
+				traceStatistics.reset();
+				telemetry.startPicture(picture.fileName, traceSearch.getAverageBrushSize());
 				trace = null;
 				traceStep = 0;
 				nTraces = 0;
@@ -257,6 +309,12 @@ public class OilPaintingSketch extends PApplet {
 				noLoop();
 			}
 
+			// Stop the picture loader thread
+			if (pictureLoader != null) {
+				pictureLoader.shutdown();
+				pictureLoader = null;
+			}
+
 			// Close the gif maker object if we are making a gif
 			if (makeGif) {
 				gifMaker.finish();
@@ -273,6 +331,20 @@ public class OilPaintingSketch extends PApplet {
 		if (makeGif) {
 			saveGifFrame();
 		}
+
+		// Increment the animation step counter
+		animationStep++;
+	}
+
+	/**
+	 * Draws the original image or the debug images next to the painting if necessary
+	 */
+	private void drawAdditionalImages() {
+		if (comparisonMode) {
+			image(originalImg, imgWidth, 0);
+		} else if (debugMode) {
+			drawDebugImages();
+		}
 	}
 
 	/**
@@ -300,100 +372,56 @@ public class OilPaintingSketch extends PApplet {
 	 */
 	private Trace getValidTrace() {
 		// Update the similar color and bad painted pixel arrays
+		PaintingTelemetry.Phase phase = telemetry.startPhase(PaintingTelemetry.PIXEL_ARRAYS_PHASE);
 		updatePixelArrays();
+		telemetry.endPhase(phase);
+		telemetry.recordBadPaintedPixels(nBadPaintedPixels, nTraces);
 
 		// Mask background regions if necessary
-		if (avoidBackgroundRegions && nTraces == 0) {
+		if (parameters.avoidBackgroundRegions && nTraces == 0) {
+			phase = telemetry.startPhase(PaintingTelemetry.BACKGROUND_MASK_PHASE);
 			maskBackgroundRegions();
+			telemetry.endPhase(phase);
 		}
 
-		// Obtain a new valid trace
-		Trace trace = null;
-		boolean traceNotFound = true;
-		int invalidTrajectoriesCounter = 0;
-		int invalidTracesCounter = 0;
-		PVector startingPosition = new PVector(0, 0);
-
-		while (traceNotFound) {
-			// Check if we should stop painting
-			if (averageBrushSize == smallerBrushSize
-					&& (invalidTrajectoriesCounter > maxInvalidTrajectoriesForSmallerSize
-							|| invalidTracesCounter > maxInvalidTracesForSmallerSize)) {
-				println("Total number of painted traces: " + nTraces);
-				println("Processing time = " + (millis() - startTime) / 1000.0f + " seconds");
-
-				// Stop the while loop
-				trace = null;
-				traceNotFound = false;
-			} else {
-				// Change the average brush size if there were too many invalid traces
-				if (averageBrushSize > smallerBrushSize && (invalidTrajectoriesCounter > maxInvalidTrajectories
-						|| invalidTracesCounter > maxInvalidTraces)) {
-					averageBrushSize = max(smallerBrushSize,
-							min(averageBrushSize / brushSizeDecrement, averageBrushSize - 2));
-
-					println("Frame = " + frameCount + ", traces = " + nTraces + ", new average brush size = "
-							+ averageBrushSize);
+		// Start the trace search phase
+		phase = telemetry.startPhase(PaintingTelemetry.TRACE_SEARCH_PHASE);
 
-					// Reset some of the variables
-					invalidTrajectoriesCounter = 0;
-					invalidTracesCounter = 0;
-
-					// Reset the visited pixels array
-					Arrays.fill(visitedPixels, false);
+		// Obtain a new valid trace
+		Trace trace = traceSearch.findTrace(originalImg, canvas, similarColorPixels, visitedPixels, badPaintedPixels,
+				nBadPaintedPixels);
 
-					// Mask background regions if necessary
-					if (avoidBackgroundRegions) {
-						maskBackgroundRegions();
-					}
-				}
+		if (trace != null) {
+			nTraces++;
+		} else {
+			println("Total number of painted traces: " + nTraces);
+			println("Processing time = " + (millis() - startTime) / 1000.0f + " seconds");
+			println(traceStatistics.toString());
+		}
 
-				// Create new traces until one of them has a valid trajectory or we exceed a number of tries
-				boolean validTrajectory = false;
-				float brushSize = max(smallerBrushSize, averageBrushSize * random(0.95f, 1.05f));
-				int nSteps = (int) (max(minTraceLength, relativeTraceLength * brushSize * random(0.9f, 1.1f))
-						/ traceSpeed);
+		// End the trace search phase
+		telemetry.endPhase(phase);
 
-				while (!validTrajectory && invalidTrajectoriesCounter % 500 != 499) {
-					// Create the trace starting from a bad painted pixel
-					int pixel = badPaintedPixels[floor(random(nBadPaintedPixels))];
-					startingPosition.set(pixel % imgWidth, pixel / imgWidth);
-					trace = new Trace(this, startingPosition, nSteps, traceSpeed);
+		// Return the trace
+		return trace;
+	}
 
-					// Check if it has a valid trajectory
-					validTrajectory = trace.hasValidTrajectory(similarColorPixels, visitedPixels, originalImg);
+	/**
+	 * Called by the trace search after the average brush size has been reduced
+	 * 
+	 * @param averageBrushSize the new average brush size
+	 */
+	private void brushSizeChanged(float averageBrushSize) {
+		println("Frame = " + frameCount + ", traces = " + nTraces + ", new average brush size = " + averageBrushSize);
+		telemetry.changeBrushSize(averageBrushSize);
 
-					// Increase the counter
-					invalidTrajectoriesCounter++;
-				}
+		// Reset the visited pixels array
+		Arrays.fill(visitedPixels, false);
 
-				// Check if we have a valid trajectory
-				if (validTrajectory) {
-					// Reset the invalid trajectories counter
-					invalidTrajectoriesCounter = 0;
-
-					// Set the trace brush size
-					trace.setBrushSize(brushSize);
-
-					// Calculate the trace colors and check that painting the trace will improve the painting
-					if (trace.calculateColors(maxColorDiff, similarColorPixels, originalImg, canvas, backgroundColor)) {
-						// Test passed, the trace is good enough to be painted
-						traceNotFound = false;
-						nTraces++;
-					} else {
-						// The trace is not good enough, try again in the next loop step
-						invalidTracesCounter++;
-					}
-				} else {
-					// The trace is not good enough, try again in the next loop step
-					invalidTrajectoriesCounter++;
-					invalidTracesCounter++;
-				}
-			}
+		// Mask background regions if necessary
+		if (parameters.avoidBackgroundRegions) {
+			maskBackgroundRegions();
 		}
-
-		// Return the trace
-		return trace;
 	}
 
 	/**
@@ -404,32 +432,9 @@ public class OilPaintingSketch extends PApplet {
 		loadPixels();
 
 		// Update the arrays
-		nBadPaintedPixels = 0;
-
-		for (int x = 0; x < imgWidth; x++) {
-			for (int y = 0; y < imgHeight; y++) {
-				// Check if the pixel is well painted
-				boolean wellPainted = false;
-				int imgPixel = x + y * imgWidth;
-				int paintedCol = pixels[x + y * width];
-				int originalCol = originalImg.pixels[imgPixel];
-
-				if (paintedCol != backgroundColor) {
-					wellPainted = abs(((originalCol >> 16) & 0xff) - ((paintedCol >> 16) & 0xff)) < maxColorDiff[0]
-							&& abs(((originalCol >> 8) & 0xff) - ((paintedCol >> 8) & 0xff)) < maxColorDiff[1]
-							&& abs((originalCol & 0xff) - (paintedCol & 0xff)) < maxColorDiff[2];
-				} else if (originalCol == backgroundColor) {
-					wellPainted = avoidBackgroundRegions;
-				}
-
-				similarColorPixels[imgPixel] = wellPainted;
-
-				if (!wellPainted) {
-					badPaintedPixels[nBadPaintedPixels] = imgPixel;
-					nBadPaintedPixels++;
-				}
-			}
-		}
+		nBadPaintedPixels = PixelKernels.compareColors(pixels, width, originalImg.pixels, imgWidth, imgHeight,
+				parameters.maxColorDiff, backgroundColor, parameters.avoidBackgroundRegions, similarColorPixels,
+				badPaintedPixels, useParallelPixelPasses);
 
 		// Update the screen pixels
 		updatePixels();
@@ -438,24 +443,13 @@ public class OilPaintingSketch extends PApplet {
 	/**
 	 * Masks all pixels with a color that is equal to the canvas background color. The mask is applied to the visited
 	 * pixels array.
+	 * 
+	 * Only the original image pixels with the background color that were not painted in the previous calls need to be
+	 * checked on the screen. This method should be called after updatePixelArrays(), while the screen pixels are still
+	 * loaded.
 	 */
 	private void maskBackgroundRegions() {
-		// Load the screen pixels
-		loadPixels();
-
-		// Mask all pixels in the canvas and the original image with a color equal to the background color
-		for (int x = 0; x < imgWidth; x++) {
-			for (int y = 0; y < imgHeight; y++) {
-				int imgPixel = x + y * imgWidth;
-
-				if (pixels[x + y * width] == backgroundColor && originalImg.pixels[imgPixel] == backgroundColor) {
-					visitedPixels[imgPixel] = true;
-				}
-			}
-		}
-
-		// Update the screen pixels
-		updatePixels();
+		PixelKernels.maskBackground(backgroundWords, pixels, width, imgWidth, backgroundColor, visitedPixels);
 	}
 
 	/**
@@ -466,14 +460,9 @@ public class OilPaintingSketch extends PApplet {
 		loadPixels();
 
 		// Draw the arrays
-		for (int x = 0; x < imgWidth; x++) {
-			for (int y = 0; y < imgHeight; y++) {
-				int imgPixel = x + y * imgWidth;
-				int screenPixel = x + y * width + imgWidth;
-				pixels[screenPixel] = visitedPixels[imgPixel] ? 0xff000000 : 0xffffffff;
-				pixels[screenPixel + imgWidth] = similarColorPixels[imgPixel] ? 0xff000000 : 0xffffffff;
-			}
-		}
+		PixelKernels.drawMask(visitedPixels, imgWidth, imgHeight, pixels, width, imgWidth, useParallelPixelPasses);
+		PixelKernels.drawMask(similarColorPixels, imgWidth, imgHeight, pixels, width, 2 * imgWidth,
+				useParallelPixelPasses);
 
 		// Update the screen pixels
 		updatePixels();
@@ -489,11 +478,16 @@ public class OilPaintingSketch extends PApplet {
 			ellipse(0, 0, 2, 2);
 		}
 
-		// Make the frame counter start from zero
-		int frame = frameCount - 1;
+		// Use the animation step as frame counter, so the movie doesn't depend on the steps painted per frame
+		int frame = animationStep;
 
 		// Save a picture after a given number of frames
 		if (frame % movieFrameStep == 0) {
+			// Make sure that the additional images are up to date
+			if (continuePainting) {
+				drawAdditionalImages();
+			}
+
 			String fileRootName = outputDir;
 
 			if (frame < 10) {
@@ -518,7 +512,12 @@ public class OilPaintingSketch extends PApplet {
 	 * Saves the current gif frame
 	 */
 	private void saveGifFrame() {
-		if (gifMaker != null && (frameCount - 1) % gifFrameStep == 0) {
+		if (gifMaker != null && animationStep % gifFrameStep == 0) {
+			// Make sure that the additional images are up to date
+			if (continuePainting) {
+				drawAdditionalImages();
+			}
+
 			gifMaker.setDelay(1);
 			gifMaker.addFrame();
 		}
@@ -0,0 +1,233 @@
+package oilPainting;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import processing.core.PApplet;
+import processing.core.PImage;
+import processing.data.JSONObject;
+
+/**
+ * This program paints a fixed set of pictures with fixed seeds using the same trace search as the oil painting sketch
+ * (see TraceSearch), and reports the painting throughput (traces per second and trace candidates per second), the
+ * peak heap usage and the total painting time.
+ * 
+ * The paintings are compared with a set of golden images, and the program fails if any of them differs more than the
+ * allowed tolerance or is missing. The results are also compared with a baseline JSON file from a previous run, and
+ * the program fails if the traces per second dropped more than the allowed tolerance. The first run without a baseline
+ * file saves the current results as the baseline. Use the --update-golden and --update-baseline arguments to save the
+ * current paintings and results as the new references.
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class PaintingBenchmark {
+	// The paths to the benchmark pictures
+	private String[] pictureFiles = { "src/oilPainting/picture.jpg" };
+	// The seeds used to paint each picture
+	private long[] seeds = { 1, 2, 3 };
+	// The directory where the golden images and the baseline file are saved
+	private String referenceDir = "src/oilPainting/benchmark/";
+	// The size reduction factor between the original pictures and the paintings
+	private float sizeReductionFactor = 2.0f;
+	// The canvas background color
+	private int backgroundColor = 0xffffffff;
+	// The minimum PSNR in decibels between a painting and its golden image
+	private double minGoldenPsnr = 35;
+	// The maximum allowed relative drop in traces per second with respect to the baseline. Zero disables the check
+	private double maxThroughputDrop = 0.2;
+	// The painting parameters
+	private PaintingParameters parameters = new PaintingParameters();
+
+	/**
+	 * Runs the benchmark
+	 * 
+	 * @param updateGolden save the paintings as the new golden images
+	 * @param updateBaseline save the results as the new baseline
+	 * @return true if all the checks passed
+	 */
+	public boolean run(boolean updateGolden, boolean updateBaseline) {
+		new File(referenceDir).mkdirs();
+		PApplet loader = new PApplet();
+		boolean passed = true;
+		long totalTraces = 0;
+		long totalCandidates = 0;
+		long totalTime = 0;
+		long peakHeap = 0;
+
+		for (String pictureFile : pictureFiles) {
+			// Load and resize the picture
+			PImage img = loader.loadImage(pictureFile);
+			img.resize(Math.round(img.width / sizeReductionFactor), Math.round(img.height / sizeReductionFactor));
+			Picture picture = new Picture(pictureFile, img, backgroundColor);
+			String pictureName = new File(pictureFile).getName().replaceFirst("\\.[^.]*$", "");
+
+			for (long seed : seeds) {
+				// Paint the picture
+				System.gc();
+				resetPeakHeap();
+				long startTime = System.nanoTime();
+				HeadlessPainter painter = new HeadlessPainter(picture, parameters, backgroundColor, seed);
+				painter.paint();
+				long time = System.nanoTime() - startTime;
+				long heap = getPeakHeap();
+
+				totalTraces += painter.getNTraces();
+				totalCandidates += painter.getTraceStatistics().candidates;
+				totalTime += time;
+				peakHeap = Math.max(peakHeap, heap);
+
+				// Compare the painting with the golden image
+				String goldenFile = referenceDir + pictureName + "-seed" + seed + ".png";
+				String goldenResult;
+
+				if (updateGolden) {
+					painter.getCanvas().save(goldenFile);
+					goldenResult = "golden image saved";
+				} else if (!new File(goldenFile).exists()) {
+					goldenResult = "FAILED (golden image " + goldenFile + " not found)";
+					passed = false;
+				} else {
+					PImage golden = loader.loadImage(goldenFile);
+					golden.loadPixels();
+
+					if (golden.width != picture.width || golden.height != picture.height) {
+						goldenResult = "FAILED (golden image has a different size)";
+						passed = false;
+					} else {
+						double psnr = ImageQuality.psnr(painter.getCanvas().pixels, golden.pixels);
+
+						if (psnr >= minGoldenPsnr) {
+							goldenResult = "PSNR = " + psnr + " dB";
+						} else {
+							goldenResult = "FAILED (PSNR = " + psnr + " dB < " + minGoldenPsnr + " dB)";
+							passed = false;
+						}
+					}
+				}
+
+				System.out.println(pictureName + ", seed " + seed + ": traces = " + painter.getNTraces()
+						+ ", candidates = " + painter.getTraceStatistics().candidates + ", time = " + time / 1e9
+						+ " seconds, peak heap = " + heap / (1024 * 1024) + " MB, " + goldenResult);
+			}
+		}
+
+		// Create the results JSON object
+		double totalSeconds = totalTime / 1e9;
+		JSONObject results = new JSONObject();
+		results.setDouble("tracesPerSecond", totalTraces / totalSeconds);
+		results.setDouble("candidatesPerSecond", totalCandidates / totalSeconds);
+		results.setDouble("peakHeapMB", peakHeap / (1024.0 * 1024.0));
+		results.setDouble("totalSeconds", totalSeconds);
+		results.setLong("traces", totalTraces);
+		results.setLong("candidates", totalCandidates);
+
+		// Compare the results with the baseline
+		File baselineFile = new File(referenceDir + "baseline.json");
+		JSONObject baseline = baselineFile.exists() ? loader.loadJSONObject(baselineFile) : null;
+		printComparisonTable(baseline, results);
+
+		if (baseline == null && !updateBaseline) {
+			System.out.println("The baseline file " + baselineFile.getPath() + " was not found. The current results "
+					+ "will be saved as the baseline for the next runs");
+			updateBaseline = true;
+		} else if (baseline != null && maxThroughputDrop > 0) {
+			double baselineThroughput = baseline.getDouble("tracesPerSecond", 0);
+
+			if (results.getDouble("tracesPerSecond") < (1 - maxThroughputDrop) * baselineThroughput) {
+				System.out.println("FAILED: the traces per second dropped more than " + 100 * maxThroughputDrop
+						+ "% with respect to the baseline");
+				passed = false;
+			}
+		}
+
+		// Save the new baseline if necessary
+		if (updateBaseline) {
+			loader.saveJSONObject(results, baselineFile.getPath());
+			System.out.println("Baseline saved in " + baselineFile.getPath());
+		}
+
+		System.out.println(passed ? "Benchmark passed" : "Benchmark FAILED");
+
+		return passed;
+	}
+
+	/**
+	 * Prints a table comparing the benchmark results with the baseline results
+	 * 
+	 * @param baseline the baseline results. It can be null
+	 * @param results the current results
+	 */
+	private static void printComparisonTable(JSONObject baseline, JSONObject results) {
+		String[] keys = new String[] { "tracesPerSecond", "candidatesPerSecond", "peakHeapMB", "totalSeconds",
+				"traces", "candidates" };
+		System.out.println(String.format("%-20s %15s %15s %10s", "metric", "baseline", "current", "change"));
+
+		for (String key : keys) {
+			double current = results.getDouble(key);
+
+			if (baseline != null && baseline.hasKey(key)) {
+				double previous = baseline.getDouble(key);
+				String change = previous != 0 ? String.format("%+9.1f%%", 100 * (current - previous) / previous) : "";
+				System.out.println(String.format("%-20s %15.2f %15.2f %10s", key, previous, current, change));
+			} else {
+				System.out.println(String.format("%-20s %15s %15.2f %10s", key, "-", current, ""));
+			}
+		}
+	}
+
+	/**
+	 * Resets the peak usage of the heap memory pools
+	 */
+	private static void resetPeakHeap() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * Returns the peak heap usage since the last reset, as the sum of the peak usage of the heap memory pools
+	 * 
+	 * @return the peak heap usage in bytes
+	 */
+	private static long getPeakHeap() {
+		long peakHeap = 0;
+
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peakHeap += pool.getPeakUsage().getUsed();
+			}
+		}
+
+		return peakHeap;
+	}
+
+	/**
+	 * Executes the benchmark. The program exits with a non zero status if any of the checks failed
+	 * 
+	 * @param args --update-golden and/or --update-baseline to save the current results as the new references
+	 */
+	static public void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		boolean updateGolden = false;
+		boolean updateBaseline = false;
+
+		for (String arg : args) {
+			if (arg.equals("--update-golden")) {
+				updateGolden = true;
+			} else if (arg.equals("--update-baseline")) {
+				updateBaseline = true;
+			} else {
+				System.out.println("Unknown argument: " + arg);
+				System.exit(2);
+			}
+		}
+
+		if (!new PaintingBenchmark().run(updateGolden, updateBaseline)) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,296 @@
+package oilPainting;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import processing.core.PApplet;
+import processing.core.PImage;
+
+/**
+ * This class represents a painting job: a picture that should be painted with a given set of painting parameters. The
+ * jobs are executed by the painting job service worker threads, and the jobs with higher priority are executed first
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class PaintingJob implements Runnable, Comparable<PaintingJob> {
+
+	/**
+	 * The possible job states
+	 */
+	public enum State {
+		QUEUED, RUNNING, FINISHED, CANCELLED, FAILED
+	}
+
+	/**
+	 * The counter used to order the jobs with the same priority
+	 */
+	private static final AtomicLong SEQUENCE_COUNTER = new AtomicLong();
+
+	private int id;
+	private String fileName;
+	private PaintingParameters parameters;
+	private float sizeReductionFactor;
+	private int backgroundColor;
+	private long seed;
+	private int priority;
+	private long sequence;
+	private String outputFile;
+	private PApplet loader;
+	private volatile State state;
+	private volatile HeadlessPainter painter;
+	private volatile float averageBrushSize;
+	private volatile int nTraces;
+	private volatile String errorMessage;
+
+	/**
+	 * Creates a new painting job
+	 * 
+	 * @param id the job id
+	 * @param fileName the picture file name
+	 * @param parameters the painting parameters
+	 * @param sizeReductionFactor the size reduction factor between the original picture and the painting
+	 * @param backgroundColor the canvas background color
+	 * @param seed the random and noise seed
+	 * @param priority the job priority. The jobs with higher priority are executed first
+	 * @param outputFile the file where the painting will be saved
+	 * @param loader the applet used to load the picture
+	 */
+	public PaintingJob(int id, String fileName, PaintingParameters parameters, float sizeReductionFactor,
+			int backgroundColor, long seed, int priority, String outputFile, PApplet loader) {
+		this.id = id;
+		this.fileName = fileName;
+		this.parameters = parameters;
+		this.sizeReductionFactor = sizeReductionFactor;
+		this.backgroundColor = backgroundColor;
+		this.seed = seed;
+		this.priority = priority;
+		this.sequence = SEQUENCE_COUNTER.getAndIncrement();
+		this.outputFile = outputFile;
+		this.loader = loader;
+		this.state = State.QUEUED;
+		this.painter = null;
+		this.averageBrushSize = 0;
+		this.nTraces = 0;
+		this.errorMessage = null;
+	}
+
+	/**
+	 * Paints the picture and saves the painting in the output file
+	 */
+	public void run() {
+		synchronized (this) {
+			if (state != State.QUEUED) {
+				return;
+			}
+
+			state = State.RUNNING;
+		}
+
+		try {
+			// Load and prepare the picture
+			PImage img = loader.loadImage(fileName);
+
+			if (img == null) {
+				throw new IllegalArgumentException("could not load " + fileName);
+			}
+
+			img.resize(Math.round(img.width / sizeReductionFactor), Math.round(img.height / sizeReductionFactor));
+			Picture picture = new Picture(fileName, img, backgroundColor);
+
+			// Paint the picture
+			synchronized (this) {
+				if (state == State.CANCELLED) {
+					return;
+				}
+
+				painter = new HeadlessPainter(picture, parameters, backgroundColor, seed);
+			}
+
+			painter.paint();
+
+			// Save the painting
+			synchronized (this) {
+				if (state == State.CANCELLED) {
+					return;
+				}
+			}
+
+			painter.getCanvas().save(outputFile);
+			setFinalState(State.FINISHED);
+		} catch (RuntimeException e) {
+			errorMessage = e.getMessage();
+			setFinalState(State.FAILED);
+		} finally {
+			releasePainter();
+		}
+	}
+
+	/**
+	 * Keeps the painter statistics and releases the painter, together with its canvas and picture
+	 */
+	private synchronized void releasePainter() {
+		if (painter != null) {
+			averageBrushSize = painter.getAverageBrushSize();
+			nTraces = painter.getNTraces();
+			painter = null;
+		}
+	}
+
+	/**
+	 * Sets the job final state, unless the job has been cancelled
+	 * 
+	 * @param finalState the job final state
+	 */
+	private synchronized void setFinalState(State finalState) {
+		if (state == State.RUNNING) {
+			state = finalState;
+		}
+	}
+
+	/**
+	 * Cancels the job. A queued job will not be executed, and a running job will stop as soon as possible
+	 * 
+	 * @return true if the job was cancelled, false if it had already finished
+	 */
+	public synchronized boolean cancel() {
+		if (state == State.QUEUED || state == State.RUNNING) {
+			state = State.CANCELLED;
+
+			if (painter != null) {
+				painter.cancel();
+			}
+
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Compares the job with another job. The job with higher priority comes first, and the oldest job comes first if
+	 * they have the same priority
+	 * 
+	 * @param job the other job
+	 * @return a negative value if this job should be executed first
+	 */
+	public int compareTo(PaintingJob job) {
+		if (priority != job.priority) {
+			return Integer.compare(job.priority, priority);
+		}
+
+		return Long.compare(sequence, job.sequence);
+	}
+
+	/**
+	 * Returns the job id
+	 * 
+	 * @return the job id
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the job state
+	 * 
+	 * @return the job state
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * Checks if the job has finished, either because it was painted, cancelled or failed
+	 * 
+	 * @return true if the job has finished
+	 */
+	public boolean isFinished() {
+		return state != State.QUEUED && state != State.RUNNING;
+	}
+
+	/**
+	 * Returns the painter used by the job
+	 * 
+	 * @return the painter. null if the job is not painting
+	 */
+	public HeadlessPainter getPainter() {
+		return painter;
+	}
+
+	/**
+	 * Returns the file where the painting is saved when the job finishes
+	 * 
+	 * @return the output file name
+	 */
+	public String getOutputFile() {
+		return outputFile;
+	}
+
+	/**
+	 * Returns the job status as a JSON string
+	 * 
+	 * @return the job status
+	 */
+	public String toJson() {
+		HeadlessPainter currentPainter = painter;
+		String json = "{\"id\":" + id + ",\"file\":\"" + escape(fileName) + "\",\"priority\":" + priority
+				+ ",\"state\":\"" + state + "\"";
+
+		if (currentPainter != null) {
+			json += ",\"brushSize\":" + currentPainter.getAverageBrushSize() + ",\"traces\":"
+					+ currentPainter.getNTraces();
+		} else if (nTraces > 0) {
+			json += ",\"brushSize\":" + averageBrushSize + ",\"traces\":" + nTraces;
+		}
+
+		if (state == State.FINISHED) {
+			json += ",\"output\":\"" + escape(outputFile) + "\"";
+		}
+
+		if (errorMessage != null) {
+			json += ",\"error\":\"" + escape(errorMessage) + "\"";
+		}
+
+		return json + "}";
+	}
+
+	/**
+	 * Escapes the characters that are not allowed inside a JSON string. The control characters without a short escape
+	 * sequence are written as unicode escapes
+	 * 
+	 * @param text the text to escape
+	 * @return the escaped text
+	 */
+	static String escape(String text) {
+		StringBuilder escaped = new StringBuilder(text.length());
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+
+			switch (c) {
+			case '\\':
+				escaped.append("\\\\");
+				break;
+			case '"':
+				escaped.append("\\\"");
+				break;
+			case '\n':
+				escaped.append("\\n");
+				break;
+			case '\r':
+				escaped.append("\\r");
+				break;
+			case '\t':
+				escaped.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					escaped.append(String.format("\\u%04x", (int) c));
+				} else {
+					escaped.append(c);
+				}
+			}
+		}
+
+		return escaped.toString();
+	}
+}
@@ -0,0 +1,506 @@
+package oilPainting;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import processing.core.PApplet;
+
+/**
+ * This program runs a local service that paints pictures on demand, keeping the JVM warm between paintings. The jobs
+ * are executed by a bounded pool of worker threads, and the jobs with higher priority are executed first.
+ * 
+ * The jobs can be submitted in two ways: sending an HTTP request to the service, or copying the picture to the drop
+ * directory. In the second case, a properties file with the same name as the picture (e.g. picture.properties for
+ * picture.jpg) can be used to set the job options. It should be copied before the picture. The paintings are saved
+ * in the output directory.
+ * 
+ * HTTP interface (only accessible from the local machine):
+ * 
+ * POST /jobs?file=path&priority=1 submits a new job. The request body can contain the job options in properties
+ * format: priority, seed, sizeReductionFactor and any of the painting parameters (see PaintingParameters).
+ * 
+ * GET /jobs returns the status of all the jobs.
+ * 
+ * GET /jobs/id returns the job status.
+ * 
+ * GET /jobs/id/progress streams the job status, one JSON line per second, until the job finishes.
+ * 
+ * GET /jobs/id/preview.png returns the current state of the painting, or the final painting if the job finished.
+ * 
+ * DELETE /jobs/id cancels the job.
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class PaintingJobService {
+	// The HTTP port
+	private int port = 8080;
+	// The directory where the pictures can be dropped to create new jobs
+	private String dropDir = "src/oilPainting/jobsIn/";
+	// The directory where the paintings are saved
+	private String outputDir = "src/oilPainting/jobsOut/";
+	// The number of worker threads
+	private int nWorkers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+	// The maximum number of queued jobs
+	private int maxQueuedJobs = 100;
+	// The maximum number of finished jobs whose status is kept
+	private int maxFinishedJobs = 100;
+	// The default size reduction factor between the original pictures and the paintings
+	private float sizeReductionFactor = 1.0f;
+	// The canvas background color
+	private int backgroundColor = 0xffffffff;
+	// The time between two progress updates in milliseconds
+	private int progressInterval = 1000;
+	// The maximum time to wait for a preview in milliseconds
+	private int previewTimeout = 5000;
+
+	// Service variables
+	private PApplet loader;
+	private ThreadPoolExecutor executor;
+	private Map<Integer, PaintingJob> jobs;
+	private AtomicInteger jobCounter;
+	private HttpServer server;
+
+	/**
+	 * Starts the service
+	 * 
+	 * @throws IOException if the HTTP server or the drop directory watcher could not be started
+	 */
+	public void start() throws IOException {
+		new File(dropDir).mkdirs();
+		new File(outputDir).mkdirs();
+
+		// Create the worker pool. The queue orders the jobs by priority
+		loader = new PApplet();
+		executor = new ThreadPoolExecutor(nWorkers, nWorkers, 0, TimeUnit.MILLISECONDS,
+				new PriorityBlockingQueue<Runnable>());
+		jobs = new ConcurrentSkipListMap<Integer, PaintingJob>();
+		jobCounter = new AtomicInteger();
+
+		// Start the HTTP server
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/jobs", exchange -> {
+			try {
+				handleRequest(exchange);
+			} catch (RuntimeException e) {
+				sendText(exchange, 500, "{\"error\":\"" + PaintingJob.escape(e.toString()) + "\"}");
+			} finally {
+				exchange.close();
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+
+		// Start watching the drop directory
+		Thread watcher = new Thread(this::watchDropDirectory, "drop-directory-watcher");
+		watcher.setDaemon(true);
+		watcher.start();
+
+		System.out.println("Painting job service listening on http://localhost:" + port + "/jobs and watching "
+				+ dropDir);
+	}
+
+	/**
+	 * Submits a new painting job. The method is synchronized, so the queue size can't change between the capacity
+	 * check and the job execution because of other submissions
+	 * 
+	 * @param fileName the picture file name
+	 * @param options the job options and painting parameters
+	 * @return the painting job
+	 * @throws RejectedExecutionException if there are too many queued jobs
+	 * @throws NumberFormatException if some of the options is not a valid number
+	 */
+	public synchronized PaintingJob submit(String fileName, Properties options) {
+		if (executor.getQueue().size() >= maxQueuedJobs) {
+			throw new RejectedExecutionException("too many queued jobs");
+		}
+
+		int id = jobCounter.incrementAndGet();
+		String pictureName = new File(fileName).getName().replaceFirst("\\.[^.]*$", "");
+		PaintingJob job = new PaintingJob(id, fileName, PaintingParameters.fromProperties(options),
+				Float.parseFloat(options.getProperty("sizeReductionFactor", String.valueOf(sizeReductionFactor))),
+				backgroundColor, Long.parseLong(options.getProperty("seed", String.valueOf(id))),
+				Integer.parseInt(options.getProperty("priority", "0")),
+				outputDir + "job-" + id + "-" + pictureName + ".png", loader);
+		jobs.put(id, job);
+		executor.execute(job);
+		removeFinishedJobs();
+
+		return job;
+	}
+
+	/**
+	 * Removes the oldest finished jobs if there are more than the maximum allowed
+	 */
+	private void removeFinishedJobs() {
+		int nFinished = 0;
+
+		for (PaintingJob job : jobs.values()) {
+			if (job.isFinished()) {
+				nFinished++;
+			}
+		}
+
+		// The jobs are sorted by id, so the oldest jobs come first
+		Iterator<PaintingJob> iterator = jobs.values().iterator();
+
+		while (nFinished > maxFinishedJobs && iterator.hasNext()) {
+			if (iterator.next().isFinished()) {
+				iterator.remove();
+				nFinished--;
+			}
+		}
+	}
+
+	/**
+	 * Cancels a painting job
+	 * 
+	 * @param job the painting job
+	 * @return true if the job was cancelled, false if it had already finished
+	 */
+	public boolean cancel(PaintingJob job) {
+		boolean cancelled = job.cancel();
+
+		// Remove the job from the queue if it didn't start yet
+		executor.remove(job);
+
+		return cancelled;
+	}
+
+	/**
+	 * Handles an HTTP request
+	 * 
+	 * @param exchange the HTTP exchange
+	 * @throws IOException if there is a problem sending the response
+	 */
+	private void handleRequest(HttpExchange exchange) throws IOException {
+		String method = exchange.getRequestMethod();
+		String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+
+		if (path.length == 1) {
+			if (method.equals("GET")) {
+				// Return the status of all the jobs
+				StringBuilder json = new StringBuilder("[");
+
+				for (PaintingJob job : jobs.values()) {
+					json.append(json.length() > 1 ? "," : "").append(job.toJson());
+				}
+
+				sendText(exchange, 200, json.append("]").toString());
+			} else if (method.equals("POST")) {
+				// Submit a new job
+				Properties options = new Properties();
+
+				try (InputStream body = exchange.getRequestBody()) {
+					options.load(body);
+				}
+
+				options.putAll(parseQuery(exchange.getRequestURI().getRawQuery()));
+				String fileName = options.getProperty("file");
+
+				if (fileName == null) {
+					sendText(exchange, 400, "{\"error\":\"the file parameter is missing\"}");
+				} else {
+					try {
+						sendText(exchange, 201, submit(fileName, options).toJson());
+					} catch (NumberFormatException e) {
+						sendText(exchange, 400,
+								"{\"error\":\"invalid number: " + PaintingJob.escape(e.getMessage()) + "\"}");
+					} catch (RejectedExecutionException e) {
+						sendText(exchange, 503, "{\"error\":\"" + PaintingJob.escape(e.getMessage()) + "\"}");
+					}
+				}
+			} else {
+				sendText(exchange, 405, "{\"error\":\"method not allowed\"}");
+			}
+
+			return;
+		}
+
+		// Get the job
+		PaintingJob job;
+
+		try {
+			job = jobs.get(Integer.parseInt(path[1]));
+		} catch (NumberFormatException e) {
+			job = null;
+		}
+
+		if (job == null || path.length > 3) {
+			sendText(exchange, 404, "{\"error\":\"job not found\"}");
+		} else if (path.length == 2 && method.equals("GET")) {
+			sendText(exchange, 200, job.toJson());
+		} else if (path.length == 2 && method.equals("DELETE")) {
+			cancel(job);
+			sendText(exchange, 200, job.toJson());
+		} else if (path.length == 3 && path[2].equals("progress") && method.equals("GET")) {
+			streamProgress(exchange, job);
+		} else if (path.length == 3 && path[2].equals("preview.png") && method.equals("GET")) {
+			sendPreview(exchange, job);
+		} else {
+			sendText(exchange, 404, "{\"error\":\"unknown request\"}");
+		}
+	}
+
+	/**
+	 * Sends the job status periodically until the job finishes
+	 * 
+	 * @param exchange the HTTP exchange
+	 * @param job the painting job
+	 * @throws IOException if there is a problem sending the response
+	 */
+	private void streamProgress(HttpExchange exchange, PaintingJob job) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+		exchange.sendResponseHeaders(200, 0);
+
+		try (OutputStream output = exchange.getResponseBody()) {
+			while (true) {
+				PaintingJob.State state = job.getState();
+				output.write((job.toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+				output.flush();
+
+				if (state != PaintingJob.State.QUEUED && state != PaintingJob.State.RUNNING) {
+					break;
+				}
+
+				Thread.sleep(progressInterval);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Sends the current state of the painting as a PNG image. The saved painting is sent if the job has finished
+	 * 
+	 * @param exchange the HTTP exchange
+	 * @param job the painting job
+	 * @throws IOException if there is a problem sending the response
+	 */
+	private void sendPreview(HttpExchange exchange, PaintingJob job) throws IOException {
+		HeadlessPainter painter = job.getPainter();
+
+		if (painter == null && job.getState() == PaintingJob.State.FINISHED) {
+			File outputFile = new File(job.getOutputFile());
+
+			if (outputFile.isFile()) {
+				sendPng(exchange, Files.readAllBytes(outputFile.toPath()));
+			} else {
+				sendText(exchange, 404, "{\"error\":\"the painting file is not available\"}");
+			}
+
+			return;
+		}
+
+		int[] pixels = null;
+
+		if (painter != null) {
+			try {
+				pixels = painter.getPreview(previewTimeout);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		if (pixels == null) {
+			sendText(exchange, 404, "{\"error\":\"the preview is not available\"}");
+			return;
+		}
+
+		int width = painter.getCanvas().width;
+		int height = painter.getCanvas().height;
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		image.setRGB(0, 0, width, height, pixels, 0, width);
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", png);
+		sendPng(exchange, png.toByteArray());
+	}
+
+	/**
+	 * Sends a PNG image response
+	 * 
+	 * @param exchange the HTTP exchange
+	 * @param png the PNG image bytes
+	 * @throws IOException if there is a problem sending the response
+	 */
+	private static void sendPng(HttpExchange exchange, byte[] png) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "image/png");
+		exchange.sendResponseHeaders(200, png.length);
+
+		try (OutputStream output = exchange.getResponseBody()) {
+			output.write(png);
+		}
+	}
+
+	/**
+	 * Sends a JSON text response
+	 * 
+	 * @param exchange the HTTP exchange
+	 * @param status the HTTP status code
+	 * @param text the JSON text
+	 * @throws IOException if there is a problem sending the response
+	 */
+	private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+		byte[] bytes = (text + "\n").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+
+		try (OutputStream output = exchange.getResponseBody()) {
+			output.write(bytes);
+		}
+	}
+
+	/**
+	 * Parses the URL query parameters
+	 * 
+	 * @param query the raw URL query. It can be null
+	 * @return the query parameters
+	 * @throws UnsupportedEncodingException if UTF-8 is not supported
+	 */
+	private static Properties parseQuery(String query) throws UnsupportedEncodingException {
+		Properties parameters = new Properties();
+
+		if (query != null) {
+			for (String parameter : query.split("&")) {
+				int separator = parameter.indexOf('=');
+
+				if (separator > 0) {
+					parameters.setProperty(URLDecoder.decode(parameter.substring(0, separator), "UTF-8"),
+							URLDecoder.decode(parameter.substring(separator + 1), "UTF-8"));
+				}
+			}
+		}
+
+		return parameters;
+	}
+
+	/**
+	 * Watches the drop directory and creates a new job for each picture copied there. The pictures are moved to the
+	 * accepted subdirectory before the job is created
+	 */
+	private void watchDropDirectory() {
+		Path dropPath = new File(dropDir).toPath();
+		File acceptedDir = new File(dropDir, "accepted");
+		acceptedDir.mkdirs();
+
+		try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+			dropPath.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+
+			// Process the pictures that were already in the directory
+			File[] files = dropPath.toFile().listFiles();
+
+			if (files != null) {
+				for (File file : files) {
+					acceptDroppedFile(file, acceptedDir);
+				}
+			}
+
+			while (true) {
+				WatchKey key = watchService.take();
+
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+						// Give some time to finish copying the file
+						Thread.sleep(500);
+						acceptDroppedFile(dropPath.resolve((Path) event.context()).toFile(), acceptedDir);
+					}
+				}
+
+				if (!key.reset()) {
+					break;
+				}
+			}
+		} catch (IOException e) {
+			System.out.println("PaintingJobService class: could not watch the drop directory " + dropDir);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Creates a new job for a picture copied to the drop directory
+	 * 
+	 * @param file the dropped file
+	 * @param acceptedDir the directory where the accepted pictures are moved
+	 */
+	private void acceptDroppedFile(File file, File acceptedDir) {
+		String name = file.getName().toLowerCase();
+
+		if (!file.isFile() || !name.matches(".*\\.(jpg|jpeg|png|gif|tga)$")) {
+			return;
+		}
+
+		try {
+			// Read the job options if they are available
+			Properties options = new Properties();
+			File optionsFile = new File(file.getParentFile(),
+					file.getName().replaceFirst("\\.[^.]*$", "") + ".properties");
+
+			if (optionsFile.exists()) {
+				try (InputStream input = new FileInputStream(optionsFile)) {
+					options.load(input);
+				}
+
+				Files.move(optionsFile.toPath(), new File(acceptedDir, optionsFile.getName()).toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			// Move the picture and submit the job
+			File acceptedFile = new File(acceptedDir, file.getName());
+			Files.move(file.toPath(), acceptedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			PaintingJob job = submit(acceptedFile.getPath(), options);
+			System.out.println("New job from the drop directory: " + job.toJson());
+		} catch (IOException | RuntimeException e) {
+			System.out.println("PaintingJobService class: could not create a job for " + file.getName() + " (" + e
+					+ ")");
+		}
+	}
+
+	/**
+	 * Starts the painting job service
+	 * 
+	 * @param args the program arguments (not used)
+	 */
+	static public void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		try {
+			new PaintingJobService().start();
+		} catch (IOException e) {
+			System.out.println("PaintingJobService class: could not start the service (" + e.getMessage() + ")");
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package oilPainting;
+
+import java.util.Properties;
+
+/**
+ * This class contains the parameters that control the oil painting simulation. The default values are the ones used by
+ * the oil painting sketches
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class PaintingParameters {
+
+	/**
+	 * The maximum RGB color difference to consider the pixel correctly painted
+	 */
+	public int[] maxColorDiff = new int[] { 40, 40, 40 };
+
+	/**
+	 * Avoid painting on areas with the same color as the canvas background
+	 */
+	public boolean avoidBackgroundRegions = true;
+
+	/**
+	 * The smaller brush size allowed
+	 */
+	public float smallerBrushSize = 4;
+
+	/**
+	 * The brush size decrement ratio
+	 */
+	public float brushSizeDecrement = 1.3f;
+
+	/**
+	 * The maximum number of invalid trajectories allowed before the brush size is reduced
+	 */
+	public int maxInvalidTrajectories = 5000;
+
+	/**
+	 * The maximum number of invalid trajectories allowed for the smaller brush size before the painting is stopped
+	 */
+	public int maxInvalidTrajectoriesForSmallerSize = 10000;
+
+	/**
+	 * The maximum number of invalid traces allowed before the brush size is reduced
+	 */
+	public int maxInvalidTraces = 250;
+
+	/**
+	 * The maximum number of invalid traces allowed for the smaller brush size before the painting is stopped
+	 */
+	public int maxInvalidTracesForSmallerSize = 350;
+
+	/**
+	 * The trace speed
+	 */
+	public float traceSpeed = 2;
+
+	/**
+	 * The typical trace length, relative to the brush size
+	 */
+	public float relativeTraceLength = 2.3f;
+
+	/**
+	 * The minimum trace length allowed
+	 */
+	public float minTraceLength = 16;
+
+	/**
+	 * Returns a copy of the painting parameters
+	 * 
+	 * @return the painting parameters copy
+	 */
+	public PaintingParameters copy() {
+		PaintingParameters parameters = new PaintingParameters();
+		parameters.maxColorDiff = maxColorDiff.clone();
+		parameters.avoidBackgroundRegions = avoidBackgroundRegions;
+		parameters.smallerBrushSize = smallerBrushSize;
+		parameters.brushSizeDecrement = brushSizeDecrement;
+		parameters.maxInvalidTrajectories = maxInvalidTrajectories;
+		parameters.maxInvalidTrajectoriesForSmallerSize = maxInvalidTrajectoriesForSmallerSize;
+		parameters.maxInvalidTraces = maxInvalidTraces;
+		parameters.maxInvalidTracesForSmallerSize = maxInvalidTracesForSmallerSize;
+		parameters.traceSpeed = traceSpeed;
+		parameters.relativeTraceLength = relativeTraceLength;
+		parameters.minTraceLength = minTraceLength;
+
+		return parameters;
+	}
+
+	/**
+	 * Creates a painting parameters object from a set of properties. The parameters that are not present in the
+	 * properties keep their default values. The maximum color difference can be a single value or three values
+	 * separated by spaces
+	 * 
+	 * @param properties the properties with the parameter values
+	 * @return the painting parameters
+	 * @throws NumberFormatException if some of the parameter values is not a valid number
+	 */
+	public static PaintingParameters fromProperties(Properties properties) {
+		PaintingParameters parameters = new PaintingParameters();
+
+		if (properties.containsKey("maxColorDiff")) {
+			String[] values = properties.getProperty("maxColorDiff").trim().split("\\s+");
+
+			for (int i = 0; i < 3; i++) {
+				parameters.maxColorDiff[i] = Integer.parseInt(values[Math.min(i, values.length - 1)]);
+			}
+		}
+
+		parameters.avoidBackgroundRegions = Boolean.parseBoolean(
+				properties.getProperty("avoidBackgroundRegions", String.valueOf(parameters.avoidBackgroundRegions)));
+		parameters.smallerBrushSize = getFloat(properties, "smallerBrushSize", parameters.smallerBrushSize);
+		parameters.brushSizeDecrement = getFloat(properties, "brushSizeDecrement", parameters.brushSizeDecrement);
+		parameters.maxInvalidTrajectories = getInt(properties, "maxInvalidTrajectories",
+				parameters.maxInvalidTrajectories);
+		parameters.maxInvalidTrajectoriesForSmallerSize = getInt(properties, "maxInvalidTrajectoriesForSmallerSize",
+				parameters.maxInvalidTrajectoriesForSmallerSize);
+		parameters.maxInvalidTraces = getInt(properties, "maxInvalidTraces", parameters.maxInvalidTraces);
+		parameters.maxInvalidTracesForSmallerSize = getInt(properties, "maxInvalidTracesForSmallerSize",
+				parameters.maxInvalidTracesForSmallerSize);
+		parameters.traceSpeed = getFloat(properties, "traceSpeed", parameters.traceSpeed);
+		parameters.relativeTraceLength = getFloat(properties, "relativeTraceLength", parameters.relativeTraceLength);
+		parameters.minTraceLength = getFloat(properties, "minTraceLength", parameters.minTraceLength);
+
+		return parameters;
+	}
+
+	/**
+	 * Returns a float property value
+	 * 
+	 * @param properties the properties
+	 * @param name the property name
+	 * @param defaultValue the value to use if the property is not present
+	 * @return the property value
+	 */
+	private static float getFloat(Properties properties, String name, float defaultValue) {
+		String value = properties.getProperty(name);
+
+		return value != null ? Float.parseFloat(value.trim()) : defaultValue;
+	}
+
+	/**
+	 * Returns an integer property value
+	 * 
+	 * @param properties the properties
+	 * @param name the property name
+	 * @param defaultValue the value to use if the property is not present
+	 * @return the property value
+	 */
+	private static int getInt(Properties properties, String name, int defaultValue) {
+		String value = properties.getProperty(name);
+
+		return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+	}
+
+	/**
+	 * Returns the names of the parameters, separated by commas
+	 * 
+	 * @return the parameter names
+	 */
+	public static String getCsvHeader() {
+		return "maxColorDiff,avoidBackgroundRegions,smallerBrushSize,brushSizeDecrement,maxInvalidTrajectories,"
+				+ "maxInvalidTrajectoriesForSmallerSize,maxInvalidTraces,maxInvalidTracesForSmallerSize,traceSpeed,"
+				+ "relativeTraceLength,minTraceLength";
+	}
+
+	/**
+	 * Returns the parameter values, separated by commas. The three maximum color differences are separated by spaces
+	 * 
+	 * @return the parameter values
+	 */
+	public String toCsvLine() {
+		return maxColorDiff[0] + " " + maxColorDiff[1] + " " + maxColorDiff[2] + "," + avoidBackgroundRegions + ","
+				+ smallerBrushSize + "," + brushSizeDecrement + "," + maxInvalidTrajectories + ","
+				+ maxInvalidTrajectoriesForSmallerSize + "," + maxInvalidTraces + "," + maxInvalidTracesForSmallerSize
+				+ "," + traceSpeed + "," + relativeTraceLength + "," + minTraceLength;
+	}
+}
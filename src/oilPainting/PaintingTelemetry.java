@@ -0,0 +1,296 @@
+package oilPainting;
+
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class collects telemetry data from the oil painting simulation: the trace validation counters for each brush
+ * size, the time spent in each painting phase and the evolution of the number of bad painted pixels. The data can be
+ * saved as CSV files.
+ * 
+ * A disabled telemetry object doesn't record anything. The samples are kept in primitive arrays and the phases are
+ * reused, so an enabled telemetry object doesn't create new objects in each painting step. The CSV lines are only
+ * formatted when the files are saved.
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class PaintingTelemetry {
+
+	/**
+	 * The phase where the similar color and bad painted pixel arrays are updated
+	 */
+	public static final int PIXEL_ARRAYS_PHASE = 0;
+
+	/**
+	 * The phase where the background regions are masked
+	 */
+	public static final int BACKGROUND_MASK_PHASE = 1;
+
+	/**
+	 * The phase where the trace candidates are generated and validated
+	 */
+	public static final int TRACE_SEARCH_PHASE = 2;
+
+	/**
+	 * The phase where the traces are painted
+	 */
+	public static final int PAINTING_PHASE = 3;
+
+	/**
+	 * The phase names
+	 */
+	private static final String[] PHASE_NAMES = new String[] { "pixelArrays", "backgroundMask", "traceSearch",
+			"painting" };
+
+	/**
+	 * The initial capacity of the bad painted pixels sample arrays
+	 */
+	private static final int INITIAL_SAMPLES_CAPACITY = 1024;
+
+	/**
+	 * A painting phase that has been started and not finished yet. There is only one phase object for each phase
+	 * index, so the same phase cannot be started twice before it's finished
+	 */
+	public static class Phase {
+		private int phaseIndex;
+		private long startTime;
+	}
+
+	private boolean enabled;
+	private TraceStatistics statistics;
+	private TraceStatistics brushSizeStartStatistics;
+	private String pictureName;
+	private long pictureStartTime;
+	private long brushSizeStartTime;
+	private float brushSize;
+	private int nBadPaintedPixels;
+	private Phase[] phases;
+	private long[] phaseTimes;
+	private long[] phaseCounters;
+	private ArrayList<double[]> brushSizeValues;
+	private ArrayList<TraceStatistics[]> brushSizeStatistics;
+	private int nSamples;
+	private double[] sampleMillis;
+	private int[] sampleTraces;
+	private float[] sampleBrushSizes;
+	private int[] sampleBadPaintedPixels;
+
+	/**
+	 * Creates a new painting telemetry object
+	 * 
+	 * @param statistics the trace statistics object that is updated by the traces
+	 * @param enabled true if the telemetry data should be recorded
+	 */
+	public PaintingTelemetry(TraceStatistics statistics, boolean enabled) {
+		this.enabled = enabled;
+		this.statistics = statistics;
+		this.brushSizeStartStatistics = new TraceStatistics();
+		this.pictureName = "";
+		this.phases = new Phase[PHASE_NAMES.length];
+		this.phaseTimes = new long[PHASE_NAMES.length];
+		this.phaseCounters = new long[PHASE_NAMES.length];
+		this.brushSizeValues = new ArrayList<double[]>();
+		this.brushSizeStatistics = new ArrayList<TraceStatistics[]>();
+		this.nSamples = 0;
+		this.sampleMillis = new double[INITIAL_SAMPLES_CAPACITY];
+		this.sampleTraces = new int[INITIAL_SAMPLES_CAPACITY];
+		this.sampleBrushSizes = new float[INITIAL_SAMPLES_CAPACITY];
+		this.sampleBadPaintedPixels = new int[INITIAL_SAMPLES_CAPACITY];
+
+		for (int i = 0; i < PHASE_NAMES.length; i++) {
+			this.phases[i] = new Phase();
+			this.phases[i].phaseIndex = i;
+		}
+	}
+
+	/**
+	 * Starts collecting the data for a new picture. The data from the previous pictures is discarded
+	 * 
+	 * @param newPictureName the picture name
+	 * @param initialBrushSize the initial average brush size
+	 */
+	public void startPicture(String newPictureName, float initialBrushSize) {
+		pictureName = newPictureName;
+		pictureStartTime = System.nanoTime();
+		brushSizeStartTime = pictureStartTime;
+		brushSize = initialBrushSize;
+		brushSizeStartStatistics.set(statistics);
+		Arrays.fill(phaseTimes, 0);
+		Arrays.fill(phaseCounters, 0);
+		brushSizeValues.clear();
+		brushSizeStatistics.clear();
+		nSamples = 0;
+	}
+
+	/**
+	 * Signals the start of a painting phase
+	 * 
+	 * @param phaseIndex the phase index
+	 * @return the phase that should be passed to endPhase()
+	 */
+	public Phase startPhase(int phaseIndex) {
+		Phase phase = phases[phaseIndex];
+
+		if (enabled) {
+			phase.startTime = System.nanoTime();
+		}
+
+		return phase;
+	}
+
+	/**
+	 * Signals the end of a painting phase
+	 * 
+	 * @param phase the phase returned by startPhase()
+	 */
+	public void endPhase(Phase phase) {
+		if (enabled) {
+			phaseTimes[phase.phaseIndex] += System.nanoTime() - phase.startTime;
+			phaseCounters[phase.phaseIndex]++;
+		}
+	}
+
+	/**
+	 * Saves the current number of bad painted pixels
+	 * 
+	 * @param newNBadPaintedPixels the number of bad painted pixels
+	 * @param nTraces the number of painted traces
+	 */
+	public void recordBadPaintedPixels(int newNBadPaintedPixels, int nTraces) {
+		if (!enabled) {
+			return;
+		}
+
+		nBadPaintedPixels = newNBadPaintedPixels;
+
+		// Grow the sample arrays if necessary
+		if (nSamples == sampleMillis.length) {
+			int capacity = 2 * nSamples;
+			sampleMillis = Arrays.copyOf(sampleMillis, capacity);
+			sampleTraces = Arrays.copyOf(sampleTraces, capacity);
+			sampleBrushSizes = Arrays.copyOf(sampleBrushSizes, capacity);
+			sampleBadPaintedPixels = Arrays.copyOf(sampleBadPaintedPixels, capacity);
+		}
+
+		sampleMillis[nSamples] = getMillis(pictureStartTime);
+		sampleTraces[nSamples] = nTraces;
+		sampleBrushSizes[nSamples] = brushSize;
+		sampleBadPaintedPixels[nSamples] = nBadPaintedPixels;
+		nSamples++;
+	}
+
+	/**
+	 * Saves the data collected for the current brush size and starts collecting data for a new one
+	 * 
+	 * @param newBrushSize the new average brush size
+	 */
+	public void changeBrushSize(float newBrushSize) {
+		if (enabled) {
+			saveBrushSizeData();
+			brushSize = newBrushSize;
+			brushSizeStartTime = System.nanoTime();
+			brushSizeStartStatistics.set(statistics);
+		}
+	}
+
+	/**
+	 * Saves all the data collected for the current picture
+	 */
+	public void finishPicture() {
+		if (enabled) {
+			saveBrushSizeData();
+		}
+	}
+
+	/**
+	 * Saves the data collected for the current brush size. The trace statistics are copied, because they are still
+	 * updated by the traces
+	 */
+	private void saveBrushSizeData() {
+		TraceStatistics startStatistics = new TraceStatistics();
+		TraceStatistics endStatistics = new TraceStatistics();
+		startStatistics.set(brushSizeStartStatistics);
+		endStatistics.set(statistics);
+		brushSizeValues.add(new double[] { brushSize, getMillis(brushSizeStartTime), nBadPaintedPixels });
+		brushSizeStatistics.add(new TraceStatistics[] { startStatistics, endStatistics });
+	}
+
+	/**
+	 * Returns the milliseconds passed since a given time
+	 * 
+	 * @param startTime the start time in nanoseconds
+	 * @return the milliseconds passed since the start time
+	 */
+	private static double getMillis(long startTime) {
+		return (System.nanoTime() - startTime) / 1000000.0;
+	}
+
+	/**
+	 * Returns a summary of the time spent in each phase for the current picture
+	 * 
+	 * @return the phase times summary
+	 */
+	public String getPhaseTimesSummary() {
+		String summary = "Phase times:";
+
+		for (int i = 0; i < PHASE_NAMES.length; i++) {
+			summary += " " + PHASE_NAMES[i] + " = " + phaseTimes[i] / 1000000000.0 + " seconds";
+		}
+
+		return summary;
+	}
+
+	/**
+	 * Saves the collected data in three CSV files: one with the trace statistics for each brush size, one with the
+	 * time spent in each painting phase and one with the evolution of the bad painted pixels
+	 * 
+	 * @param fileRootName the root name of the CSV files
+	 */
+	public void saveCsv(String fileRootName) {
+		// Save the trace statistics for each brush size
+		String fileName = fileRootName + "-brushSizes.csv";
+
+		try (PrintWriter writer = new PrintWriter(fileName)) {
+			writer.println("picture,brushSize,milliseconds,badPaintedPixels," + TraceStatistics.getCsvHeader());
+
+			for (int i = 0; i < brushSizeValues.size(); i++) {
+				double[] values = brushSizeValues.get(i);
+				TraceStatistics[] brushStatistics = brushSizeStatistics.get(i);
+				writer.println(pictureName + "," + (float) values[0] + "," + values[1] + "," + (int) values[2] + ","
+						+ brushStatistics[1].toCsvLine(brushStatistics[0]));
+			}
+		} catch (FileNotFoundException e) {
+			System.out.println("PaintingTelemetry class: there was a problem writing " + fileName);
+		}
+
+		// Save the time spent in each phase
+		fileName = fileRootName + "-phases.csv";
+
+		try (PrintWriter writer = new PrintWriter(fileName)) {
+			writer.println("picture,phase,count,milliseconds");
+
+			for (int i = 0; i < PHASE_NAMES.length; i++) {
+				writer.println(pictureName + "," + PHASE_NAMES[i] + "," + phaseCounters[i] + ","
+						+ phaseTimes[i] / 1000000.0);
+			}
+		} catch (FileNotFoundException e) {
+			System.out.println("PaintingTelemetry class: there was a problem writing " + fileName);
+		}
+
+		// Save the evolution of the bad painted pixels
+		fileName = fileRootName + "-badPaintedPixels.csv";
+
+		try (PrintWriter writer = new PrintWriter(fileName)) {
+			writer.println("picture,milliseconds,traces,brushSize,badPaintedPixels");
+
+			for (int i = 0; i < nSamples; i++) {
+				writer.println(pictureName + "," + sampleMillis[i] + "," + sampleTraces[i] + ","
+						+ sampleBrushSizes[i] + "," + sampleBadPaintedPixels[i]);
+			}
+		} catch (FileNotFoundException e) {
+			System.out.println("PaintingTelemetry class: there was a problem writing " + fileName);
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package oilPainting;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import processing.core.PApplet;
+import processing.core.PImage;
+
+/**
+ * This program paints a set of reference pictures with many combinations of the painting parameters, without opening
+ * a sketch window. The combinations are painted concurrently, and for each one it records the painting time, the
+ * number of painted traces and the similarity between the paintings and the original pictures (PSNR and SSIM).
+ * 
+ * The results are saved in a CSV file, together with the Pareto front of painting time against quality, which contains
+ * the combinations that are not both slower and worse than any other combination.
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class ParameterSweepRunner {
+	// The paths to the reference pictures
+	private String[] pictureFiles = { "src/oilPainting/picture.jpg" };
+	// The directory where the output files should be saved
+	private String outputDir = "src/oilPainting/sweepOut/";
+	// The size reduction factor between the original pictures and the paintings
+	private float sizeReductionFactor = 2.0f;
+	// The canvas background color
+	private int backgroundColor = 0xffffffff;
+	// Sample randomly this number of combinations from the parameter grid. If it's zero, the full grid is painted
+	private int nRandomSamples = 0;
+	// The seed used to select the random samples and to paint the pictures
+	private long seed = 12345;
+	// The number of paintings that can run at the same time
+	private int nThreads = Runtime.getRuntime().availableProcessors();
+	// Save the paintings of each combination
+	private boolean savePaintings = false;
+	// The maximum RGB color difference values to test (the same value is used for the three channels)
+	private int[] maxColorDiffValues = { 30, 40, 50 };
+	// The smaller brush size values to test
+	private float[] smallerBrushSizeValues = { 3, 4, 6 };
+	// The brush size decrement ratio values to test
+	private float[] brushSizeDecrementValues = { 1.2f, 1.3f, 1.5f };
+	// The maximum number of invalid trajectories values to test. The limit for the smaller brush size is twice this
+	private int[] maxInvalidTrajectoriesValues = { 2500, 5000 };
+	// The maximum number of invalid traces values to test. The limit for the smaller brush size is 1.4 times this
+	private int[] maxInvalidTracesValues = { 150, 250, 350 };
+	// The trace speed values to test
+	private float[] traceSpeedValues = { 2 };
+	// The relative trace length values to test
+	private float[] relativeTraceLengthValues = { 1.8f, 2.3f, 2.8f };
+
+	/**
+	 * This class contains the results obtained with one combination of the painting parameters
+	 */
+	private static class SweepResult {
+		PaintingParameters parameters;
+		double paintingTime;
+		long nTraces;
+		double psnr;
+		double ssim;
+	}
+
+	/**
+	 * Runs the parameter sweep
+	 */
+	public void run() {
+		new File(outputDir).mkdirs();
+
+		// Load the reference pictures
+		PApplet loader = new PApplet();
+		Picture[] pictures = new Picture[pictureFiles.length];
+
+		for (int i = 0; i < pictureFiles.length; i++) {
+			PImage img = loader.loadImage(pictureFiles[i]);
+			img.resize(Math.round(img.width / sizeReductionFactor), Math.round(img.height / sizeReductionFactor));
+			pictures[i] = new Picture(pictureFiles[i], img, backgroundColor);
+		}
+
+		// Obtain the parameter combinations that should be tested
+		List<PaintingParameters> combinations = getCombinations();
+		System.out.println("Painting " + pictures.length + " pictures with " + combinations.size()
+				+ " parameter combinations using " + nThreads + " threads");
+
+		// Paint all the combinations in parallel
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+		List<List<Future<SweepResult>>> futures = new ArrayList<List<Future<SweepResult>>>();
+
+		for (int i = 0; i < combinations.size(); i++) {
+			PaintingParameters parameters = combinations.get(i);
+			List<Future<SweepResult>> combinationFutures = new ArrayList<Future<SweepResult>>();
+
+			for (int j = 0; j < pictures.length; j++) {
+				Picture picture = pictures[j];
+				String paintingFile = savePaintings ? outputDir + "painting-" + i + "-" + j + ".png" : null;
+				long paintingSeed = seed + j;
+				combinationFutures.add(executor.submit(() -> paint(picture, parameters, paintingSeed, paintingFile)));
+			}
+
+			futures.add(combinationFutures);
+		}
+
+		// Combine the results from all the pictures
+		List<SweepResult> results = new ArrayList<SweepResult>();
+
+		try {
+			for (int i = 0; i < combinations.size(); i++) {
+				SweepResult result = new SweepResult();
+				result.parameters = combinations.get(i);
+
+				for (Future<SweepResult> future : futures.get(i)) {
+					SweepResult pictureResult = future.get();
+					result.paintingTime += pictureResult.paintingTime;
+					result.nTraces += pictureResult.nTraces;
+					result.psnr += pictureResult.psnr / pictures.length;
+					result.ssim += pictureResult.ssim / pictures.length;
+				}
+
+				results.add(result);
+				System.out.println("Combination " + (i + 1) + "/" + combinations.size() + ": time = "
+						+ result.paintingTime / 1000 + " seconds, traces = " + result.nTraces + ", PSNR = "
+						+ result.psnr + ", SSIM = " + result.ssim);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("ParameterSweepRunner class: a painting failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// Save the results and the Pareto front
+		List<SweepResult> paretoFront = getParetoFront(results);
+		saveResults(outputDir + "sweep-results.csv", results);
+		saveResults(outputDir + "sweep-pareto-front.csv", paretoFront);
+
+		System.out.println("Pareto front (painting time against SSIM):");
+
+		for (SweepResult result : paretoFront) {
+			System.out.println("  time = " + result.paintingTime / 1000 + " seconds, SSIM = " + result.ssim
+					+ ", parameters = " + result.parameters.toCsvLine());
+		}
+	}
+
+	/**
+	 * Returns the parameter combinations that should be tested: the full parameter grid or a random sample of it
+	 * 
+	 * @return the parameter combinations
+	 */
+	private List<PaintingParameters> getCombinations() {
+		List<PaintingParameters> grid = new ArrayList<PaintingParameters>();
+
+		for (int maxColorDiff : maxColorDiffValues) {
+			for (float smallerBrushSize : smallerBrushSizeValues) {
+				for (float brushSizeDecrement : brushSizeDecrementValues) {
+					for (int maxInvalidTrajectories : maxInvalidTrajectoriesValues) {
+						for (int maxInvalidTraces : maxInvalidTracesValues) {
+							for (float traceSpeed : traceSpeedValues) {
+								for (float relativeTraceLength : relativeTraceLengthValues) {
+									PaintingParameters parameters = new PaintingParameters();
+									parameters.maxColorDiff = new int[] { maxColorDiff, maxColorDiff, maxColorDiff };
+									parameters.smallerBrushSize = smallerBrushSize;
+									parameters.brushSizeDecrement = brushSizeDecrement;
+									parameters.maxInvalidTrajectories = maxInvalidTrajectories;
+									parameters.maxInvalidTrajectoriesForSmallerSize = 2 * maxInvalidTrajectories;
+									parameters.maxInvalidTraces = maxInvalidTraces;
+									parameters.maxInvalidTracesForSmallerSize = Math.round(1.4f * maxInvalidTraces);
+									parameters.traceSpeed = traceSpeed;
+									parameters.relativeTraceLength = relativeTraceLength;
+									grid.add(parameters);
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+
+		// Select a random sample if necessary
+		if (nRandomSamples > 0 && nRandomSamples < grid.size()) {
+			Collections.shuffle(grid, new Random(seed));
+
+			return new ArrayList<PaintingParameters>(grid.subList(0, nRandomSamples));
+		}
+
+		return grid;
+	}
+
+	/**
+	 * Paints a picture with a given parameter combination
+	 * 
+	 * @param picture the picture to paint
+	 * @param parameters the painting parameters
+	 * @param paintingSeed the random and noise seed
+	 * @param paintingFile the file where the painting should be saved. null if it should not be saved
+	 * @return the painting results
+	 */
+	private SweepResult paint(Picture picture, PaintingParameters parameters, long paintingSeed, String paintingFile) {
+		HeadlessPainter painter = new HeadlessPainter(picture, parameters, backgroundColor, paintingSeed);
+		painter.paint();
+
+		if (paintingFile != null) {
+			painter.getCanvas().save(paintingFile);
+		}
+
+		int[] paintedPixels = painter.getCanvas().pixels;
+		SweepResult result = new SweepResult();
+		result.parameters = parameters;
+		result.paintingTime = painter.getPaintingTime();
+		result.nTraces = painter.getNTraces();
+		result.psnr = ImageQuality.psnr(paintedPixels, picture.img.pixels);
+		result.ssim = ImageQuality.ssim(paintedPixels, picture.img.pixels, picture.width, picture.height);
+
+		return result;
+	}
+
+	/**
+	 * Returns the results that are in the Pareto front of painting time against SSIM. A result is in the front if
+	 * there is no other result that is faster and has a higher SSIM
+	 * 
+	 * @param results the sweep results
+	 * @return the Pareto front results, sorted by painting time
+	 */
+	private static List<SweepResult> getParetoFront(List<SweepResult> results) {
+		List<SweepResult> sortedResults = new ArrayList<SweepResult>(results);
+		Collections.sort(sortedResults, Comparator.comparingDouble((SweepResult result) -> result.paintingTime)
+				.thenComparing(Comparator.comparingDouble((SweepResult result) -> result.ssim).reversed()));
+		List<SweepResult> paretoFront = new ArrayList<SweepResult>();
+		double bestSsim = Double.NEGATIVE_INFINITY;
+
+		for (SweepResult result : sortedResults) {
+			if (result.ssim > bestSsim) {
+				paretoFront.add(result);
+				bestSsim = result.ssim;
+			}
+		}
+
+		return paretoFront;
+	}
+
+	/**
+	 * Saves the sweep results in a CSV file
+	 * 
+	 * @param fileName the file name
+	 * @param results the sweep results
+	 */
+	private static void saveResults(String fileName, List<SweepResult> results) {
+		try (PrintWriter writer = new PrintWriter(fileName)) {
+			writer.println("milliseconds,traces,psnr,ssim," + PaintingParameters.getCsvHeader());
+
+			for (SweepResult result : results) {
+				writer.println(result.paintingTime + "," + result.nTraces + "," + result.psnr + "," + result.ssim + ","
+						+ result.parameters.toCsvLine());
+			}
+		} catch (FileNotFoundException e) {
+			System.out.println("ParameterSweepRunner class: there was a problem writing " + fileName);
+		}
+	}
+
+	/**
+	 * Executes the parameter sweep
+	 * 
+	 * @param args the program arguments (not used)
+	 */
+	static public void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		new ParameterSweepRunner().run();
+	}
+}
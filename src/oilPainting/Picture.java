@@ -0,0 +1,114 @@
+package oilPainting;
+
+import java.util.BitSet;
+
+import processing.core.PApplet;
+import processing.core.PImage;
+
+/**
+ * This class contains a picture that is ready to be painted, together with all the information that can be calculated
+ * before the painting starts
+ *
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class Picture {
+
+	/**
+	 * The picture file name
+	 */
+	public String fileName;
+
+	/**
+	 * The resized picture image, with the pixels already loaded
+	 */
+	public PImage img;
+
+	/**
+	 * The picture width
+	 */
+	public int width;
+
+	/**
+	 * The picture height
+	 */
+	public int height;
+
+	/**
+	 * The picture pixels that have the same color as the canvas background. This is the static part of the
+	 * background regions mask, and it should not be modified
+	 */
+	public BitSet backgroundPixels;
+
+	/**
+	 * Loads a picture from a file and resizes it to the given dimensions. This constructor doesn't modify the applet
+	 * state, and can be safely called from a background thread.
+	 *
+	 * @param applet the sketch applet
+	 * @param fileName the picture file name
+	 * @param width the picture width. If it's zero, the original image width will be used
+	 * @param height the picture height. If it's zero, the original image height will be used
+	 * @param backgroundColor the canvas background color
+	 */
+	public Picture(PApplet applet, String fileName, int width, int height, int backgroundColor) {
+		this(fileName, resize(applet.loadImage(fileName), width, height), backgroundColor);
+	}
+
+	/**
+	 * Creates a picture from an already loaded and resized image
+	 * 
+	 * @param fileName the picture file name
+	 * @param img the picture image
+	 * @param backgroundColor the canvas background color
+	 */
+	public Picture(String fileName, PImage img, int backgroundColor) {
+		this.fileName = fileName;
+		this.img = img;
+		this.width = this.img.width;
+		this.height = this.img.height;
+
+		// Load the image pixels. This way they will be available all the time
+		this.img.loadPixels();
+
+		// Find the pixels with the same color as the background
+		int nPixels = this.width * this.height;
+		int[] pixels = this.img.pixels;
+		this.backgroundPixels = new BitSet(nPixels);
+
+		for (int i = 0; i < nPixels; i++) {
+			if (pixels[i] == backgroundColor) {
+				this.backgroundPixels.set(i);
+			}
+		}
+	}
+
+	/**
+	 * Creates a picture from an already loaded image and its background pixels, for example read from a cache
+	 * 
+	 * @param fileName the picture file name
+	 * @param img the picture image, with the pixels already loaded
+	 * @param backgroundPixels the picture pixels that have the same color as the canvas background
+	 */
+	public Picture(String fileName, PImage img, BitSet backgroundPixels) {
+		this.fileName = fileName;
+		this.img = img;
+		this.width = this.img.width;
+		this.height = this.img.height;
+		this.backgroundPixels = backgroundPixels;
+	}
+
+	/**
+	 * Resizes an image if it doesn't have the given dimensions
+	 * 
+	 * @param img the image to resize
+	 * @param width the new image width. If it's zero, the image will not be resized
+	 * @param height the new image height. If it's zero, the image will not be resized
+	 * @return the resized image
+	 */
+	private static PImage resize(PImage img, int width, int height) {
+		if (width > 0 && height > 0 && (img.width != width || img.height != height)) {
+			img.resize(width, height);
+		}
+
+		return img;
+	}
+}
@@ -0,0 +1,281 @@
+package oilPainting;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import processing.core.PApplet;
+import processing.core.PImage;
+
+/**
+ * This class keeps an on-disk cache of the pictures that are ready to be painted, so the batch runs that repaint the
+ * same pictures can skip the image decoding, resizing and analysis steps.
+ * 
+ * The cache entries are addressed by the SHA-256 hash of the picture file contents, the picture dimensions and the
+ * canvas background color. Each entry is a binary file containing the resized pixels and the background pixels mask,
+ * and it's read back memory-mapped. The least recently used entries are removed when the total cache size exceeds the
+ * given limit.
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class PictureCache {
+
+	/**
+	 * The cache entry file header identifier
+	 */
+	private static final int MAGIC = 0x4f505043;
+
+	/**
+	 * The cache entry format version. It should be increased every time the format changes
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * The cache entry file extension
+	 */
+	private static final String EXTENSION = ".picture";
+
+	private File directory;
+	private long maxSize;
+
+	/**
+	 * Creates a new picture cache object
+	 * 
+	 * @param directory the directory where the cache entries are saved
+	 * @param maxSize the maximum total size of the cache entries in bytes
+	 */
+	public PictureCache(String directory, long maxSize) {
+		this.directory = new File(directory);
+		this.maxSize = maxSize;
+
+		this.directory.mkdirs();
+	}
+
+	/**
+	 * Returns the picture with the given dimensions. The picture is read from the cache if it's there. Otherwise it's
+	 * loaded, resized and analyzed, and then added to the cache. This method can be called from a background thread.
+	 * 
+	 * @param applet the sketch applet
+	 * @param fileName the picture file name
+	 * @param width the picture width. If it's zero, the original image width will be used
+	 * @param height the picture height. If it's zero, the original image height will be used
+	 * @param backgroundColor the canvas background color
+	 * @return the picture, ready to be painted
+	 */
+	public Picture get(PApplet applet, String fileName, int width, int height, int backgroundColor) {
+		byte[] fileContents = applet.loadBytes(fileName);
+
+		if (fileContents == null) {
+			throw new IllegalArgumentException("PictureCache class: could not read " + fileName);
+		}
+
+		File entryFile = new File(directory,
+				getHash(fileContents) + "-" + width + "x" + height + "-" + Integer.toHexString(backgroundColor)
+						+ EXTENSION);
+
+		synchronized (this) {
+			if (entryFile.exists()) {
+				Picture picture = read(entryFile, fileName);
+
+				if (picture != null) {
+					// Mark the entry as recently used
+					entryFile.setLastModified(System.currentTimeMillis());
+
+					return picture;
+				}
+
+				// The entry is corrupted, remove it
+				entryFile.delete();
+			}
+		}
+
+		// Load, resize and analyze the picture
+		Picture picture = new Picture(applet, fileName, width, height, backgroundColor);
+
+		synchronized (this) {
+			write(entryFile, picture);
+			evict(entryFile);
+		}
+
+		return picture;
+	}
+
+	/**
+	 * Reads the dimensions of an image file without decoding the image pixels
+	 * 
+	 * @param applet the sketch applet
+	 * @param fileName the image file name
+	 * @return the image width and height. null if the image format is not supported
+	 */
+	public static int[] readImageSize(PApplet applet, String fileName) {
+		try (InputStream input = applet.createInput(fileName);
+				ImageInputStream imageInput = ImageIO.createImageInputStream(input)) {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInput);
+
+			if (readers.hasNext()) {
+				ImageReader reader = readers.next();
+
+				try {
+					reader.setInput(imageInput);
+
+					return new int[] { reader.getWidth(0), reader.getHeight(0) };
+				} finally {
+					reader.dispose();
+				}
+			}
+		} catch (IOException | NullPointerException e) {
+			System.out.println("PictureCache class: could not read the size of " + fileName);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Calculates the SHA-256 hash of the file contents
+	 * 
+	 * @param fileContents the file contents
+	 * @return the hexadecimal representation of the hash
+	 */
+	private static String getHash(byte[] fileContents) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(fileContents);
+			StringBuilder hash = new StringBuilder(2 * digest.length);
+
+			for (byte b : digest) {
+				hash.append(String.format("%02x", b & 0xff));
+			}
+
+			return hash.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("PictureCache class: SHA-256 is not available", e);
+		}
+	}
+
+	/**
+	 * Reads a picture from a cache entry file
+	 * 
+	 * @param entryFile the cache entry file
+	 * @param fileName the picture file name
+	 * @return the picture. null if the entry could not be read
+	 */
+	private static Picture read(File entryFile, String fileName) {
+		try (FileChannel channel = FileChannel.open(entryFile.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				return null;
+			}
+
+			int width = buffer.getInt();
+			int height = buffer.getInt();
+			int format = buffer.getInt();
+			int nWords = buffer.getInt();
+			long nPixels = (long) width * height;
+
+			// Check that the header dimensions are consistent with the entry size
+			if (width <= 0 || height <= 0 || nWords < 0 || nWords > (nPixels + 63) / 64
+					|| 4 * nPixels + 8L * nWords > buffer.remaining()) {
+				System.out.println("PictureCache class: the cache entry " + entryFile.getName()
+						+ " has an invalid header");
+				return null;
+			}
+
+			// Read the image pixels
+			PImage img = new PImage(width, height, format);
+			buffer.asIntBuffer().get(img.pixels);
+			buffer.position(buffer.position() + 4 * img.pixels.length);
+
+			// Read the background pixels mask
+			long[] words = new long[nWords];
+			buffer.asLongBuffer().get(words);
+
+			return new Picture(fileName, img, BitSet.valueOf(words));
+		} catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes a picture in a cache entry file. The file is written first in a temporary file and then moved to its
+	 * final location, so other processes never see a partially written entry
+	 * 
+	 * @param entryFile the cache entry file
+	 * @param picture the picture
+	 */
+	private static void write(File entryFile, Picture picture) {
+		int[] pixels = picture.img.pixels;
+		long[] words = picture.backgroundPixels.toLongArray();
+		ByteBuffer buffer = ByteBuffer.allocate(6 * 4 + 4 * pixels.length + 8 * words.length);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(picture.width).putInt(picture.height).putInt(picture.img.format)
+				.putInt(words.length);
+		buffer.asIntBuffer().put(pixels);
+		buffer.position(buffer.position() + 4 * pixels.length);
+		buffer.asLongBuffer().put(words);
+		buffer.rewind();
+
+		File tmpFile = new File(entryFile.getPath() + ".tmp" + Thread.currentThread().getId());
+
+		try {
+			try (FileChannel channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+
+			Files.move(tmpFile.toPath(), entryFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			System.out.println("PictureCache class: could not write the cache entry " + entryFile.getName());
+			tmpFile.delete();
+		}
+	}
+
+	/**
+	 * Removes the least recently used cache entries until the total cache size is below the limit
+	 * 
+	 * @param keepFile an entry that should not be removed
+	 */
+	private void evict(File keepFile) {
+		File[] entries = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+
+		if (entries == null) {
+			return;
+		}
+
+		long totalSize = 0;
+
+		for (File entry : entries) {
+			totalSize += entry.length();
+		}
+
+		Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+
+		for (int i = 0; i < entries.length && totalSize > maxSize; i++) {
+			if (!entries[i].equals(keepFile)) {
+				long size = entries[i].length();
+
+				if (entries[i].delete()) {
+					totalSize -= size;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package oilPainting;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import processing.core.PApplet;
+
+/**
+ * This class loads and prepares the pictures that will be painted on a background thread, so they are ready by the
+ * time the sketch needs them
+ *
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class PictureLoader {
+	private PApplet applet;
+	private String[] fileNames;
+	private int width;
+	private int height;
+	private int backgroundColor;
+	private PictureCache cache;
+	private ExecutorService executor;
+	private int nextIndex;
+	private Future<Picture> nextPicture;
+
+	/**
+	 * Creates a new picture loader object
+	 *
+	 * @param applet the sketch applet
+	 * @param fileNames the picture file names
+	 * @param width the width of the loaded pictures
+	 * @param height the height of the loaded pictures
+	 * @param backgroundColor the canvas background color
+	 */
+	public PictureLoader(PApplet applet, String[] fileNames, int width, int height, int backgroundColor) {
+		this(applet, fileNames, width, height, backgroundColor, null);
+	}
+
+	/**
+	 * Creates a new picture loader object that reads the pictures from a cache when possible
+	 * 
+	 * @param applet the sketch applet
+	 * @param fileNames the picture file names
+	 * @param width the width of the loaded pictures
+	 * @param height the height of the loaded pictures
+	 * @param backgroundColor the canvas background color
+	 * @param cache the picture cache. It can be null
+	 */
+	public PictureLoader(PApplet applet, String[] fileNames, int width, int height, int backgroundColor,
+			PictureCache cache) {
+		this.applet = applet;
+		this.fileNames = fileNames;
+		this.width = width;
+		this.height = height;
+		this.backgroundColor = backgroundColor;
+		this.cache = cache;
+		this.executor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "picture-loader");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.nextIndex = -1;
+		this.nextPicture = null;
+	}
+
+	/**
+	 * Starts loading the picture with the given index on the background thread
+	 *
+	 * @param index the picture index in the file names array
+	 */
+	public void prefetch(int index) {
+		if (index >= 0 && index < fileNames.length && index != nextIndex) {
+			// Cancel the previous request if it's still running
+			if (nextPicture != null) {
+				nextPicture.cancel(false);
+			}
+
+			String fileName = fileNames[index];
+			nextIndex = index;
+			nextPicture = executor.submit(() -> load(fileName));
+		}
+	}
+
+	/**
+	 * Loads a picture, using the cache if there is one
+	 * 
+	 * @param fileName the picture file name
+	 * @return the picture, ready to be painted
+	 */
+	private Picture load(String fileName) {
+		if (cache != null) {
+			return cache.get(applet, fileName, width, height, backgroundColor);
+		}
+
+		return new Picture(applet, fileName, width, height, backgroundColor);
+	}
+
+	/**
+	 * Returns the picture with the given index, waiting for the background thread if it's still loading it
+	 *
+	 * @param index the picture index in the file names array
+	 * @return the picture, ready to be painted
+	 */
+	public Picture get(int index) {
+		// Start loading the picture if it was not requested before
+		prefetch(index);
+
+		try {
+			return nextPicture.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while loading " + fileNames[index], e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Could not load " + fileNames[index], e.getCause());
+		} finally {
+			nextIndex = -1;
+			nextPicture = null;
+		}
+	}
+
+	/**
+	 * Stops the background thread
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,223 @@
+package oilPainting;
+
+import java.util.stream.IntStream;
+
+/**
+ * Helper class containing the full frame pixel passes used by the oil painting sketches. The passes run in row-major
+ * order and can be split in horizontal bands that are processed in parallel on the common fork-join pool
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class PixelKernels {
+
+	/**
+	 * The minimum number of pixels in each band. Smaller images are processed in a single band
+	 */
+	private static final int MIN_BAND_PIXELS = 1 << 15;
+
+	/**
+	 * Interface implemented by the tasks that process a band of image rows
+	 */
+	private interface BandTask {
+
+		/**
+		 * Processes a band of image rows
+		 * 
+		 * @param band the band index
+		 * @param yStart the first row in the band
+		 * @param yEnd the row after the last row in the band
+		 */
+		void run(int band, int yStart, int yEnd);
+	}
+
+	/**
+	 * This class has no public constructor
+	 */
+	private PixelKernels() {
+
+	}
+
+	/**
+	 * Calculates the number of bands that should be used to process an image
+	 * 
+	 * @param width the image width
+	 * @param height the image height
+	 * @param parallel true if the bands will be processed in parallel
+	 * @return the number of bands
+	 */
+	private static int getNBands(int width, int height, boolean parallel) {
+		if (!parallel || height < 2) {
+			return 1;
+		}
+
+		int maxBands = 4 * Runtime.getRuntime().availableProcessors();
+
+		return Math.max(1, Math.min(Math.min(height, maxBands), (width * height) / MIN_BAND_PIXELS));
+	}
+
+	/**
+	 * Runs a task over all the bands of an image
+	 * 
+	 * @param height the image height
+	 * @param nBands the number of bands
+	 * @param task the task to run in each band
+	 */
+	private static void forEachBand(int height, int nBands, BandTask task) {
+		if (nBands == 1) {
+			task.run(0, 0, height);
+		} else {
+			IntStream.range(0, nBands).parallel().forEach(band -> {
+				task.run(band, (band * height) / nBands, ((band + 1) * height) / nBands);
+			});
+		}
+	}
+
+	/**
+	 * Compares the painted pixels with the original image pixels, filling the similar color and bad painted pixel
+	 * arrays
+	 * 
+	 * @param paintedPixels the painted pixels (screen or canvas)
+	 * @param paintedWidth the width of the painted pixels array
+	 * @param originalPixels the original image pixels
+	 * @param width the original image width
+	 * @param height the original image height
+	 * @param maxColorDiff the maximum RGB color difference to consider the pixel correctly painted
+	 * @param backgroundColor the canvas background color
+	 * @param avoidBackgroundRegions true if the background regions should be considered well painted
+	 * @param similarColor the similar color array that will be filled
+	 * @param badPainted the array that will be filled with the bad painted pixel indices
+	 * @param parallel true if the comparison should run in parallel bands
+	 * @return the number of bad painted pixels
+	 */
+	public static int compareColors(int[] paintedPixels, int paintedWidth, int[] originalPixels, int width,
+			int height, int[] maxColorDiff, int backgroundColor, boolean avoidBackgroundRegions,
+			boolean[] similarColor, int[] badPainted, boolean parallel) {
+		int nBands = getNBands(width, height, parallel);
+		int[] bandCounters = new int[nBands];
+		int maxRedDiff = maxColorDiff[0];
+		int maxGreenDiff = maxColorDiff[1];
+		int maxBlueDiff = maxColorDiff[2];
+
+		forEachBand(height, nBands, (band, yStart, yEnd) -> {
+			// The bad painted pixels of each band are saved starting from the band first pixel index
+			int counter = yStart * width;
+
+			for (int y = yStart; y < yEnd; y++) {
+				int imgPixel = y * width;
+				int paintedPixel = y * paintedWidth;
+
+				for (int x = 0; x < width; x++, imgPixel++, paintedPixel++) {
+					// Check if the pixel is well painted
+					boolean wellPainted = false;
+					int paintedCol = paintedPixels[paintedPixel];
+					int originalCol = originalPixels[imgPixel];
+
+					if (paintedCol != backgroundColor) {
+						wellPainted = Math.abs(((originalCol >> 16) & 0xff) - ((paintedCol >> 16) & 0xff)) < maxRedDiff
+								&& Math.abs(((originalCol >> 8) & 0xff) - ((paintedCol >> 8) & 0xff)) < maxGreenDiff
+								&& Math.abs((originalCol & 0xff) - (paintedCol & 0xff)) < maxBlueDiff;
+					} else if (originalCol == backgroundColor) {
+						wellPainted = avoidBackgroundRegions;
+					}
+
+					similarColor[imgPixel] = wellPainted;
+
+					if (!wellPainted) {
+						badPainted[counter] = imgPixel;
+						counter++;
+					}
+				}
+			}
+
+			bandCounters[band] = counter - yStart * width;
+		});
+
+		// Move the bad painted pixels of each band next to the ones from the previous band
+		int nBadPainted = bandCounters[0];
+
+		for (int band = 1; band < nBands; band++) {
+			System.arraycopy(badPainted, ((band * height) / nBands) * width, badPainted, nBadPainted,
+					bandCounters[band]);
+			nBadPainted += bandCounters[band];
+		}
+
+		return nBadPainted;
+	}
+
+	/**
+	 * Marks as visited the background pixels that are still not painted. The background pixels are stored as the words
+	 * of a bit set, and the bits of the pixels that have been painted since the last call are cleared, so the pixels
+	 * that are checked in each call are only the ones that were not painted before. Empty words are skipped, and the
+	 * other words are processed as a whole: the still unpainted pixels of the word are collected in a second word
+	 * without branches, which is then combined with the background word and expanded into the visited pixels array.
+	 * 
+	 * The mask is updated in a single thread, because the words are shared by pixels in different rows.
+	 * 
+	 * @param backgroundWords the words of the background pixels bit set, with the same layout as
+	 *        BitSet.toLongArray(). It's modified by this method
+	 * @param paintedPixels the painted pixels (screen or canvas)
+	 * @param paintedWidth the width of the painted pixels array
+	 * @param width the original image width
+	 * @param backgroundColor the canvas background color
+	 * @param visited the visited pixels array
+	 */
+	public static void maskBackground(long[] backgroundWords, int[] paintedPixels, int paintedWidth, int width,
+			int backgroundColor, boolean[] visited) {
+		for (int w = 0; w < backgroundWords.length; w++) {
+			long word = backgroundWords[w];
+
+			if (word == 0) {
+				continue;
+			}
+
+			// Collect the pixels in the word that still have the background color
+			int firstPixel = w << 6;
+			int nBits = Math.min(64, visited.length - firstPixel);
+			int x = firstPixel % width;
+			int paintedPixel = x + (firstPixel / width) * paintedWidth;
+			long unpaintedBits = 0;
+
+			for (int bit = 0; bit < nBits; bit++, x++, paintedPixel++) {
+				if (x == width) {
+					x = 0;
+					paintedPixel += paintedWidth - width;
+				}
+
+				unpaintedBits |= (paintedPixels[paintedPixel] == backgroundColor ? 1L : 0L) << bit;
+			}
+
+			// Clear the painted pixels and mark the rest as visited
+			word &= unpaintedBits;
+			backgroundWords[w] = word;
+
+			for (int bit = 0; bit < nBits; bit++) {
+				visited[firstPixel + bit] |= ((word >>> bit) & 1L) != 0;
+			}
+		}
+	}
+
+	/**
+	 * Draws a boolean array as a black and white image inside a pixels array
+	 * 
+	 * @param array the boolean array
+	 * @param width the boolean array width
+	 * @param height the boolean array height
+	 * @param pixels the pixels array where the image should be drawn
+	 * @param pixelsWidth the pixels array width
+	 * @param xOffset the horizontal position of the image in the pixels array
+	 * @param parallel true if the image should be drawn in parallel bands
+	 */
+	public static void drawMask(boolean[] array, int width, int height, int[] pixels, int pixelsWidth, int xOffset,
+			boolean parallel) {
+		forEachBand(height, getNBands(width, height, parallel), (band, yStart, yEnd) -> {
+			for (int y = yStart; y < yEnd; y++) {
+				int arrayPixel = y * width;
+				int screenPixel = y * pixelsWidth + xOffset;
+
+				for (int x = 0; x < width; x++, arrayPixel++, screenPixel++) {
+					pixels[screenPixel] = array[arrayPixel] ? 0xff000000 : 0xffffffff;
+				}
+			}
+		});
+	}
+}
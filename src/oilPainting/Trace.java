@@ -1,5 +1,6 @@
 package oilPainting;
 
+import colorUtils.PackedColor;
 import processing.core.PApplet;
 import processing.core.PGraphics;
 import processing.core.PImage;
@@ -92,12 +93,19 @@ public class Trace {
 	 */
 	private static final int MIN_ALPHA = 20;
 
+	/**
+	 * The step between the trajectory positions checked in the subsampled trajectory validation
+	 */
+	private static final int SUBSAMPLING_STEP = 4;
+
 	private PApplet applet;
 	private int nSteps;
+	private float speed;
 	private PVector[] positions;
 	private int[][] colors;
 	private int[] alphas;
 	private Brush brush;
+	private BrushPool brushPool;
 	private int nBristles;
 
 	/**
@@ -111,6 +119,7 @@ public class Trace {
 	public Trace(PApplet applet, PVector position, int nSteps, float speed) {
 		this.applet = applet;
 		this.nSteps = nSteps;
+		this.speed = speed;
 		this.positions = new PVector[this.nSteps];
 		this.colors = null;
 		this.alphas = null;
@@ -130,6 +139,43 @@ public class Trace {
 		}
 	}
 
+	/**
+	 * Creates a new trace object using one of the precomputed trajectories from a trajectory library. The trajectory is
+	 * written in a positions array provided by the caller, so the same array can be reused by many traces. The array
+	 * should not be modified while the trace is in use
+	 * 
+	 * @param applet the sketch applet
+	 * @param position the trace initial position
+	 * @param nSteps the total number of steps in the trace trajectory
+	 * @param speed the trace moving speed
+	 * @param library the trajectory library
+	 * @param positions the array where the trajectory positions will be written. It needs at least nSteps vectors
+	 */
+	public Trace(PApplet applet, PVector position, int nSteps, float speed, TrajectoryLibrary library,
+			PVector[] positions) {
+		this.applet = applet;
+		this.nSteps = nSteps;
+		this.speed = speed;
+		this.positions = positions;
+		this.colors = null;
+		this.alphas = null;
+		this.brush = null;
+		this.nBristles = 0;
+
+		// Fill the positions array
+		library.fillRandomTrajectory(position, nSteps, speed, this.positions);
+	}
+
+	/**
+	 * Creates a trajectory library that produces the same kind of trajectories as the Trace constructor
+	 * 
+	 * @param applet the sketch applet
+	 * @return the trajectory library
+	 */
+	public static TrajectoryLibrary createTrajectoryLibrary(PApplet applet) {
+		return new TrajectoryLibrary(applet, NOISE_FACTOR);
+	}
+
 	/**
 	 * Checks if the trace trajectory is valid. To be valid it should fall on a region that was not painted correctly
 	 * before, the fraction of visited pixels in the trace trajectory should be small, it should not fall most of the
@@ -141,6 +187,59 @@ public class Trace {
 	 * @return true if the trace has a valid trajectory
 	 */
 	public boolean hasValidTrajectory(boolean[] similarColor, boolean[] visitedPixels, PImage originalImg) {
+		return hasValidTrajectory(similarColor, visitedPixels, originalImg, null);
+	}
+
+	/**
+	 * Checks if the trace trajectory is valid. To be valid it should fall on a region that was not painted correctly
+	 * before, the fraction of visited pixels in the trace trajectory should be small, it should not fall most of the
+	 * time outside the canvas, and the color changes should not be too high.
+	 * 
+	 * The checks are done in stages, starting from the cheapest one, and stop as soon as one of the conditions cannot
+	 * be fulfilled anymore.
+	 * 
+	 * @param originalImg the original image
+	 * @param similarColor the similar color array
+	 * @param visitedPixels the visited pixels array
+	 * @param statistics the object where the validation statistics will be saved. It can be null
+	 * @return true if the trace has a valid trajectory
+	 */
+	public boolean hasValidTrajectory(boolean[] similarColor, boolean[] visitedPixels, PImage originalImg,
+			TraceStatistics statistics) {
+		int width = originalImg.width;
+		int height = originalImg.height;
+		float minInsideCounter = MIN_INSIDE_FRACTION_IN_TRAJECTORY * nSteps;
+
+		if (statistics != null) {
+			statistics.candidates++;
+		}
+
+		// Check the subsampled trajectory first. Consecutive positions are separated by the trace speed, so if a
+		// subsampled position is far enough from the picture, the next positions will also fall outside the picture
+		float margin = (SUBSAMPLING_STEP - 1) * speed;
+		int outsideCounter = 0;
+
+		for (int step = 0; step < nSteps; step += SUBSAMPLING_STEP) {
+			PVector pos = positions[step];
+
+			if (pos.x <= -1 - margin || pos.x >= width + margin || pos.y <= -1 - margin || pos.y >= height + margin) {
+				outsideCounter += Math.min(SUBSAMPLING_STEP, nSteps - step);
+			}
+		}
+
+		if (statistics != null) {
+			statistics.subsampledPositions += (nSteps + SUBSAMPLING_STEP - 1) / SUBSAMPLING_STEP;
+		}
+
+		if (nSteps - outsideCounter < minInsideCounter) {
+			if (statistics != null) {
+				statistics.subsampledTrajectoryRejections++;
+				statistics.insideRejections++;
+			}
+
+			return false;
+		}
+
 		// Obtain some pixel statistics along the trajectory
 		int insideCounter = 0;
 		int similarColorCounter = 0;
@@ -151,10 +250,9 @@ public class Trace {
 		int greenSqSum = 0;
 		int blueSum = 0;
 		int blueSqSum = 0;
-		int width = originalImg.width;
-		int height = originalImg.height;
 
-		for (PVector pos : positions) {
+		for (int step = 0; step < nSteps; step++) {
+			PVector pos = positions[step];
 			int x = (int) pos.x;
 			int y = (int) pos.y;
 
@@ -184,6 +282,33 @@ public class Trace {
 				blueSum += blue;
 				blueSqSum += blue * blue;
 			}
+
+			// Stop if the remaining positions cannot make the trajectory valid
+			int maxInsideCounter = insideCounter + nSteps - 1 - step;
+			boolean insideCanvas = maxInsideCounter >= minInsideCounter;
+			boolean badPainted = similarColorCounter <= MAX_SIMILAR_COLOR_FRACTION_IN_TRAJECTORY * maxInsideCounter;
+			boolean notVisited = visitedPixelsCounter <= MAX_VISITS_FRACTION_IN_TRAJECTORY * maxInsideCounter;
+
+			if (!insideCanvas || !badPainted || !notVisited) {
+				if (statistics != null) {
+					statistics.trajectoryPositions += step + 1;
+					statistics.trajectoryRejections++;
+
+					if (!insideCanvas) {
+						statistics.insideRejections++;
+					} else if (!badPainted) {
+						statistics.similarColorRejections++;
+					} else {
+						statistics.visitedRejections++;
+					}
+				}
+
+				return false;
+			}
+		}
+
+		if (statistics != null) {
+			statistics.trajectoryPositions += nSteps;
 		}
 
 		// Obtain the colors standard deviation along the trajectory
@@ -198,13 +323,15 @@ public class Trace {
 		}
 
 		// Check if it's a valid trajectory
-		boolean insideCanvas = insideCounter >= MIN_INSIDE_FRACTION_IN_TRAJECTORY * nSteps;
-		boolean badPainted = similarColorCounter <= MAX_SIMILAR_COLOR_FRACTION_IN_TRAJECTORY * insideCounter;
-		boolean notVisited = visitedPixelsCounter <= MAX_VISITS_FRACTION_IN_TRAJECTORY * insideCounter;
 		boolean smallColorChange = redStDev < MAX_COLOR_STDEV_IN_TRAJECTORY
 				&& greenStDev < MAX_COLOR_STDEV_IN_TRAJECTORY && blueStDev < MAX_COLOR_STDEV_IN_TRAJECTORY;
 
-		return insideCanvas && badPainted && notVisited && smallColorChange;
+		if (!smallColorChange && statistics != null) {
+			statistics.trajectoryRejections++;
+			statistics.colorChangeRejections++;
+		}
+
+		return smallColorChange;
 	}
 
 	/**
@@ -214,10 +341,37 @@ public class Trace {
 	 */
 	public void setBrushSize(float brushSize) {
 		brush = new Brush(applet, brushSize);
+		brushPool = null;
+		brush.init(positions[0]);
+		nBristles = brush.getNBristles();
+	}
+
+	/**
+	 * Defines the brush size that should be used to paint the trace, recycling a brush from the given brush pool
+	 * 
+	 * @param brushSize the brush size
+	 * @param pool the brush pool
+	 */
+	public void setBrushSize(float brushSize, BrushPool pool) {
+		brush = pool.obtain(brushSize);
+		brushPool = pool;
 		brush.init(positions[0]);
 		nBristles = brush.getNBristles();
 	}
 
+	/**
+	 * Returns the trace brush to the brush pool. The trace cannot be painted after this call
+	 */
+	public void releaseBrush() {
+		if (brushPool != null && brush != null) {
+			brushPool.release(brush);
+		}
+
+		brush = null;
+		brushPool = null;
+		colors = null;
+	}
+
 	/**
 	 * Calculates the trace colors
 	 * 
@@ -231,10 +385,41 @@ public class Trace {
 	 */
 	public boolean calculateColors(int[] maxColorDiff, boolean[] similarColor, PImage originalImg, PGraphics canvas,
 			int bgColor) {
+		return calculateColors(maxColorDiff, similarColor, originalImg, canvas, bgColor, null);
+	}
+
+	/**
+	 * Calculates the trace colors. The bristles check stops as soon as the trace cannot pass it anymore.
+	 * 
+	 * @param maxColorDiff the maximum color difference between the original image and the already painted color
+	 * @param similarColor the similar color array
+	 * @param originalImg the original image
+	 * @param canvas the canvas buffer. If it's null, the sketch applet will be used instead
+	 * @param bgColor the canvas background color
+	 * @param statistics the object where the validation statistics will be saved. It can be null
+	 * @return false if the region covered by the trace was already painted with similar colors, most of the trace is
+	 *         outside the canvas, or drawing the trace will not improve considerably the painting
+	 */
+	public boolean calculateColors(int[] maxColorDiff, boolean[] similarColor, PImage originalImg, PGraphics canvas,
+			int bgColor, TraceStatistics statistics) {
 		// Create the colors and alphas arrays
 		colors = new int[nSteps][nBristles];
 		alphas = new int[nSteps];
 
+		// Calculate the alpha values and count the steps with an alpha high enough for the average color calculation
+		float alphaDecrement = Math.min(255f / nSteps, 25f);
+		float alpha = 255 + alphaDecrement;
+		int nHighAlphaSteps = 0;
+
+		for (int step = 0; step < nSteps; step++) {
+			alpha -= alphaDecrement;
+			alphas[step] = PApplet.constrain((int) alpha, 0, 255);
+
+			if (alpha >= MIN_ALPHA) {
+				nHighAlphaSteps++;
+			}
+		}
+
 		// Get the already painted pixels from the canvas buffer or the screen
 		int[] paintedPixels = null;
 		int paintedPixelsWidth = 0;
@@ -260,19 +445,20 @@ public class Trace {
 		boolean[][] similarColorBool = new boolean[nSteps][nBristles];
 		int width = originalImg.width;
 		int height = originalImg.height;
-		float alphaDecrement = Math.min(255f / nSteps, 25f);
-		float alpha = 255 + alphaDecrement;
+		int highAlphaStepsCounter = 0;
+		boolean validBristles = true;
 
-		for (int step = 0; step < nSteps; step++) {
+		for (int step = 0; step < nSteps && validBristles; step++) {
 			// Move the brush and get the bristles positions
 			brush.update(positions[step], false);
 			PVector[] bristlesPositions = brush.getBristlesPositions();
 
-			// Calculate the alpha value and check if it's high enough for the average color calculation
-			alpha -= alphaDecrement;
-			alphas[step] = PApplet.constrain((int) alpha, 0, 255);
+			// Check if the alpha value is high enough for the average color calculation
+			if (step < nHighAlphaSteps) {
+				highAlphaStepsCounter++;
+			}
 
-			if (alpha >= MIN_ALPHA && bristlesPositions != null) {
+			if (step < nHighAlphaSteps && bristlesPositions != null) {
 				for (int bristle = 0; bristle < nBristles; bristle++) {
 					// Check that the bristle is inside the canvas
 					int x = (int) bristlesPositions[bristle].x;
@@ -307,6 +493,15 @@ public class Trace {
 						outsideCounter++;
 					}
 				}
+
+				// Stop if the remaining bristle positions cannot make the trace valid
+				int maxInsideCounter = insideCounter + nBristles * (nHighAlphaSteps - highAlphaStepsCounter);
+				validBristles = similarColorCounter < MAX_SIMILAR_COLOR_FRACTION * maxInsideCounter
+						&& maxInsideCounter >= MIN_INSIDE_FRACTION * (maxInsideCounter + outsideCounter);
+
+				if (statistics != null) {
+					statistics.bristlePositions += nBristles;
+				}
 			}
 		}
 
@@ -332,8 +527,18 @@ public class Trace {
 		boolean wellPainted = similarColorCounter >= MAX_SIMILAR_COLOR_FRACTION * insideCounter;
 		boolean outsideCanvas = insideCounter < MIN_INSIDE_FRACTION * (insideCounter + outsideCounter);
 
-		if (wellPainted || outsideCanvas) {
+		if (!validBristles || wellPainted || outsideCanvas) {
 			// The trace is not valid, don't paint it
+			if (statistics != null) {
+				statistics.bristlesRejections++;
+
+				if (wellPainted) {
+					statistics.wellPaintedRejections++;
+				} else {
+					statistics.outsideRejections++;
+				}
+			}
+
 			return false;
 		}
 
@@ -399,29 +604,31 @@ public class Trace {
 
 		if (alreadyPainted && !improves) {
 			// Don't use this trace, we are not going to improve the painting
+			if (statistics != null) {
+				statistics.improvementRejections++;
+			}
+
 			return false;
 		}
 
+		if (statistics != null) {
+			statistics.acceptedTraces++;
+		}
+
 		// The trace is good enough for painting!
 		// Set the first step bristle colors to the original image average color
 		int averageColor = (redAverage << 16) | (greenAverage << 8) | blueAverage | 0xff000000;
-		float hueAverage = applet.hue(averageColor);
-		float saturationAverage = applet.saturation(averageColor);
-		float brightnessAverage = applet.brightness(averageColor);
+		float[] hsbAverage = PackedColor.toHsb(averageColor, null);
 		float noiseSeed = applet.random(1000);
 
-		applet.colorMode(PApplet.HSB, 255);
-
 		for (int bristle = 0; bristle < nBristles; bristle++) {
 			// Add some brightness changes to make it more realistic
-			float deltaBrightness = BRIGHTNESS_RELATIVE_CHANGE * brightnessAverage
+			float deltaBrightness = BRIGHTNESS_RELATIVE_CHANGE * hsbAverage[2]
 					* (applet.noise(noiseSeed + 0.4f * bristle) - 0.5f);
-			colors[0][bristle] = applet.color(hueAverage, saturationAverage,
-					PApplet.constrain(brightnessAverage + deltaBrightness, 0, 255), 255);
+			colors[0][bristle] = PackedColor.fromHsb(hsbAverage[0], hsbAverage[1], hsbAverage[2] + deltaBrightness,
+					255);
 		}
 
-		applet.colorMode(PApplet.RGB, 255);
-
 		// Extend the colors to the step where the mixing starts
 		int mixStartingStep = PApplet.constrain(TYPICAL_MIX_STARTING_STEP, 1, nSteps);
 
@@ -0,0 +1,211 @@
+package oilPainting;
+
+import java.util.Arrays;
+
+import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.core.PImage;
+import processing.core.PVector;
+
+/**
+ * This class searches the next trace that should be painted. It's used by the oil painting sketch and the headless
+ * painter, so both of them paint the pictures in the same way. The average brush size is reduced every time there are
+ * too many invalid traces, and the search stops when the smaller brush size doesn't produce valid traces either
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class TraceSearch {
+
+	/**
+	 * Interface used to tell the search owner that the average brush size has changed. The owner should reset the
+	 * visited pixels array and mask the background regions again if necessary
+	 */
+	public interface Listener {
+
+		/**
+		 * Called after the average brush size has been reduced
+		 * 
+		 * @param averageBrushSize the new average brush size
+		 */
+		void brushSizeChanged(float averageBrushSize);
+	}
+
+	private PApplet applet;
+	private PaintingParameters parameters;
+	private int backgroundColor;
+	private Listener listener;
+	private BrushPool brushPool;
+	private TrajectoryLibrary trajectoryLibrary;
+	private TraceStatistics traceStatistics;
+	private PVector startingPosition;
+	private PVector[][] positionsPool;
+	private int poolIndex;
+	private int imgWidth;
+	private volatile float averageBrushSize;
+
+	/**
+	 * Creates a new trace search object
+	 * 
+	 * @param applet the applet used for the random numbers, the noise and the brushes
+	 * @param parameters the painting parameters
+	 * @param backgroundColor the canvas background color
+	 * @param listener the listener that should be notified when the average brush size changes
+	 */
+	public TraceSearch(PApplet applet, PaintingParameters parameters, int backgroundColor, Listener listener) {
+		this.applet = applet;
+		this.parameters = parameters;
+		this.backgroundColor = backgroundColor;
+		this.listener = listener;
+		this.brushPool = new BrushPool(applet);
+		this.trajectoryLibrary = Trace.createTrajectoryLibrary(applet);
+		this.traceStatistics = new TraceStatistics();
+		this.startingPosition = new PVector(0, 0);
+		this.positionsPool = new PVector[][] { new PVector[0], new PVector[0] };
+		this.poolIndex = 0;
+		this.imgWidth = 0;
+		this.averageBrushSize = parameters.smallerBrushSize;
+	}
+
+	/**
+	 * Prepares the search for a new picture. The average brush size is set to its initial value
+	 * 
+	 * @param imgWidth the picture width
+	 * @param imgHeight the picture height
+	 */
+	public void startPicture(int imgWidth, int imgHeight) {
+		this.imgWidth = imgWidth;
+		this.averageBrushSize = Math.max(parameters.smallerBrushSize, Math.max(imgWidth, imgHeight) / 6.0f);
+	}
+
+	/**
+	 * Obtains a valid trace, ready to be painted. The pixel arrays should be up to date. The trace candidates reuse the
+	 * positions arrays of a pool with two arrays, so the returned trace should be painted before the search is called
+	 * twice more
+	 * 
+	 * @param img the picture to paint
+	 * @param canvas the canvas where the colors will be mixed. It can be null
+	 * @param similarColorPixels the pixels that have a similar color in the picture and the painting
+	 * @param visitedPixels the pixels that have been visited by the previous traces
+	 * @param badPaintedPixels the indices of the pixels that are not well painted
+	 * @param nBadPaintedPixels the number of pixels that are not well painted
+	 * @return the valid trace. null if there are no more valid traces and the painting can be considered finished
+	 */
+	public Trace findTrace(PImage img, PGraphics canvas, boolean[] similarColorPixels, boolean[] visitedPixels,
+			int[] badPaintedPixels, int nBadPaintedPixels) {
+		int invalidTrajectoriesCounter = 0;
+		int invalidTracesCounter = 0;
+
+		while (true) {
+			// Check if we should stop painting
+			if (averageBrushSize == parameters.smallerBrushSize
+					&& (invalidTrajectoriesCounter > parameters.maxInvalidTrajectoriesForSmallerSize
+							|| invalidTracesCounter > parameters.maxInvalidTracesForSmallerSize)) {
+				return null;
+			}
+
+			// Change the average brush size if there were too many invalid traces
+			if (averageBrushSize > parameters.smallerBrushSize
+					&& (invalidTrajectoriesCounter > parameters.maxInvalidTrajectories
+							|| invalidTracesCounter > parameters.maxInvalidTraces)) {
+				averageBrushSize = Math.max(parameters.smallerBrushSize,
+						Math.min(averageBrushSize / parameters.brushSizeDecrement, averageBrushSize - 2));
+
+				// Reset the counters and let the owner reset the visited pixels
+				invalidTrajectoriesCounter = 0;
+				invalidTracesCounter = 0;
+				listener.brushSizeChanged(averageBrushSize);
+			}
+
+			// Create new traces until one of them has a valid trajectory or we exceed a number of tries
+			Trace trace = null;
+			boolean validTrajectory = false;
+			float brushSize = Math.max(parameters.smallerBrushSize, averageBrushSize * applet.random(0.95f, 1.05f));
+			int nSteps = (int) (Math.max(parameters.minTraceLength,
+					parameters.relativeTraceLength * brushSize * applet.random(0.9f, 1.1f)) / parameters.traceSpeed);
+
+			PVector[] positions = getPooledPositions(nSteps);
+
+			while (!validTrajectory && invalidTrajectoriesCounter % 500 != 499) {
+				// Create the trace starting from a bad painted pixel
+				int pixel = badPaintedPixels[(int) applet.random(nBadPaintedPixels)];
+				startingPosition.set(pixel % imgWidth, pixel / imgWidth);
+				trace = new Trace(applet, startingPosition, nSteps, parameters.traceSpeed, trajectoryLibrary,
+						positions);
+
+				// Check if it has a valid trajectory
+				validTrajectory = trace.hasValidTrajectory(similarColorPixels, visitedPixels, img, traceStatistics);
+
+				// Increase the counter
+				invalidTrajectoriesCounter++;
+			}
+
+			// Check if we have a valid trajectory
+			if (validTrajectory) {
+				// Reset the invalid trajectories counter
+				invalidTrajectoriesCounter = 0;
+
+				// Set the trace brush size
+				trace.setBrushSize(brushSize, brushPool);
+
+				// Calculate the trace colors and check that painting the trace will improve the painting
+				if (trace.calculateColors(parameters.maxColorDiff, similarColorPixels, img, canvas, backgroundColor,
+						traceStatistics)) {
+					// Test passed, the trace is good enough to be painted. Keep its positions out of the next search
+					poolIndex = 1 - poolIndex;
+
+					return trace;
+				}
+
+				// The trace is not good enough, try again in the next loop step
+				trace.releaseBrush();
+				invalidTracesCounter++;
+			} else {
+				// The trace is not good enough, try again in the next loop step
+				invalidTrajectoriesCounter++;
+				invalidTracesCounter++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the pooled positions array that the trace candidates should use. The array grows if it has less than the
+	 * requested number of positions
+	 * 
+	 * @param nSteps the number of trajectory steps
+	 * @return the positions array
+	 */
+	private PVector[] getPooledPositions(int nSteps) {
+		PVector[] positions = positionsPool[poolIndex];
+
+		if (positions.length < nSteps) {
+			int oldLength = positions.length;
+			positions = Arrays.copyOf(positions, Math.max(nSteps, 2 * oldLength));
+
+			for (int i = oldLength; i < positions.length; i++) {
+				positions[i] = new PVector();
+			}
+
+			positionsPool[poolIndex] = positions;
+		}
+
+		return positions;
+	}
+
+	/**
+	 * Returns the current average brush size. This method can be called from any thread
+	 * 
+	 * @return the average brush size
+	 */
+	public float getAverageBrushSize() {
+		return averageBrushSize;
+	}
+
+	/**
+	 * Returns the trace validation statistics
+	 * 
+	 * @return the trace statistics
+	 */
+	public TraceStatistics getTraceStatistics() {
+		return traceStatistics;
+	}
+}
@@ -0,0 +1,177 @@
+package oilPainting;
+
+/**
+ * This class collects some statistics about the trace validation stages. They can be used to see where the trace
+ * search spends its time
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class TraceStatistics {
+
+	/**
+	 * The number of trace candidates that have been checked
+	 */
+	public long candidates;
+
+	/**
+	 * The number of trace candidates rejected by the subsampled trajectory check
+	 */
+	public long subsampledTrajectoryRejections;
+
+	/**
+	 * The number of trace candidates rejected by the full trajectory check
+	 */
+	public long trajectoryRejections;
+
+	/**
+	 * The number of traces rejected by the bristles check
+	 */
+	public long bristlesRejections;
+
+	/**
+	 * The number of traces rejected because they would not improve the painting
+	 */
+	public long improvementRejections;
+
+	/**
+	 * The number of trace candidates rejected because too many trajectory positions fall outside the canvas
+	 */
+	public long insideRejections;
+
+	/**
+	 * The number of trace candidates rejected because too many trajectory pixels have already a similar color
+	 */
+	public long similarColorRejections;
+
+	/**
+	 * The number of trace candidates rejected because too many trajectory pixels have been visited before
+	 */
+	public long visitedRejections;
+
+	/**
+	 * The number of trace candidates rejected because the colors change too much along the trajectory
+	 */
+	public long colorChangeRejections;
+
+	/**
+	 * The number of traces rejected because the region covered by the bristles was already well painted
+	 */
+	public long wellPaintedRejections;
+
+	/**
+	 * The number of traces rejected because too many bristle positions fall outside the canvas
+	 */
+	public long outsideRejections;
+
+	/**
+	 * The number of traces that passed all the checks
+	 */
+	public long acceptedTraces;
+
+	/**
+	 * The number of trajectory positions checked by the subsampled trajectory check
+	 */
+	public long subsampledPositions;
+
+	/**
+	 * The number of trajectory positions checked by the full trajectory check
+	 */
+	public long trajectoryPositions;
+
+	/**
+	 * The number of bristle positions checked by the bristles check
+	 */
+	public long bristlePositions;
+
+	/**
+	 * Sets all the counters to zero
+	 */
+	public void reset() {
+		candidates = 0;
+		subsampledTrajectoryRejections = 0;
+		trajectoryRejections = 0;
+		bristlesRejections = 0;
+		improvementRejections = 0;
+		insideRejections = 0;
+		similarColorRejections = 0;
+		visitedRejections = 0;
+		colorChangeRejections = 0;
+		wellPaintedRejections = 0;
+		outsideRejections = 0;
+		acceptedTraces = 0;
+		subsampledPositions = 0;
+		trajectoryPositions = 0;
+		bristlePositions = 0;
+	}
+
+	/**
+	 * Copies the counters from another statistics object
+	 * 
+	 * @param statistics the statistics object to copy
+	 */
+	public void set(TraceStatistics statistics) {
+		candidates = statistics.candidates;
+		subsampledTrajectoryRejections = statistics.subsampledTrajectoryRejections;
+		trajectoryRejections = statistics.trajectoryRejections;
+		bristlesRejections = statistics.bristlesRejections;
+		improvementRejections = statistics.improvementRejections;
+		insideRejections = statistics.insideRejections;
+		similarColorRejections = statistics.similarColorRejections;
+		visitedRejections = statistics.visitedRejections;
+		colorChangeRejections = statistics.colorChangeRejections;
+		wellPaintedRejections = statistics.wellPaintedRejections;
+		outsideRejections = statistics.outsideRejections;
+		acceptedTraces = statistics.acceptedTraces;
+		subsampledPositions = statistics.subsampledPositions;
+		trajectoryPositions = statistics.trajectoryPositions;
+		bristlePositions = statistics.bristlePositions;
+	}
+
+	/**
+	 * Returns the names of the counters, separated by commas
+	 * 
+	 * @return the counter names
+	 */
+	public static String getCsvHeader() {
+		return "candidates,subsampledTrajectoryRejections,trajectoryRejections,bristlesRejections,"
+				+ "improvementRejections,insideRejections,similarColorRejections,visitedRejections,"
+				+ "colorChangeRejections,wellPaintedRejections,outsideRejections,acceptedTraces,subsampledPositions,"
+				+ "trajectoryPositions,bristlePositions";
+	}
+
+	/**
+	 * Returns the difference between the counters and the counters of a previous copy, separated by commas
+	 * 
+	 * @param previous a previous copy of the statistics. If it's null, the counters are returned directly
+	 * @return the counter differences
+	 */
+	public String toCsvLine(TraceStatistics previous) {
+		TraceStatistics p = previous != null ? previous : new TraceStatistics();
+
+		return (candidates - p.candidates) + "," + (subsampledTrajectoryRejections - p.subsampledTrajectoryRejections)
+				+ "," + (trajectoryRejections - p.trajectoryRejections) + ","
+				+ (bristlesRejections - p.bristlesRejections) + "," + (improvementRejections - p.improvementRejections)
+				+ "," + (insideRejections - p.insideRejections) + ","
+				+ (similarColorRejections - p.similarColorRejections) + "," + (visitedRejections - p.visitedRejections)
+				+ "," + (colorChangeRejections - p.colorChangeRejections) + ","
+				+ (wellPaintedRejections - p.wellPaintedRejections) + "," + (outsideRejections - p.outsideRejections)
+				+ "," + (acceptedTraces - p.acceptedTraces) + "," + (subsampledPositions - p.subsampledPositions) + ","
+				+ (trajectoryPositions - p.trajectoryPositions) + "," + (bristlePositions - p.bristlePositions);
+	}
+
+	/**
+	 * Returns a summary of the statistics
+	 * 
+	 * @return the statistics summary
+	 */
+	public String toString() {
+		return "Candidates = " + candidates + ", rejected by stage: subsampled trajectory = "
+				+ subsampledTrajectoryRejections + " (" + subsampledPositions + " positions), trajectory = "
+				+ trajectoryRejections + " (" + trajectoryPositions + " positions), bristles = " + bristlesRejections
+				+ " (" + bristlePositions + " positions), improvement = " + improvementRejections
+				+ ". Rejected by criterion: inside = " + insideRejections + ", similar color = "
+				+ similarColorRejections + ", visited = " + visitedRejections + ", color change = "
+				+ colorChangeRejections + ", well painted = " + wellPaintedRejections + ", outside = "
+				+ outsideRejections + ". Accepted = " + acceptedTraces;
+	}
+}
@@ -0,0 +1,123 @@
+package oilPainting;
+
+import java.util.ArrayList;
+
+import processing.core.PApplet;
+import processing.core.PVector;
+
+/**
+ * This class contains a library of precomputed trace trajectories. The trajectories are normalized to a unit speed and
+ * a zero initial angle, and they are grouped in length classes. A trace trajectory can be obtained translating,
+ * rotating and scaling one of the library trajectories, which is much faster than calculating a new one.
+ * 
+ * A trajectory with a given number of steps is the beginning of a longer trajectory with the same noise seed, so the
+ * trajectories in each length class can be used for any number of steps smaller than the class length.
+ * 
+ * @author Javier Graciá Carpio (jagracar)
+ */
+public class TrajectoryLibrary {
+
+	/**
+	 * The number of trajectories in each length class
+	 */
+	private static final int TRAJECTORIES_PER_CLASS = 256;
+
+	/**
+	 * The number of steps in the smallest length class
+	 */
+	private static final int MIN_CLASS_LENGTH = 8;
+
+	private PApplet applet;
+	private float noiseFactor;
+	private ArrayList<float[][]> xTrajectories;
+	private ArrayList<float[][]> yTrajectories;
+
+	/**
+	 * Creates a new trajectory library object
+	 * 
+	 * @param applet the sketch applet
+	 * @param noiseFactor sets how random the trajectories are
+	 */
+	public TrajectoryLibrary(PApplet applet, float noiseFactor) {
+		this.applet = applet;
+		this.noiseFactor = noiseFactor;
+		this.xTrajectories = new ArrayList<float[][]>();
+		this.yTrajectories = new ArrayList<float[][]>();
+	}
+
+	/**
+	 * Returns the length class that contains the trajectories with the given number of steps
+	 * 
+	 * @param nSteps the number of steps in the trajectory
+	 * @return the length class index
+	 */
+	private static int getLengthClass(int nSteps) {
+		int lengthClass = 0;
+
+		while ((MIN_CLASS_LENGTH << lengthClass) < nSteps) {
+			lengthClass++;
+		}
+
+		return lengthClass;
+	}
+
+	/**
+	 * Calculates the trajectories of all the length classes up to the given one. This uses the applet noise and random
+	 * methods, so it should be called from the sketch thread.
+	 * 
+	 * @param lengthClass the length class index
+	 */
+	private void calculateTrajectories(int lengthClass) {
+		for (int i = xTrajectories.size(); i <= lengthClass; i++) {
+			int classLength = MIN_CLASS_LENGTH << i;
+			float[][] xClass = new float[TRAJECTORIES_PER_CLASS][classLength];
+			float[][] yClass = new float[TRAJECTORIES_PER_CLASS][classLength];
+
+			for (int j = 0; j < TRAJECTORIES_PER_CLASS; j++) {
+				float[] x = xClass[j];
+				float[] y = yClass[j];
+				float noiseSeed = applet.random(1000);
+
+				for (int step = 1; step < classLength; step++) {
+					float ang = PApplet.TWO_PI * (applet.noise(noiseSeed + noiseFactor * step) - 0.5f);
+					x[step] = x[step - 1] + PApplet.cos(ang);
+					y[step] = y[step - 1] + PApplet.sin(ang);
+				}
+			}
+
+			xTrajectories.add(xClass);
+			yTrajectories.add(yClass);
+		}
+	}
+
+	/**
+	 * Fills the positions array with a random trajectory from the library. The positions are set in place, so the
+	 * array can be reused between trajectories
+	 * 
+	 * @param position the trajectory initial position
+	 * @param nSteps the number of trajectory steps
+	 * @param speed the trajectory speed
+	 * @param positions the array where the trajectory positions will be saved. It needs at least nSteps vectors
+	 */
+	public void fillRandomTrajectory(PVector position, int nSteps, float speed, PVector[] positions) {
+		int lengthClass = getLengthClass(nSteps);
+
+		if (lengthClass >= xTrajectories.size()) {
+			calculateTrajectories(lengthClass);
+		}
+
+		// Select a random trajectory and a random initial angle
+		int index = (int) applet.random(TRAJECTORIES_PER_CLASS) % TRAJECTORIES_PER_CLASS;
+		float initAng = applet.random(PApplet.TWO_PI);
+		float[] x = xTrajectories.get(lengthClass)[index];
+		float[] y = yTrajectories.get(lengthClass)[index];
+
+		// Rotate, scale and translate the trajectory
+		float cos = speed * PApplet.cos(initAng);
+		float sin = speed * PApplet.sin(initAng);
+
+		for (int step = 0; step < nSteps; step++) {
+			positions[step].set(position.x + x[step] * cos - y[step] * sin, position.y + x[step] * sin + y[step] * cos);
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package treeGenerator;
 
+import colorUtils.PackedColor;
 import processing.core.PApplet;
 import processing.core.PVector;
 
@@ -146,10 +147,11 @@ public class Branch {
 
 			if (newDiameter > 1) {
 				float deltaColor = applet.random(0, 10);
-				newColor = applet.color(applet.red(color) + deltaColor, applet.green(color) + deltaColor,
-						applet.blue(color));
+				newColor = PackedColor.pack(PackedColor.red(color) + deltaColor, PackedColor.green(color) + deltaColor,
+						PackedColor.blue(color));
 			} else {
-				newColor = applet.color(0.75f * applet.red(color), applet.green(color), 0.85f * applet.blue(color));
+				newColor = PackedColor.pack(0.75f * PackedColor.red(color), PackedColor.green(color),
+						0.85f * PackedColor.blue(color));
 			}
 
 			// Calculate the new branch level